@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.sparsity.dex.etl.config.bean.Configuration;
+import com.sparsity.dex.etl.config.impl.XMLConfigurationProvider;
+
+/**
+ * Parse time of XML configurations.
+ * <p>
+ * The generated configurations have no DOCTYPE, so the DTD is not fetched.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigurationBenchmark {
+
+    @Param({ "1", "100" })
+    public int databases;
+
+    private File xml;
+
+    @Setup
+    public void setUp() throws IOException {
+        xml = File.createTempFile(
+                ConfigurationBenchmark.class.getSimpleName(), ".xml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(xml), "UTF-8");
+        try {
+            out.write("<config>\n\t<databases default=\"db0\">\n");
+            for (int i = 0; i < databases; i++) {
+                out.write("\t\t<database name=\"db" + i + "\" alias=\"DB" + i
+                        + "\" path=\"db" + i + ".dex\" />\n");
+            }
+            out.write("\t</databases>\n</config>\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        xml.delete();
+    }
+
+    @Benchmark
+    public Configuration load() {
+        XMLConfigurationProvider prov = new XMLConfigurationProvider();
+        prov.setFile(xml);
+        Configuration cfg = new Configuration();
+        prov.set(cfg);
+        prov.load();
+        return cfg;
+    }
+}
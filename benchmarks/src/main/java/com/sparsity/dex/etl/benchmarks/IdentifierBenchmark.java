@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.sparsity.dex.etl.DexHandle;
+import com.sparsity.dex.etl.DexUtil;
+import com.sparsity.dex.etl.config.bean.Configuration;
+
+/**
+ * Throughput of the type and attribute identifier lookups.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IdentifierBenchmark {
+
+    private TemporaryDatabase tmp;
+
+    private DexHandle handle;
+
+    @Setup
+    public void setUp() throws IOException {
+        tmp = new TemporaryDatabase(IdentifierBenchmark.class.getSimpleName());
+        Configuration cfg = new Configuration();
+        cfg.setDefaultDatabase(tmp.getDatabaseConfiguration());
+        DexUtil.setConfiguration(cfg);
+        handle = DexUtil.getHandle();
+    }
+
+    @TearDown
+    public void tearDown() {
+        DexUtil.shutdown();
+        tmp.delete();
+    }
+
+    @Benchmark
+    public Integer typeIdentifier() {
+        return DexUtil.getTypeIdentifier("person");
+    }
+
+    @Benchmark
+    public Integer attributeIdentifier() {
+        return DexUtil.getAttributeIdentifier("person", "name");
+    }
+
+    @Benchmark
+    public Integer attributeIdentifierSplit() {
+        return DexUtil.getAttributeIdentifier("person.name", '.');
+    }
+
+    @Benchmark
+    public Integer missingTypeIdentifier() {
+        return DexUtil.getTypeIdentifier("missing");
+    }
+
+    @Benchmark
+    public int handleTypeIdentifier() {
+        return handle.getTypeIdentifier("person");
+    }
+
+    @Benchmark
+    public int handleAttributeIdentifier() {
+        return handle.getAttributeIdentifier("person", "name");
+    }
+}
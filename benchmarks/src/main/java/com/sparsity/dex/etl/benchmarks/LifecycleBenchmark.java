@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+
+/**
+ * Latency of opening, closing and restarting a database.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LifecycleBenchmark {
+
+    private TemporaryDatabase tmp;
+
+    private DatabaseConfiguration dbConf;
+
+    @Setup
+    public void setUp() throws IOException {
+        tmp = new TemporaryDatabase(LifecycleBenchmark.class.getSimpleName());
+        dbConf = tmp.getDatabaseConfiguration();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tmp.delete();
+    }
+
+    @Benchmark
+    public void openClose() {
+        dbConf.openDatabase();
+        dbConf.closeDatabase();
+    }
+
+    @Benchmark
+    public void restart() {
+        dbConf.restartDatabase();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Session;
+
+/**
+ * Local temporary Dex database for the benchmarks.
+ * <p>
+ * The schema has a <code>person</code> node type with the <code>id</code> and
+ * <code>name</code> attributes and a <code>knows</code> edge type with the
+ * <code>since</code> attribute.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class TemporaryDatabase {
+
+    /**
+     * Database file.
+     */
+    private File file;
+
+    /**
+     * {@link DatabaseConfiguration} instance.
+     */
+    private DatabaseConfiguration dbConf;
+
+    /**
+     * Creates a new temporary database.
+     * 
+     * @param alias
+     *            Database alias.
+     * @throws IOException
+     *             if the temporary file cannot be created.
+     */
+    public TemporaryDatabase(String alias) throws IOException {
+        file = File.createTempFile(alias, ".dex");
+        file.delete();
+
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(file.getAbsolutePath(), alias);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        g.newAttribute(person, "id", DataType.Long, AttributeKind.Unique);
+        g.newAttribute(person, "name", DataType.String, AttributeKind.Basic);
+        int knows = g.newEdgeType("knows", true, true);
+        g.newAttribute(knows, "since", DataType.Integer, AttributeKind.Basic);
+        sess.close();
+        db.close();
+        dex.close();
+
+        dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(alias);
+        dbConf.setPath(file.getAbsolutePath());
+    }
+
+    /**
+     * Gets the {@link DatabaseConfiguration} instance.
+     * 
+     * @return The {@link DatabaseConfiguration} instance.
+     */
+    public DatabaseConfiguration getDatabaseConfiguration() {
+        return dbConf;
+    }
+
+    /**
+     * Closes and deletes the database.
+     */
+    public void delete() {
+        if (!dbConf.isClosed()) {
+            dbConf.closeDatabase();
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl;
+
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Type;
+
+/**
+ * Fast access to a Dex database from a single thread.
+ * <p>
+ * It binds the working {@link Session} of the thread which created it, so it
+ * must not be shared among threads. Accessors do not check the database
+ * lifecycle: once the database is closed or restarted, or the {@link Session}
+ * is closed, the handle is no longer valid (see {@link #isValid()}) and a new
+ * one must be obtained.
+ * <p>
+ * Type and attribute identifiers come from the schema cache of the
+ * {@link DatabaseConfiguration}, and are returned as primitive values.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class DexHandle {
+
+    /**
+     * {@link DatabaseConfiguration} instance.
+     */
+    private DatabaseConfiguration dbConf;
+
+    /**
+     * Working {@link Session}.
+     */
+    private Session session;
+
+    /**
+     * {@link Graph} of the working {@link Session}.
+     */
+    private Graph graph;
+
+    /**
+     * Creates a new instance for the calling thread.
+     * <p>
+     * It opens the Database if necessary.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    public DexHandle(DatabaseConfiguration dbConf) {
+        this.dbConf = dbConf;
+        this.session = dbConf.getSession();
+        this.graph = dbConf.getGraph();
+    }
+
+    /**
+     * Gets the {@link DatabaseConfiguration} instance.
+     * 
+     * @return The {@link DatabaseConfiguration} instance.
+     */
+    public DatabaseConfiguration getDatabaseConfiguration() {
+        return dbConf;
+    }
+
+    /**
+     * Gets if the handle can still be used.
+     * 
+     * @return <code>true</code> if the Database is open and the
+     *         {@link Session} has not been closed, <code>false</code>
+     *         otherwise.
+     */
+    public boolean isValid() {
+        return !dbConf.isClosed() && !session.isClosed();
+    }
+
+    /**
+     * Gets the working {@link Session}.
+     * 
+     * @return The working {@link Session}.
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the {@link Graph} of the working {@link Session}.
+     * 
+     * @return The {@link Graph} of the working {@link Session}.
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Gets the Dex type identifier for the given type name.
+     * 
+     * @param name
+     *            Node or edge type name.
+     * @return The Dex type identifier or {@link Type#InvalidType} if it does
+     *         not exist.
+     */
+    public int getTypeIdentifier(String name) {
+        return dbConf.getTypeIdentifier(name);
+    }
+
+    /**
+     * Gets the Dex attribute identifier for the given type and attribute names.
+     * 
+     * @param type
+     *            Node or edge type name.
+     * @param name
+     *            Attribute name.
+     * @return The Dex attribute identifier or
+     *         {@link Attribute#InvalidAttribute} if it does not exist.
+     */
+    public int getAttributeIdentifier(String type, String name) {
+        return dbConf.getAttributeIdentifier(type, name);
+    }
+
+    /**
+     * Gets the Dex attribute identifier for the given attribute name.
+     * 
+     * @param attrname
+     *            Type and attribute name concatenation.
+     * @param split
+     *            Split character.
+     * @return The Dex attribute identifier or
+     *         {@link Attribute#InvalidAttribute} if it does not exist.
+     * @see DatabaseConfiguration#getAttributeIdentifier(String, char)
+     */
+    public int getAttributeIdentifier(String attrname, char split) {
+        return dbConf.getAttributeIdentifier(attrname, split);
+    }
+}
@@ -1,123 +1,374 @@
-/*
- * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
- * 
- * This file is part of 'dexjava-etl'.
- * 
- * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
- * "License"). You may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * http://www.gnu.org/licenses/lgpl-3.0.txt
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
- * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
- * License for the specific language governing permissions and limitations under
- * the License.
- */
-package com.sparsity.dex.etl.config.bean;
-
-import java.util.ArrayList;
-import java.util.Collection;
-
-import com.sparsity.dex.etl.DexUtil;
-import com.sparsity.dex.etl.DexUtilsException;
-
-/**
- * {@link DexUtil} configuration.
- * <p>
- * It can manage a {@link DatabaseConfiguration} instance collection, but there
- * is an special one, the default.
- * 
- * @author Sparsity Technologies
- * 
- */
-public class Configuration {
-
-    /**
-     * {@link DatabaseConfiguration} instance collection.
-     */
-    private Collection<DatabaseConfiguration> databases = new ArrayList<DatabaseConfiguration>();
-
-    /**
-     * Default {@link DatabaseConfiguration} instance.
-     */
-    private DatabaseConfiguration defDatabase = null;
-
-    /**
-     * Creates a new instance.
-     */
-    public Configuration() {
-    }
-
-    /**
-     * Sets the default {@link DatabaseConfiguration} instance.
-     * 
-     * @param def
-     *            Default {@link DatabaseConfiguration} instance.
-     */
-    public void setDefaultDatabase(DatabaseConfiguration def) {
-        this.defDatabase = def;
-    }
-
-    /**
-     * Gets the default {@link DatabaseConfiguration} instance.
-     * 
-     * @return The default {@link DatabaseConfiguration} instance.
-     */
-    public DatabaseConfiguration getDefaultDatabase() {
-        return defDatabase;
-    }
-
-    /**
-     * Adds a {@link DatabaseConfiguration} instance to the
-     * {@link DatabaseConfiguration} instance collection.
-     * 
-     * @param dbConf
-     *            {@link DatabaseConfiguration} instance.
-     * @return <code>true</code> if added, <code>false</code> otherwise.
-     */
-    public boolean addDatabaseConfiguration(DatabaseConfiguration dbConf) {
-        dbConf.setConfiguration(this);
-        return databases.add(dbConf);
-    }
-
-    /**
-     * Sets the {@link DatabaseConfiguration} instance collection.
-     * <p>
-     * It clears the previous collection and the sets the default
-     * {@link DatabaseConfiguration} instance to <code>null</code>.
-     * 
-     * @param dbConfs
-     *            {@link DatabaseConfiguration} instance collection.
-     */
-    public void setDatabases(Collection<DatabaseConfiguration> dbConfs) {
-        databases.clear();
-        for (DatabaseConfiguration dbConf : dbConfs) {
-            addDatabaseConfiguration(dbConf);
-        }
-    }
-
-    /**
-     * Gets the {@link DatabaseConfiguration} instance collection.
-     * 
-     * @return The {@link DatabaseConfiguration} instance collection.
-     */
-    public Collection<DatabaseConfiguration> getDatabases() {
-        return databases;
-    }
-
-    /**
-     * Executes the configuration.
-     * <p>
-     * Some elements of the configuration may require to be executed, this will
-     * execute all of them.
-     * 
-     * @throws DexUtilsException
-     */
-    public void execute() throws DexUtilsException {
-        // try {
-        // } catch {
-        // } finally {
-        // }
-    }
-}
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.bean;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtil;
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.loader.LoadJournal;
+import com.sparsity.dex.etl.loader.MappedOIDIndex;
+import com.sparsity.dex.etl.loader.OIDIndex;
+
+/**
+ * {@link DexUtil} configuration.
+ * <p>
+ * It can manage a {@link DatabaseConfiguration} instance collection, but there
+ * is an special one, the default.
+ * <p>
+ * {@link DatabaseConfiguration} instances can be looked up by name or alias
+ * (see {@link #getDatabase(String)}).
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class Configuration {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(Configuration.class);
+
+    /**
+     * {@link DatabaseConfiguration} instance collection.
+     */
+    private Collection<DatabaseConfiguration> databases = new ArrayList<DatabaseConfiguration>();
+
+    /**
+     * Default {@link DatabaseConfiguration} instance.
+     */
+    private DatabaseConfiguration defDatabase = null;
+
+    /**
+     * {@link DatabaseConfiguration} instances by name.
+     */
+    private ConcurrentMap<String, DatabaseConfiguration> byName = new ConcurrentHashMap<String, DatabaseConfiguration>();
+
+    /**
+     * {@link DatabaseConfiguration} instances by alias.
+     */
+    private ConcurrentMap<String, DatabaseConfiguration> byAlias = new ConcurrentHashMap<String, DatabaseConfiguration>();
+
+    /**
+     * {@link JobDefinition} instances in execution order.
+     */
+    private List<JobDefinition> jobs = new ArrayList<JobDefinition>();
+
+    /**
+     * Creates a new instance.
+     */
+    public Configuration() {
+    }
+
+    /**
+     * Sets the default {@link DatabaseConfiguration} instance.
+     * 
+     * @param def
+     *            Default {@link DatabaseConfiguration} instance.
+     */
+    public void setDefaultDatabase(DatabaseConfiguration def) {
+        this.defDatabase = def;
+        if (def != null) {
+            register(def);
+        }
+    }
+
+    /**
+     * Gets the default {@link DatabaseConfiguration} instance.
+     * 
+     * @return The default {@link DatabaseConfiguration} instance.
+     */
+    public DatabaseConfiguration getDefaultDatabase() {
+        return defDatabase;
+    }
+
+    /**
+     * Adds a {@link DatabaseConfiguration} instance to the
+     * {@link DatabaseConfiguration} instance collection.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     * @return <code>true</code> if added, <code>false</code> otherwise.
+     */
+    public boolean addDatabaseConfiguration(DatabaseConfiguration dbConf) {
+        dbConf.setConfiguration(this);
+        register(dbConf);
+        return databases.add(dbConf);
+    }
+
+    /**
+     * Registers the given {@link DatabaseConfiguration} instance by its name
+     * and alias.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    private void register(DatabaseConfiguration dbConf) {
+        if (dbConf.getName() != null) {
+            byName.put(dbConf.getName(), dbConf);
+        }
+        if (dbConf.getAlias() != null) {
+            byAlias.put(dbConf.getAlias(), dbConf);
+        }
+    }
+
+    /**
+     * Gets the {@link DatabaseConfiguration} instance with the given name or
+     * alias.
+     * <p>
+     * Names are looked up before aliases.
+     * 
+     * @param key
+     *            Name or alias.
+     * @return The {@link DatabaseConfiguration} instance or <code>null</code>
+     *         if there is none.
+     */
+    public DatabaseConfiguration getDatabase(String key) {
+        DatabaseConfiguration dbConf = byName.get(key);
+        if (dbConf == null) {
+            dbConf = byAlias.get(key);
+        }
+        return dbConf;
+    }
+
+    /**
+     * Sets the {@link DatabaseConfiguration} instance collection.
+     * <p>
+     * It clears the previous collection and the sets the default
+     * {@link DatabaseConfiguration} instance to <code>null</code>.
+     * 
+     * @param dbConfs
+     *            {@link DatabaseConfiguration} instance collection.
+     */
+    public void setDatabases(Collection<DatabaseConfiguration> dbConfs) {
+        databases.clear();
+        byName.clear();
+        byAlias.clear();
+        if (defDatabase != null) {
+            register(defDatabase);
+        }
+        for (DatabaseConfiguration dbConf : dbConfs) {
+            addDatabaseConfiguration(dbConf);
+        }
+    }
+
+    /**
+     * Gets the {@link DatabaseConfiguration} instance collection.
+     * 
+     * @return The {@link DatabaseConfiguration} instance collection.
+     */
+    public Collection<DatabaseConfiguration> getDatabases() {
+        return databases;
+    }
+
+    /**
+     * Gets all the {@link DatabaseConfiguration} instances, including the
+     * default one.
+     * 
+     * @return All the {@link DatabaseConfiguration} instances.
+     */
+    private Set<DatabaseConfiguration> getAllDatabases() {
+        Set<DatabaseConfiguration> all = new LinkedHashSet<DatabaseConfiguration>();
+        if (defDatabase != null) {
+            all.add(defDatabase);
+        }
+        all.addAll(databases);
+        return all;
+    }
+
+    /**
+     * Opens all the databases, including the default one, in parallel.
+     * <p>
+     * It uses as many threads as databases, up to the number of available
+     * processors.
+     * 
+     * @throws DexUtilsException
+     *             if any database cannot be opened.
+     */
+    public void openDatabases() throws DexUtilsException {
+        openDatabases(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Opens all the databases, including the default one, in parallel.
+     * 
+     * @param parallelism
+     *            Maximum number of threads.
+     * @throws DexUtilsException
+     *             if any database cannot be opened.
+     */
+    public void openDatabases(int parallelism) throws DexUtilsException {
+        Set<DatabaseConfiguration> all = getAllDatabases();
+        if (all.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(parallelism, all.size())));
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>(all.size());
+            for (final DatabaseConfiguration dbConf : all) {
+                results.add(pool.submit(new Callable<Void>() {
+                    public Void call() {
+                        // Pool threads must not keep a working Session
+                        dbConf.openDatabase();
+                        dbConf.closeSession();
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            String msg = new String("Cannot open the databases");
+            log.error(msg, e.getCause());
+            throw new DexUtilsException(msg, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexUtilsException("Interrupted while opening databases",
+                    e);
+        } finally {
+            pool.shutdown();
+        }
+        log.info(all.size() + " databases opened in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Closes all the databases, including the default one.
+     */
+    public void closeDatabases() {
+        for (DatabaseConfiguration dbConf : getAllDatabases()) {
+            dbConf.closeDatabase();
+        }
+    }
+
+    /**
+     * Adds a {@link JobDefinition} instance to be executed after the previous
+     * ones.
+     * 
+     * @param job
+     *            {@link JobDefinition} instance.
+     * @throws IllegalArgumentException
+     *             if there is already a job with the same name.
+     */
+    public void addJob(JobDefinition job) {
+        if (getJob(job.getName()) != null) {
+            String msg = new String("Duplicated job '" + job.getName() + "'.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        jobs.add(job);
+    }
+
+    /**
+     * Gets the {@link JobDefinition} instance with the given name.
+     * 
+     * @param name
+     *            Job name.
+     * @return The {@link JobDefinition} instance or <code>null</code> if
+     *         there is none.
+     */
+    public JobDefinition getJob(String name) {
+        for (JobDefinition job : jobs) {
+            if (job.getName().equals(name)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the {@link JobDefinition} instances in execution order.
+     * 
+     * @return The {@link JobDefinition} instances in execution order.
+     */
+    public List<JobDefinition> getJobs() {
+        return Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * Executes the configuration.
+     * <p>
+     * Some elements of the configuration may require to be executed, this will
+     * execute all of them. That is, it creates the declared schema of each
+     * database (see {@link DatabaseConfiguration#createSchema()}) and then
+     * executes the jobs in order (see {@link JobDefinition#execute(Map)}).
+     * <p>
+     * The progress of the jobs is recorded in a {@link LoadJournal} per
+     * database, so if they fail, executing the configuration again resumes
+     * them from the last checkpoint. Journals are deleted once all the jobs
+     * have been executed.
+     * 
+     * @throws DexUtilsException
+     */
+    public void execute() throws DexUtilsException {
+        for (DatabaseConfiguration dbConf : getAllDatabases()) {
+            if (dbConf.getSchema() != null) {
+                dbConf.createSchema();
+            }
+        }
+        if (jobs.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Map<String, OIDIndex> indexes = new HashMap<String, OIDIndex>();
+        Map<DatabaseConfiguration, LoadJournal> journals = new HashMap<DatabaseConfiguration, LoadJournal>();
+        try {
+            for (JobDefinition job : jobs) {
+                LoadJournal journal = journals.get(job.getDatabase());
+                if (journal == null) {
+                    journal = new LoadJournal(job.getDatabase());
+                    journals.put(job.getDatabase(), journal);
+                }
+                job.execute(indexes, journal);
+            }
+        } finally {
+            for (LoadJournal journal : journals.values()) {
+                journal.close();
+            }
+            for (OIDIndex idx : indexes.values()) {
+                if (idx instanceof MappedOIDIndex) {
+                    ((MappedOIDIndex) idx).close();
+                }
+            }
+        }
+        for (LoadJournal journal : journals.values()) {
+            journal.delete();
+        }
+        log.info(jobs.size() + " jobs executed in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+}
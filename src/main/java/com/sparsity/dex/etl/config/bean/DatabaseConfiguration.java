@@ -1,521 +1,1711 @@
-/*
- * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
- * 
- * This file is part of 'dexjava-etl'.
- * 
- * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
- * "License"). You may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * http://www.gnu.org/licenses/lgpl-3.0.txt
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
- * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
- * License for the specific language governing permissions and limitations under
- * the License.
- */
-package com.sparsity.dex.etl.config.bean;
-
-import java.io.File;
-
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
-import com.sparsity.dex.etl.DexUtilsException;
-import com.sparsity.dex.gdb.Attribute;
-import com.sparsity.dex.gdb.AttributeList;
-import com.sparsity.dex.gdb.AttributeListIterator;
-import com.sparsity.dex.gdb.Database;
-import com.sparsity.dex.gdb.Dex;
-import com.sparsity.dex.gdb.DexConfig;
-import com.sparsity.dex.gdb.DexProperties;
-import com.sparsity.dex.gdb.Graph;
-import com.sparsity.dex.gdb.Session;
-import com.sparsity.dex.gdb.Type;
-import com.sparsity.dex.gdb.TypeList;
-import com.sparsity.dex.gdb.TypeListIterator;
-
-/**
- * Allows for opening and closing a Dex database.
- * <p>
- * It also automatically manages a per-thread "working" {@link Session}. The
- * user just gets a Session ({@link #getSession()}) and this automatically
- * creates one if required or returns its {@link Session}. Moreover, this
- * provides an exclusive per-thread {@link Session}.
- * 
- * @author Sparsity Technologies
- * 
- */
-public class DatabaseConfiguration {
-
-    /**
-     * {@link Log} instance.
-     */
-    private static Log log = LogFactory.getLog(DatabaseConfiguration.class);
-
-    /**
-     * Unique name for the {@link DatabaseConfiguration}.
-     */
-    private String name = null;
-
-    /**
-     * Alias database.
-     */
-    private String alias = null;
-
-    /**
-     * Path database.
-     */
-    private String path = null;
-
-    /**
-     * Dex configuration file.
-     */
-    private String dexConf = null;
-
-    /**
-     * Manages a Dex {@link Session} as well as its {@link Graph} instance.
-     * 
-     * @author Sparsity Technologies
-     * 
-     */
-    private class SessionManager {
-
-        /**
-         * {@link Graph} instance.
-         */
-        private Graph graph = null;
-
-        /**
-         * {@link Session} instance.
-         */
-        private Session session = null;
-
-        /**
-         * Thread identifier.
-         */
-        long thId = Thread.currentThread().getId();
-
-        /**
-         * Creates a new instance.
-         */
-        public SessionManager() {
-        }
-
-        /**
-         * Closes the {@link Session}.
-         */
-        public void closeSession() {
-            if (session != null && !session.isClosed()) {
-                session.close();
-                session = null;
-                graph = null;
-                log.debug("Dex Session was closed for thread " + thId);
-            }
-        }
-
-        /**
-         * Gets if the {@link Session} is closed.
-         * 
-         * @return
-         */
-        public boolean isClosed() {
-            return session == null || session.isClosed();
-        }
-
-        /**
-         * Gets the {@link Session}.
-         * <p>
-         * It creates a new one {@link Session} if there was no {@link Session}
-         * or if it was already closed.
-         * 
-         * @return The {@link Session}.
-         */
-        public Session getSession() {
-            if (isClosed()) {
-                session = DatabaseConfiguration.this.db.newSession();
-                graph = session.getGraph();
-                log.debug("Dex Session was created for thread " + thId);
-            }
-            return session;
-        }
-
-        /**
-         * Gets the {@link Graph}.
-         * <p>
-         * It creates a new one {@link Session} if there was no {@link Session}
-         * or if it was already closed.
-         * 
-         * @return The {@link Graph} of the {@link Session}.
-         */
-        public Graph getGraph() {
-            if (isClosed()) {
-                getSession();
-            }
-            return graph;
-        }
-    }
-
-    /**
-     * Manages a per-thread local {@link SessionManager} instance.
-     * <p>
-     * Therefore, each thread will just access its {@link SessionManager}
-     * instance.
-     */
-    private ThreadLocal<SessionManager> sessMngr = new ThreadLocal<SessionManager>() {
-        @Override
-        protected SessionManager initialValue() {
-            return new SessionManager();
-        }
-    };
-
-    /**
-     * {@link DexConfig} instance.
-     */
-    private DexConfig dexCfg = null;
-
-    /**
-     * {@link Dex} instance.
-     */
-    private Dex dex = null;
-
-    /**
-     * {@link Database} instance.
-     */
-    private Database db = null;
-
-    /**
-     * Parent {@link Configuration} instance.
-     */
-    private Configuration configuration;
-
-    /**
-     * Gets the unique name.
-     * 
-     * @return The unique name.
-     */
-    public String getName() {
-        return name;
-    }
-
-    /**
-     * Sets the unique name.
-     * 
-     * @param n
-     *            The unique name. It cannot be <code>null</code> or a blank
-     *            string.
-     */
-    public void setName(String n) {
-        if (n == null || n.matches("[\\s]++")) {
-            log.error("Name cannot be null or a blank string.");
-            throw new IllegalArgumentException(
-                    "Name cannot be null or a blank string.");
-        }
-        name = n;
-    }
-
-    /**
-     * Gets the alias.
-     * 
-     * @return The alias.
-     */
-    public String getAlias() {
-        return alias;
-    }
-
-    /**
-     * Sets the alias.
-     * 
-     * @param a
-     *            The alias. It cannot be <code>null</code> or a blank string.
-     */
-    public void setAlias(String a) {
-        if (a == null || a.matches("[\\s]++")) {
-            log.error("Alias cannot be null or a blank string.");
-            throw new IllegalArgumentException(
-                    "Alias cannot be null or a blank string.");
-        }
-        alias = a;
-    }
-
-    /**
-     * Gets the path.
-     * 
-     * @return The path.
-     */
-    public String getPath() {
-        return path;
-    }
-
-    /**
-     * Sets the path.
-     * 
-     * @param p
-     *            The path. It cannot be <code>null</code> or a blank string.
-     */
-    public void setPath(String p) {
-        if (p == null || p.matches("[\\s]++")) {
-            String msg = new String("Path cannot be null or a blank string.");
-            log.error(msg);
-            throw new IllegalArgumentException(msg);
-        }
-        path = p;
-    }
-
-    /**
-     * Gets the Dex runtime configuration file path.
-     * 
-     * @return The Dex runtime configuration file path.
-     */
-    public String getDexConfiguration() {
-        return dexConf;
-    }
-
-    /**
-     * Sets the Dex runtime configuration file path.
-     * 
-     * @param c
-     *            The Dex runtime configuration file path.
-     */
-    public void setDexConfiguration(String c) {
-        if (c == null || c.matches("[\\s]++")) {
-            String msg = new String(
-                    "Dex runtime configuration file path cannot be null or a blank string.");
-            log.error(msg);
-            throw new IllegalArgumentException(msg);
-        }
-        dexConf = c;
-    }
-
-    /**
-     * Gets the parent {@link Configuration} instance.
-     * 
-     * @return The parent {@link Configuration} instance.
-     */
-    public Configuration getConfiguration() {
-        return configuration;
-    }
-
-    /**
-     * Sets the parent {@link Configuration} instance.
-     * 
-     * @param c
-     *            The parent {@link Configuration} instance.
-     */
-    public void setConfiguration(Configuration c) {
-        configuration = c;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        boolean result = false;
-        if (o instanceof DatabaseConfiguration) {
-            DatabaseConfiguration aux = (DatabaseConfiguration) o;
-            String n = getName();
-            if (n == null) {
-                result = (aux.getName() == null);
-            } else {
-                result = n.equals(aux.getName());
-            }
-
-            if (result) {
-                String a = getAlias();
-                if (a == null) {
-                    result = (aux.getAlias() == null);
-                } else {
-                    result = a.equals(aux.getAlias());
-                }
-            }
-
-            if (result) {
-                String p = getPath();
-                if (p == null) {
-                    result = (aux.getPath() == null);
-                } else {
-                    result = p.equals(aux.getPath());
-                }
-            }
-        }
-        return result;
-    }
-
-    /**
-     * Gets if the Database has been already closed or not.
-     * 
-     * @return <code>true</code> if closed, <code>false</code> otherwise.
-     */
-    public boolean isClosed() {
-        return (dex == null && db == null);
-    }
-
-    /**
-     * Opens the Database and sets the working {@link Session} for the calling
-     * thread.
-     * <p>
-     * The Database is open once, so this opens the Database just if it has not
-     * been opened before.
-     * <p>
-     * In any case, it starts the working {@link Session} for the calling thread
-     * if necessary.
-     */
-    public void openDatabase() {
-        if (isClosed()) {
-            File f = new File(getPath());
-            if (dexConf != null) {
-                DexProperties.load(dexConf);
-            }
-            dexCfg = new DexConfig();
-            dex = new Dex(dexCfg);
-            db = null;
-            try {
-                if (f.exists()) {
-                    db = dex.open(f.getAbsolutePath(), false);
-                    if (db.getAlias().compareTo(getAlias()) != 0) {
-                        throw new DexUtilsException(
-                                "Database with an unexpected name/alias");
-                    }
-                } else {
-                    db = dex.create(f.getAbsolutePath(), alias);
-                }
-            } catch (Exception e) {
-                String msg = new String("DexUtils cannot open/create the "
-                        + getAlias() + " database " + "located at "
-                        + f.getAbsolutePath());
-                log.error(msg, e);
-                throw new DexUtilsException(msg, e);
-            }
-            log.info("Database " + getAlias() + "[" + f.getAbsolutePath()
-                    + "] was opened");
-        }
-
-        this.sessMngr.get().getSession();
-    }
-
-    /**
-     * Closes and opens the Database.
-     * <p>
-     * Closing the database closes the working {@link Session}.
-     */
-    public void restartDatabase() {
-        closeDatabase();
-        openDatabase();
-    }
-
-    /**
-     * Closes the Database.
-     * <p>
-     * Therefore it also closes the working {@link Session}.
-     */
-    public void closeDatabase() {
-        //
-        // FIXME This just closes the Session of the calling thread, others may
-        // remain
-        // open!
-        //
-        if (!sessMngr.get().isClosed()) {
-            sessMngr.get().closeSession();
-        }
-        if (!isClosed()) {
-            db.close();
-            db = null;
-            dex.close();
-            dex = null;
-            log.info("Database " + getAlias() + " was closed");
-        }
-    }
-
-    /**
-     * Gets the working {@link Session} for the calling thread.
-     * <p>
-     * If necessary, it creates a new {@link Session}.
-     * 
-     * @return The working {@link Session} for the calling thread.
-     */
-    public Session getSession() {
-        return sessMngr.get().getSession();
-    }
-
-    /**
-     * Gets the {@link Graph} of the working {@link Session} for the calling
-     * thread.
-     * <p>
-     * If necessary, it creates a new {@link Session}.
-     * 
-     * @return The working {@link Graph} for the calling thread.
-     */
-    public Graph getGraph() {
-        return sessMngr.get().getGraph();
-    }
-
-    /**
-     * Drops all attributes and node and edge types.
-     */
-    public void dropSchema() {
-        if (isClosed()) {
-            openDatabase();
-        }
-        Graph graph = sessMngr.get().getGraph();
-
-        TypeList types = graph.findEdgeTypes();
-        TypeListIterator typeIt = types.iterator();
-        while (typeIt.hasNext()) {
-            Integer type = typeIt.next();
-            AttributeList alist = graph.findAttributes(type);
-            AttributeListIterator attrIt = alist.iterator();
-            while (attrIt.hasNext()) {
-                graph.removeAttribute(attrIt.next());
-            }
-            graph.removeType(type);
-        }
-        types = graph.findNodeTypes();
-        typeIt = types.iterator();
-        while (typeIt.hasNext()) {
-            Integer type = typeIt.next();
-            AttributeList alist = graph.findAttributes(type);
-            AttributeListIterator attrIt = alist.iterator();
-            while (attrIt.hasNext()) {
-                graph.removeAttribute(attrIt.next());
-            }
-            graph.removeType(type);
-        }
-        log.info("Schema for the Database " + getAlias() + " was droped");
-    }
-
-    /**
-     * Gets the Dex attribute identifier for the given attribute.
-     * 
-     * @param typename
-     *            Node or edge type name.
-     * @param name
-     *            Attribute name.
-     * @return The Dex attribute identifier or
-     *         {@link Attribute#InvalidAttribute} if if does not exist.
-     */
-    public Integer getAttributeIdentifier(String typename, String name) {
-        if (isClosed()) {
-            openDatabase();
-        }
-        int type = getTypeIdentifier(typename);
-
-        if (type != Type.InvalidType) {
-            return sessMngr.get().getGraph().findAttribute(type, name);
-        } else {
-            return Attribute.InvalidAttribute;
-        }
-    }
-
-    /**
-     * Gets the Dex type identifier for the given type.
-     * 
-     * @param name
-     *            Node or edge type name.
-     * @return The Dex node or edge type identifier or {@link Type#InvalidType}
-     *         if it does not exist.
-     */
-    public Integer getTypeIdentifier(String name) {
-        if (isClosed()) {
-            openDatabase();
-        }
-        return sessMngr.get().getGraph().findType(name);
-    }
-}
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.bean;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DatabaseUnavailableException;
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.loader.LoadJournal;
+import com.sparsity.dex.etl.loader.MappedOIDIndex;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.AttributeListIterator;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.DexProperties;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Type;
+import com.sparsity.dex.gdb.TypeListIterator;
+import com.sparsity.dex.gdb.Values;
+
+/**
+ * Allows for opening and closing a Dex database.
+ * <p>
+ * It also automatically manages a per-thread "working" {@link Session}. The
+ * user just gets a Session ({@link #getSession()}) and this automatically
+ * creates one if required or returns its {@link Session}. Moreover, this
+ * provides an exclusive per-thread {@link Session}.
+ * <p>
+ * By default, a new {@link Session} is created for each thread. Alternatively,
+ * {@link Session}s can be taken from a bounded {@link SessionPool} (see
+ * {@link #setSessionPoolSize(int)}). In that case, threads must call
+ * {@link #closeSession()} to return their {@link Session} to the pool, or
+ * better, use task-scoped {@link Session}s (see {@link #execute(SessionTask)}
+ * ), as a thread keeps its {@link Session} until then.
+ * <p>
+ * Every live {@link Session} is tracked, so closing the Database closes the
+ * {@link Session}s of all the threads, not just the calling one. The
+ * {@link Session}s of threads which finished without calling
+ * {@link #closeSession()} are closed (and their pool permits released) the
+ * next time a {@link Session} is requested.
+ * <p>
+ * Opening, closing and restarting the Database are thread-safe. Its lifecycle
+ * is an atomic state machine (CLOSED, OPENING, OPEN, CLOSING): just one thread
+ * performs each transition, while others wait for it to finish. Once the
+ * Database is open, checking it takes a single volatile read.
+ * <p>
+ * A graceful restart (see {@link #restartDatabase(long)}) drains the running
+ * tasks (see {@link #execute(SessionTask)}) before closing the Database and
+ * reopens it in the background. Just tasks are drained, as Dex
+ * {@link Session}s do not tell if they are in a transaction.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class DatabaseConfiguration {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(DatabaseConfiguration.class);
+
+    /**
+     * Unique name for the {@link DatabaseConfiguration}.
+     */
+    private String name = null;
+
+    /**
+     * Alias database.
+     */
+    private String alias = null;
+
+    /**
+     * Path database.
+     */
+    private String path = null;
+
+    /**
+     * Dex configuration file.
+     */
+    private String dexConf = null;
+
+    /**
+     * Manages a Dex {@link Session} as well as its {@link Graph} instance.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private class SessionManager {
+
+        /**
+         * {@link Graph} instance.
+         */
+        private volatile Graph graph = null;
+
+        /**
+         * {@link Session} instance.
+         */
+        private volatile Session session = null;
+
+        /**
+         * {@link SessionPool} the {@link Session} was borrowed from, or
+         * <code>null</code> if it is not a pooled {@link Session}.
+         */
+        private SessionPool pool = null;
+
+        /**
+         * Thread identifier.
+         */
+        long thId = Thread.currentThread().getId();
+
+        /**
+         * Number of nested tasks of the owner thread running in
+         * {@link DatabaseConfiguration#execute(SessionTask)}.
+         */
+        int tasks = 0;
+
+        /**
+         * Owner thread. It is weakly referenced so that the registry of live
+         * {@link Session}s does not prevent finished threads from being
+         * collected.
+         */
+        private WeakReference<Thread> owner = new WeakReference<Thread>(
+                Thread.currentThread());
+
+        /**
+         * Creates a new instance.
+         */
+        public SessionManager() {
+        }
+
+        /**
+         * Closes the {@link Session}.
+         * <p>
+         * A pooled {@link Session} is returned to its pool instead, unless its
+         * thread has finished, as it may have left a transaction open.
+         */
+        public synchronized void closeSession() {
+            if (session == null) {
+                return;
+            }
+            if (pool != null) {
+                if (isOrphan() && !session.isClosed()) {
+                    session.close();
+                }
+                pool.release(session);
+                sessions.remove(this);
+                log.debug("Dex Session was returned to the pool for thread "
+                        + thId);
+                if (draining) {
+                    signalTransition();
+                }
+            } else {
+                if (!session.isClosed()) {
+                    session.close();
+                    log.debug("Dex Session was closed for thread " + thId);
+                }
+                sessions.remove(this);
+            }
+            session = null;
+            graph = null;
+            pool = null;
+        }
+
+        /**
+         * Gets if the {@link Session} is closed.
+         * 
+         * @return
+         */
+        public boolean isClosed() {
+            return session == null || session.isClosed();
+        }
+
+        /**
+         * Gets the {@link Session}.
+         * <p>
+         * It creates a new one {@link Session} if there was no {@link Session}
+         * or if it was already closed.
+         * 
+         * @return The {@link Session}.
+         */
+        public synchronized Session getSession() {
+            if (isClosed()) {
+                closeSession();
+                awaitAvailable();
+                purgeSessions();
+                SessionPool p = DatabaseConfiguration.this.sessPool;
+                if (p != null) {
+                    session = p.borrow();
+                    pool = p;
+                    sessions.add(this);
+                    log.debug("Dex Session was borrowed for thread " + thId);
+                } else {
+                    // A closing Database either sees it in closeSessions()
+                    // or makes it fail here
+                    synchronized (sessions) {
+                        Database d = DatabaseConfiguration.this.db;
+                        if (state.get() != OPEN || d == null) {
+                            String msg = new String("Database " + getAlias()
+                                    + " is closed.");
+                            log.error(msg);
+                            throw new DexUtilsException(msg);
+                        }
+                        session = d.newSession();
+                        sessions.add(this);
+                    }
+                    log.debug("Dex Session was created for thread " + thId);
+                }
+                graph = session.getGraph();
+            }
+            return session;
+        }
+
+        /**
+         * Gets the {@link Graph}.
+         * <p>
+         * It creates a new one {@link Session} if there was no {@link Session}
+         * or if it was already closed.
+         * 
+         * @return The {@link Graph} of the {@link Session}.
+         */
+        public Graph getGraph() {
+            if (isClosed()) {
+                getSession();
+            }
+            return graph;
+        }
+
+        /**
+         * Gets if the owner thread has finished.
+         * 
+         * @return <code>true</code> if the owner thread has finished,
+         *         <code>false</code> otherwise.
+         */
+        public boolean isOrphan() {
+            Thread th = owner.get();
+            return th == null || !th.isAlive();
+        }
+    }
+
+    /**
+     * Manages a per-thread local {@link SessionManager} instance.
+     * <p>
+     * Therefore, each thread will just access its {@link SessionManager}
+     * instance.
+     */
+    private ThreadLocal<SessionManager> sessMngr = new ThreadLocal<SessionManager>() {
+        @Override
+        protected SessionManager initialValue() {
+            return new SessionManager();
+        }
+    };
+
+    /**
+     * Registry of the {@link SessionManager}s holding a live {@link Session},
+     * either pooled or not.
+     */
+    private Set<SessionManager> sessions = Collections
+            .newSetFromMap(new ConcurrentHashMap<SessionManager, Boolean>());
+
+    /**
+     * Declared schema, or <code>null</code>.
+     */
+    private SchemaDefinition schema = null;
+
+    /**
+     * Maximum number of pooled {@link Session}s, or <code>0</code> to create
+     * one {@link Session} per thread.
+     */
+    private int sessionPoolSize = 0;
+
+    /**
+     * Maximum time (in milliseconds) a pooled {@link Session} may remain
+     * idle.
+     */
+    private long sessionIdleTimeout = 60000;
+
+    /**
+     * Maximum time (in milliseconds) to wait for a pooled {@link Session}.
+     */
+    private long sessionWaitTimeout = 10000;
+
+    /**
+     * {@link SessionPool} instance (just in pooled mode and while the
+     * Database is open).
+     */
+    private volatile SessionPool sessPool = null;
+
+    /**
+     * {@link DexConfig} instance.
+     */
+    private DexConfig dexCfg = null;
+
+    /**
+     * Minimum number of objects for {@link DropMode#AUTO} to choose
+     * {@link DropMode#RECREATE}.
+     */
+    public static final long RECREATE_THRESHOLD = 1000000;
+
+    /**
+     * Lifecycle state: the Database is closed.
+     */
+    private static final int CLOSED = 0;
+
+    /**
+     * Lifecycle state: the Database is being opened.
+     */
+    private static final int OPENING = 1;
+
+    /**
+     * Lifecycle state: the Database is open.
+     */
+    private static final int OPEN = 2;
+
+    /**
+     * Lifecycle state: the Database is being closed.
+     */
+    private static final int CLOSING = 3;
+
+    /**
+     * Lifecycle state.
+     */
+    private AtomicInteger state = new AtomicInteger(CLOSED);
+
+    /**
+     * Monitor to wait for lifecycle transitions to finish.
+     */
+    private Object transition = new Object();
+
+    /**
+     * Whether a graceful restart is in progress.
+     */
+    private volatile boolean draining = false;
+
+    /**
+     * Ongoing graceful restart, or <code>null</code>.
+     */
+    private Future<Void> restart = null;
+
+    /**
+     * Thread performing the ongoing graceful restart, or <code>null</code>.
+     */
+    private volatile Thread restarter = null;
+
+    /**
+     * Number of tasks running in {@link #execute(SessionTask)}.
+     */
+    private AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * Maximum time (in milliseconds) new requests wait for a graceful restart
+     * to finish.
+     */
+    private long restartWaitTimeout = 1000;
+
+    /**
+     * {@link Dex} instance.
+     */
+    private volatile Dex dex = null;
+
+    /**
+     * {@link Database} instance.
+     */
+    private volatile Database db = null;
+
+    /**
+     * Parent {@link Configuration} instance.
+     */
+    private Configuration configuration;
+
+    /**
+     * Schema cache: Dex type identifiers by type name.
+     * <p>
+     * Just existing types are cached.
+     */
+    private ConcurrentMap<String, Integer> typeIds = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Schema cache: Dex attribute identifiers by type name and attribute name.
+     * <p>
+     * Just existing attributes are cached.
+     */
+    private ConcurrentMap<String, ConcurrentMap<String, Integer>> attrIds = new ConcurrentHashMap<String, ConcurrentMap<String, Integer>>();
+
+    /**
+     * Schema cache: Dex attribute identifiers by split character and
+     * concatenated type and attribute name (see
+     * {@link #getAttributeIdentifier(String, char)}).
+     * <p>
+     * Just existing attributes are cached.
+     */
+    private ConcurrentMap<Character, ConcurrentMap<String, Integer>> splitAttrIds = new ConcurrentHashMap<Character, ConcurrentMap<String, Integer>>();
+
+    /**
+     * Gets the unique name.
+     * 
+     * @return The unique name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the unique name.
+     * 
+     * @param n
+     *            The unique name. It cannot be <code>null</code> or a blank
+     *            string.
+     */
+    public void setName(String n) {
+        if (n == null || n.matches("[\\s]++")) {
+            log.error("Name cannot be null or a blank string.");
+            throw new IllegalArgumentException(
+                    "Name cannot be null or a blank string.");
+        }
+        name = n;
+    }
+
+    /**
+     * Gets the alias.
+     * 
+     * @return The alias.
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * Sets the alias.
+     * 
+     * @param a
+     *            The alias. It cannot be <code>null</code> or a blank string.
+     */
+    public void setAlias(String a) {
+        if (a == null || a.matches("[\\s]++")) {
+            log.error("Alias cannot be null or a blank string.");
+            throw new IllegalArgumentException(
+                    "Alias cannot be null or a blank string.");
+        }
+        alias = a;
+    }
+
+    /**
+     * Gets the path.
+     * 
+     * @return The path.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the path.
+     * 
+     * @param p
+     *            The path. It cannot be <code>null</code> or a blank string.
+     */
+    public void setPath(String p) {
+        if (p == null || p.matches("[\\s]++")) {
+            String msg = new String("Path cannot be null or a blank string.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        path = p;
+    }
+
+    /**
+     * Gets the Dex runtime configuration file path.
+     * 
+     * @return The Dex runtime configuration file path.
+     */
+    public String getDexConfiguration() {
+        return dexConf;
+    }
+
+    /**
+     * Sets the Dex runtime configuration file path.
+     * 
+     * @param c
+     *            The Dex runtime configuration file path.
+     */
+    public void setDexConfiguration(String c) {
+        if (c == null || c.matches("[\\s]++")) {
+            String msg = new String(
+                    "Dex runtime configuration file path cannot be null or a blank string.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        dexConf = c;
+    }
+
+    /**
+     * Gets the declared schema.
+     * 
+     * @return The declared schema, or <code>null</code>.
+     */
+    public SchemaDefinition getSchema() {
+        return schema;
+    }
+
+    /**
+     * Sets the declared schema (see {@link #createSchema()}).
+     * 
+     * @param s
+     *            The declared schema, or <code>null</code>.
+     */
+    public void setSchema(SchemaDefinition s) {
+        schema = s;
+    }
+
+    /**
+     * Gets the maximum number of pooled {@link Session}s.
+     * 
+     * @return The maximum number of pooled {@link Session}s, or
+     *         <code>0</code> if there is no pool.
+     */
+    public int getSessionPoolSize() {
+        return sessionPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of pooled {@link Session}s.
+     * <p>
+     * When it is positive, working {@link Session}s are borrowed from a
+     * bounded {@link SessionPool} and {@link #closeSession()} returns them to
+     * the pool. Otherwise, a new {@link Session} is created for each thread.
+     * By default, <code>0</code>.
+     * <p>
+     * A thread keeps its working {@link Session} until it calls
+     * {@link #closeSession()} or finishes, so thread pools larger than the
+     * {@link SessionPool} should use {@link #execute(SessionTask)} instead.
+     * <p>
+     * It takes effect the next time the Database is opened.
+     * 
+     * @param size
+     *            The maximum number of pooled {@link Session}s, or
+     *            <code>0</code> to disable the pool.
+     */
+    public void setSessionPoolSize(int size) {
+        if (size < 0) {
+            String msg = new String("Session pool size cannot be negative.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        sessionPoolSize = size;
+    }
+
+    /**
+     * Gets the maximum time (in milliseconds) a pooled {@link Session} may
+     * remain idle.
+     * 
+     * @return The maximum idle time in milliseconds.
+     */
+    public long getSessionIdleTimeout() {
+        return sessionIdleTimeout;
+    }
+
+    /**
+     * Sets the maximum time (in milliseconds) a pooled {@link Session} may
+     * remain idle before it is closed. By default, one minute.
+     * <p>
+     * It takes effect the next time the Database is opened.
+     * 
+     * @param ms
+     *            The maximum idle time in milliseconds, or <code>0</code> to
+     *            never close idle {@link Session}s.
+     */
+    public void setSessionIdleTimeout(long ms) {
+        if (ms < 0) {
+            String msg = new String("Session idle timeout cannot be negative.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        sessionIdleTimeout = ms;
+    }
+
+    /**
+     * Gets the maximum time (in milliseconds) to wait for a pooled
+     * {@link Session}.
+     * 
+     * @return The maximum wait time in milliseconds.
+     */
+    public long getSessionWaitTimeout() {
+        return sessionWaitTimeout;
+    }
+
+    /**
+     * Sets the maximum time (in milliseconds) to wait for a pooled
+     * {@link Session} when all of them are borrowed. By default, ten seconds.
+     * <p>
+     * It takes effect the next time the Database is opened.
+     * 
+     * @param ms
+     *            The maximum wait time in milliseconds.
+     */
+    public void setSessionWaitTimeout(long ms) {
+        if (ms < 0) {
+            String msg = new String("Session wait timeout cannot be negative.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        sessionWaitTimeout = ms;
+    }
+
+    /**
+     * Gets the maximum time (in milliseconds) new requests wait for a
+     * graceful restart to finish.
+     * 
+     * @return The maximum wait time in milliseconds.
+     */
+    public long getRestartWaitTimeout() {
+        return restartWaitTimeout;
+    }
+
+    /**
+     * Sets the maximum time (in milliseconds) new requests wait for a
+     * graceful restart to finish before failing with a
+     * {@link DatabaseUnavailableException}. By default, one second.
+     * 
+     * @param ms
+     *            The maximum wait time in milliseconds, or <code>0</code> to
+     *            fail fast.
+     */
+    public void setRestartWaitTimeout(long ms) {
+        if (ms < 0) {
+            String msg = new String("Restart wait timeout cannot be negative.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        restartWaitTimeout = ms;
+    }
+
+    /**
+     * Gets the {@link SessionPool} instance.
+     * <p>
+     * {@link Session}s can be borrowed from it directly, instead of being
+     * bound to the calling thread by {@link #getSession()}.
+     * 
+     * @return The {@link SessionPool} instance, or <code>null</code> if the
+     *         pool is disabled or the Database is closed.
+     */
+    public SessionPool getSessionPool() {
+        return sessPool;
+    }
+
+    /**
+     * Gets the parent {@link Configuration} instance.
+     * 
+     * @return The parent {@link Configuration} instance.
+     */
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Sets the parent {@link Configuration} instance.
+     * 
+     * @param c
+     *            The parent {@link Configuration} instance.
+     */
+    public void setConfiguration(Configuration c) {
+        configuration = c;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        boolean result = false;
+        if (o instanceof DatabaseConfiguration) {
+            DatabaseConfiguration aux = (DatabaseConfiguration) o;
+            String n = getName();
+            if (n == null) {
+                result = (aux.getName() == null);
+            } else {
+                result = n.equals(aux.getName());
+            }
+
+            if (result) {
+                String a = getAlias();
+                if (a == null) {
+                    result = (aux.getAlias() == null);
+                } else {
+                    result = a.equals(aux.getAlias());
+                }
+            }
+
+            if (result) {
+                String p = getPath();
+                if (p == null) {
+                    result = (aux.getPath() == null);
+                } else {
+                    result = p.equals(aux.getPath());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets if the Database has been already closed or not.
+     * 
+     * @return <code>true</code> if closed, <code>false</code> otherwise.
+     */
+    public boolean isClosed() {
+        return state.get() != OPEN;
+    }
+
+    /**
+     * Finishes a lifecycle transition and wakes up the threads waiting for
+     * it.
+     * 
+     * @param s
+     *            The new lifecycle state.
+     */
+    private void finishTransition(int s) {
+        state.set(s);
+        signalTransition();
+    }
+
+    /**
+     * Wakes up the threads waiting on the transition monitor.
+     */
+    private void signalTransition() {
+        synchronized (transition) {
+            transition.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the ongoing graceful restart, if any, to finish.
+     * 
+     * @throws DatabaseUnavailableException
+     *             if it does not finish within the restart wait timeout.
+     */
+    private void awaitAvailable() throws DatabaseUnavailableException {
+        if (!draining || Thread.currentThread() == restarter) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + restartWaitTimeout;
+        boolean interrupted = false;
+        synchronized (transition) {
+            long remaining = restartWaitTimeout;
+            while (draining && remaining > 0) {
+                try {
+                    transition.wait(remaining);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (draining) {
+            String msg = new String("Database " + getAlias()
+                    + " is restarting.");
+            log.debug(msg);
+            throw new DatabaseUnavailableException(msg);
+        }
+    }
+
+    /**
+     * Gets the number of in-flight tasks, that is, running
+     * {@link #execute(SessionTask)} tasks.
+     * <p>
+     * Working {@link Session}s bound to threads outside a task and
+     * {@link Session}s borrowed directly from the {@link SessionPool} are not
+     * in flight, as it is not known if they are in a transaction.
+     * 
+     * @return The number of in-flight tasks.
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Waits for the in-flight tasks to finish.
+     * 
+     * @param timeout
+     *            Maximum time to wait in milliseconds.
+     * @return <code>true</code> if all of them finished, <code>false</code>
+     *         otherwise.
+     */
+    private boolean drain(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        boolean interrupted = false;
+        synchronized (transition) {
+            long remaining = timeout;
+            while (getInFlightCount() > 0 && remaining > 0) {
+                try {
+                    transition.wait(remaining);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return getInFlightCount() == 0;
+    }
+
+    /**
+     * Waits for the ongoing lifecycle transition, if any, to finish.
+     */
+    private void awaitTransition() {
+        boolean interrupted = false;
+        synchronized (transition) {
+            int s = state.get();
+            while (s == OPENING || s == CLOSING) {
+                try {
+                    transition.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                s = state.get();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Opens the Database and sets the working {@link Session} for the calling
+     * thread.
+     * <p>
+     * The Database is open once, so this opens the Database just if it has not
+     * been opened before.
+     * <p>
+     * In any case, it starts the working {@link Session} for the calling thread
+     * if necessary.
+     */
+    public void openDatabase() {
+        while (state.get() != OPEN) {
+            if (state.compareAndSet(CLOSED, OPENING)) {
+                boolean opened = false;
+                try {
+                    open();
+                    opened = true;
+                } finally {
+                    finishTransition(opened ? OPEN : CLOSED);
+                }
+            } else {
+                awaitTransition();
+            }
+        }
+
+        this.sessMngr.get().getSession();
+    }
+
+    /**
+     * Opens or creates the Database.
+     * <p>
+     * It must just be called from the OPENING state.
+     */
+    private void open() {
+        File f = new File(getPath());
+        // DexProperties are global, so databases opened concurrently
+        // must not mix their properties
+        synchronized (DexProperties.class) {
+            if (dexConf != null) {
+                DexProperties.load(dexConf);
+            }
+            dexCfg = new DexConfig();
+        }
+        Dex x = new Dex(dexCfg);
+        Database d = null;
+        try {
+            if (f.exists()) {
+                d = x.open(f.getAbsolutePath(), false);
+                if (d.getAlias().compareTo(getAlias()) != 0) {
+                    throw new DexUtilsException(
+                            "Database with an unexpected name/alias");
+                }
+            } else {
+                d = x.create(f.getAbsolutePath(), alias);
+            }
+        } catch (Exception e) {
+            if (d != null) {
+                d.close();
+            }
+            x.close();
+            String msg = new String("DexUtils cannot open/create the "
+                    + getAlias() + " database " + "located at "
+                    + f.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+        if (sessionPoolSize > 0) {
+            sessPool = new SessionPool(d, sessionPoolSize,
+                    sessionIdleTimeout, sessionWaitTimeout);
+        }
+        dex = x;
+        db = d;
+        log.info("Database " + getAlias() + "[" + f.getAbsolutePath()
+                + "] was opened");
+    }
+
+    /**
+     * Closes and opens the Database.
+     * <p>
+     * Closing the database closes the working {@link Session}. Concurrent
+     * restarts are safe: each of them waits for the ongoing transition and
+     * the Database ends up open.
+     */
+    public void restartDatabase() {
+        closeDatabase();
+        openDatabase();
+    }
+
+    /**
+     * Restarts the Database gracefully in the background.
+     * <p>
+     * Meanwhile, new requests for a {@link Session} wait up to the restart
+     * wait timeout (see {@link #setRestartWaitTimeout(long)}) and then fail
+     * with a {@link DatabaseUnavailableException}. In-flight tasks (see
+     * {@link #getInFlightCount()}) are given up to the drain timeout to
+     * finish before the Database is closed and reopened.
+     * <p>
+     * Just tasks are drained: the working {@link Session}s of other threads
+     * are closed with the Database, whatever they are doing. Meanwhile, those
+     * threads wait in {@link #getSession()} and {@link #getGraph()} as new
+     * requests do, so they do not start anything on a {@link Session} about
+     * to be closed, and then get a new {@link Session}.
+     * <p>
+     * If a graceful restart is already in progress, it is returned instead of
+     * starting a new one.
+     * 
+     * @param drainTimeout
+     *            Maximum time (in milliseconds) to wait for the in-flight
+     *            tasks.
+     * @return The restart, which completes once the Database is open again.
+     * @throws DatabaseUnavailableException
+     *             if the Database is being recreated (see
+     *             {@link #recreate(SchemaDefinition)}).
+     */
+    public Future<Void> restartDatabase(final long drainTimeout)
+            throws DatabaseUnavailableException {
+        if (drainTimeout < 0) {
+            String msg = new String("Drain timeout cannot be negative.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        FutureTask<Void> task;
+        synchronized (transition) {
+            if (restart != null) {
+                return restart;
+            }
+            // The Database is being recreated
+            if (draining) {
+                String msg = new String("Database " + getAlias()
+                        + " is restarting.");
+                log.error(msg);
+                throw new DatabaseUnavailableException(msg);
+            }
+            task = new FutureTask<Void>(new Callable<Void>() {
+                public Void call() {
+                    restarter = Thread.currentThread();
+                    try {
+                        long start = System.currentTimeMillis();
+                        int n = getInFlightCount();
+                        if (drain(drainTimeout)) {
+                            log.info(n + " in-flight tasks of Database "
+                                    + getAlias() + " were drained in "
+                                    + (System.currentTimeMillis() - start)
+                                    + " ms");
+                        } else {
+                            log.warn(getInFlightCount()
+                                    + " tasks of Database "
+                                    + getAlias() + " were still in flight after "
+                                    + drainTimeout + " ms, closing anyway");
+                        }
+                        closeDatabase();
+                        openDatabase();
+                        closeSession();
+                        log.info("Database " + getAlias()
+                                + " was restarted in "
+                                + (System.currentTimeMillis() - start) + " ms");
+                        return null;
+                    } finally {
+                        synchronized (transition) {
+                            restarter = null;
+                            restart = null;
+                            draining = false;
+                            transition.notifyAll();
+                        }
+                    }
+                }
+            });
+            restart = task;
+            draining = true;
+        }
+        Thread th = new Thread(task, "restart-" + getAlias());
+        th.setDaemon(true);
+        th.start();
+        return task;
+    }
+
+    /**
+     * Closes the Database.
+     * <p>
+     * Therefore it also closes the working {@link Session}s of all the
+     * threads (see {@link #closeSessions()}).
+     */
+    public void closeDatabase() {
+        if (!sessMngr.get().isClosed()) {
+            sessMngr.get().closeSession();
+        }
+        while (state.get() != CLOSED) {
+            if (state.compareAndSet(OPEN, CLOSING)) {
+                try {
+                    close();
+                } finally {
+                    finishTransition(CLOSED);
+                }
+            } else {
+                awaitTransition();
+            }
+        }
+    }
+
+    /**
+     * Closes the Database and its {@link Session}s.
+     * <p>
+     * It must just be called from the CLOSING state.
+     */
+    private void close() {
+        try {
+            closeSessions();
+        } finally {
+            clearSchemaCache();
+            if (sessPool != null) {
+                sessPool.close();
+                sessPool = null;
+            }
+            Database d = db;
+            Dex x = dex;
+            db = null;
+            dex = null;
+            d.close();
+            x.close();
+            log.info("Database " + getAlias() + " was closed");
+        }
+    }
+
+    /**
+     * Gets the number of live working {@link Session}s of the threads, either
+     * pooled or not.
+     * 
+     * @return The number of live working {@link Session}s.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Closes the working {@link Session}s of all the threads in parallel.
+     * Pooled {@link Session}s are returned to the pool instead.
+     * <p>
+     * It uses as many threads as {@link Session}s, up to the number of
+     * available processors, and logs how long each {@link Session} took to
+     * close. Other threads must not be using their {@link Session}s meanwhile;
+     * they get a new one the next time they ask for it.
+     */
+    public void closeSessions() {
+        List<SessionManager> all;
+        synchronized (sessions) {
+            all = new ArrayList<SessionManager>(sessions);
+        }
+        if (all.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(
+                all.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>(all.size());
+            for (final SessionManager mngr : all) {
+                results.add(workers.submit(new Callable<Void>() {
+                    public Void call() {
+                        long t = System.currentTimeMillis();
+                        mngr.closeSession();
+                        log.info("Dex Session of thread " + mngr.thId
+                                + " was closed in "
+                                + (System.currentTimeMillis() - t) + " ms");
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            String msg = new String("Cannot close the Sessions of Database "
+                    + getAlias());
+            log.error(msg, e.getCause());
+            throw new DexUtilsException(msg, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexUtilsException(
+                    "Interrupted while closing the Sessions of Database "
+                            + getAlias(), e);
+        } finally {
+            workers.shutdown();
+        }
+        log.info(all.size() + " Dex Sessions of Database " + getAlias()
+                + " were closed in " + (System.currentTimeMillis() - start)
+                + " ms");
+    }
+
+    /**
+     * Closes the working {@link Session}s whose thread has finished without
+     * calling {@link #closeSession()}. Pooled ones release their permit.
+     */
+    private void purgeSessions() {
+        for (SessionManager mngr : sessions) {
+            if (mngr.isOrphan()) {
+                mngr.closeSession();
+                log.debug("Dex Session of finished thread " + mngr.thId
+                        + " was closed");
+            }
+        }
+    }
+
+    /**
+     * Gets the working {@link Session} for the calling thread.
+     * <p>
+     * If necessary, it opens the Database and creates a new {@link Session}.
+     * Outside a task (see {@link #execute(SessionTask)}), it waits for an
+     * ongoing graceful restart, which closes the current {@link Session}.
+     * 
+     * @return The working {@link Session} for the calling thread.
+     * @throws DatabaseUnavailableException
+     *             if the graceful restart does not finish within the restart
+     *             wait timeout.
+     */
+    public Session getSession() throws DatabaseUnavailableException {
+        SessionManager mngr = sessMngr.get();
+        if (draining && mngr.tasks == 0) {
+            awaitAvailable();
+        }
+        if (isClosed()) {
+            awaitAvailable();
+            openDatabase();
+        }
+        return mngr.getSession();
+    }
+
+    /**
+     * Closes the working {@link Session} for the calling thread, if any.
+     * <p>
+     * Threads which are about to finish should call it, otherwise their
+     * {@link Session} remains open. A pooled {@link Session} is returned to
+     * the {@link SessionPool} instead of being closed.
+     */
+    public void closeSession() {
+        sessMngr.get().closeSession();
+        sessMngr.remove();
+    }
+
+    /**
+     * Runs the given task with a task-scoped {@link Session}.
+     * <p>
+     * If the calling thread already has a working {@link Session}, the task
+     * uses it. Otherwise, a {@link Session} is taken for the task (borrowed
+     * from the {@link SessionPool} in pooled mode) and released as soon as the
+     * task finishes, so no per-thread state remains afterwards. While the task
+     * runs, {@link #getSession()} and {@link #getGraph()} return the task
+     * {@link Session} and its {@link Graph}.
+     * <p>
+     * This is the preferred way to access the Database from short-lived
+     * threads, such as one thread per request: combined with pooled mode (see
+     * {@link #setSessionPoolSize(int)}), the number of native {@link Session}s
+     * is bounded by the pool size instead of the number of threads.
+     * 
+     * @param task
+     *            Task to be run.
+     * @return The result of the task.
+     * @throws DexUtilsException
+     *             if the task fails or no {@link Session} is available.
+     */
+    public <T> T execute(SessionTask<T> task) throws DexUtilsException {
+        if (task == null) {
+            String msg = new String("Task cannot be null.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        awaitAvailable();
+        if (isClosed()) {
+            openDatabase();
+        }
+        SessionManager mngr = sessMngr.get();
+        boolean scoped = mngr.isClosed();
+        inFlight.incrementAndGet();
+        mngr.tasks++;
+        try {
+            Session sess = mngr.getSession();
+            return task.execute(sess, mngr.getGraph());
+        } catch (DexUtilsException e) {
+            throw e;
+        } catch (Exception e) {
+            String msg = new String("Task failed on Database " + getAlias()
+                    + ".");
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } finally {
+            mngr.tasks--;
+            if (scoped) {
+                closeSession();
+            }
+            inFlight.decrementAndGet();
+            if (draining) {
+                signalTransition();
+            }
+        }
+    }
+
+    /**
+     * Gets the {@link Graph} of the working {@link Session} for the calling
+     * thread.
+     * <p>
+     * If necessary, it opens the Database and creates a new {@link Session}.
+     * Outside a task, it waits for an ongoing graceful restart (see
+     * {@link #getSession()}).
+     * 
+     * @return The working {@link Graph} for the calling thread.
+     * @throws DatabaseUnavailableException
+     *             if the graceful restart does not finish within the restart
+     *             wait timeout.
+     */
+    public Graph getGraph() throws DatabaseUnavailableException {
+        SessionManager mngr = sessMngr.get();
+        if (draining && mngr.tasks == 0) {
+            awaitAvailable();
+        }
+        if (isClosed()) {
+            awaitAvailable();
+            openDatabase();
+        }
+        return mngr.getGraph();
+    }
+
+    /**
+     * Drops all attributes and node and edge types.
+     * <p>
+     * It removes them one by one (see {@link DropMode#REMOVE}).
+     */
+    public void dropSchema() {
+        dropSchema(DropMode.REMOVE);
+    }
+
+    /**
+     * Drops all attributes and node and edge types.
+     * <p>
+     * Progress and timings are logged for each type.
+     * 
+     * @param mode
+     *            How to drop the schema.
+     */
+    public void dropSchema(DropMode mode) {
+        if (mode == null) {
+            String msg = new String("Drop mode cannot be null.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (isClosed()) {
+            openDatabase();
+        }
+        long start = System.currentTimeMillis();
+        if (mode == DropMode.AUTO) {
+            Graph graph = sessMngr.get().getGraph();
+            long objects = graph.countNodes() + graph.countEdges();
+            mode = (objects >= RECREATE_THRESHOLD) ? DropMode.RECREATE
+                    : DropMode.REMOVE;
+            log.debug("Database " + getAlias() + " has " + objects
+                    + " objects, dropping its schema with mode " + mode);
+        }
+        if (mode == DropMode.RECREATE) {
+            recreate();
+        } else {
+            removeSchema(sessMngr.get().getGraph());
+        }
+        clearSchemaCache();
+        log.info("Schema for the Database " + getAlias() + " was droped in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Removes all attributes and node and edge types one by one.
+     * <p>
+     * Edge types are removed before node types.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     */
+    private void removeSchema(Graph graph) {
+        List<Integer> types = new ArrayList<Integer>();
+        TypeListIterator typeIt = graph.findEdgeTypes().iterator();
+        while (typeIt.hasNext()) {
+            types.add(typeIt.next());
+        }
+        typeIt = graph.findNodeTypes().iterator();
+        while (typeIt.hasNext()) {
+            types.add(typeIt.next());
+        }
+
+        int done = 0;
+        for (Integer type : types) {
+            long start = System.currentTimeMillis();
+            Type tdata = graph.getType(type);
+            int attrs = 0;
+            AttributeListIterator attrIt = graph.findAttributes(type)
+                    .iterator();
+            while (attrIt.hasNext()) {
+                graph.removeAttribute(attrIt.next());
+                attrs++;
+            }
+            graph.removeType(type);
+            done++;
+            log.info("Type " + tdata.getName() + " (" + tdata.getNumObjects()
+                    + " objects, " + attrs + " attributes) was removed in "
+                    + (System.currentTimeMillis() - start) + " ms [" + done
+                    + "/" + types.size() + "]");
+        }
+    }
+
+    /**
+     * Closes the Database, deletes its files and creates it again, empty.
+     * 
+     * @see #recreate(SchemaDefinition)
+     */
+    public void recreate() {
+        recreate(null);
+    }
+
+    /**
+     * Closes the Database, deletes its files and creates it again with the
+     * same alias.
+     * <p>
+     * The Database file, its recovery log, its {@link LoadJournal} and its
+     * persistent {@link MappedOIDIndex}es are deleted, so this is much faster
+     * than dropping the schema of a large Database. All the {@link Session}s
+     * are closed. Meanwhile, other threads requesting a {@link Session} wait
+     * as during a graceful restart (see {@link #setRestartWaitTimeout(long)}).
+     * 
+     * @param schema
+     *            Schema to be created in the new Database, or
+     *            <code>null</code> to leave it empty.
+     * @throws DatabaseUnavailableException
+     *             if the Database is being restarted.
+     */
+    public void recreate(SchemaDefinition schema)
+            throws DatabaseUnavailableException {
+        synchronized (transition) {
+            if (draining) {
+                String msg = new String("Database " + getAlias()
+                        + " is restarting.");
+                log.error(msg);
+                throw new DatabaseUnavailableException(msg);
+            }
+            draining = true;
+            restarter = Thread.currentThread();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            closeDatabase();
+            File f = new File(getPath());
+            delete(f);
+            String recovery = (dexCfg == null) ? null : dexCfg
+                    .getRecoveryLogFile();
+            if (recovery == null || recovery.length() == 0) {
+                recovery = f.getPath() + ".log";
+            }
+            delete(new File(recovery));
+            // Checkpoints of the previous image are no longer valid
+            delete(new File(f.getPath() + LoadJournal.EXTENSION));
+            // And so are the keys of the persistent OID indexes, along with
+            // their table and keys files
+            String prefix = f.getName() + ".";
+            File[] files = f.getAbsoluteFile().getParentFile().listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                String name = files[i].getName();
+                if (name.startsWith(prefix)
+                        && name.contains(MappedOIDIndex.EXTENSION)) {
+                    delete(files[i]);
+                }
+            }
+            openDatabase();
+            if (schema != null) {
+                schema.apply(sessMngr.get().getGraph());
+            }
+            clearSchemaCache();
+            log.info("Database " + getAlias() + " was recreated in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            synchronized (transition) {
+                restarter = null;
+                draining = false;
+                transition.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Deletes the given file, if it exists.
+     * 
+     * @param f
+     *            File to be deleted.
+     * @throws DexUtilsException
+     *             if the file cannot be deleted.
+     */
+    private static void delete(File f) throws DexUtilsException {
+        if (f.exists() && !f.delete()) {
+            String msg = new String("Cannot delete " + f.getAbsolutePath());
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+    }
+
+    /**
+     * Creates the missing types and attributes of the declared schema (see
+     * {@link #setSchema(SchemaDefinition)}) in a single pass.
+     * <p>
+     * It opens the Database if necessary, and caches the identifiers of all
+     * the declared types and attributes.
+     * 
+     * @return The number of created types and attributes.
+     * @throws DexUtilsException
+     *             if there is no declared schema or it cannot be created.
+     */
+    public int createSchema() throws DexUtilsException {
+        return createSchema(false);
+    }
+
+    /**
+     * Creates the missing types and attributes of the declared schema (see
+     * {@link #setSchema(SchemaDefinition)}) in a single pass.
+     * <p>
+     * If indexes are deferred, declared indexed and unique attributes are
+     * created as {@link AttributeKind#Basic} and {@link #buildIndexes()} must
+     * be called once the data is loaded.
+     * 
+     * @param deferIndexes
+     *            Whether to defer the indexes.
+     * @return The number of created types and attributes.
+     * @throws DexUtilsException
+     *             if there is no declared schema or it cannot be created.
+     */
+    public int createSchema(boolean deferIndexes) throws DexUtilsException {
+        if (schema == null) {
+            String msg = new String("Database " + getAlias()
+                    + " has no declared schema.");
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        long start = System.currentTimeMillis();
+        int created = schema.apply(getGraph(), deferIndexes);
+        for (SchemaDefinition.TypeDefinition t : schema.getTypes()) {
+            getTypeIdentifier(t.getName());
+        }
+        for (SchemaDefinition.AttributeDefinition a : schema.getAttributes()) {
+            getAttributeIdentifier(a.getType(), a.getName());
+        }
+        log.info(created + " types and attributes were created for Database "
+                + getAlias() + " in " + (System.currentTimeMillis() - start)
+                + " ms");
+        return created;
+    }
+
+    /**
+     * Indexes the declared indexed and unique attributes which are still
+     * {@link AttributeKind#Basic}.
+     * 
+     * @return The number of indexed attributes.
+     * @throws DexUtilsException
+     *             if there is no declared schema, a declared attribute does
+     *             not exist or a unique attribute has duplicated values.
+     * @see #createSchema(boolean)
+     */
+    public int buildIndexes() throws DexUtilsException {
+        if (schema == null) {
+            String msg = new String("Database " + getAlias()
+                    + " has no declared schema.");
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        int indexed = 0;
+        for (SchemaDefinition.AttributeDefinition a : schema.getAttributes()) {
+            if (a.getKind() == AttributeKind.Basic) {
+                continue;
+            }
+            int attr = getAttributeIdentifier(a.getType(), a.getName());
+            if (attr == Attribute.InvalidAttribute) {
+                String msg = new String("Attribute '" + a.getType() + "."
+                        + a.getName() + "' does not exist in " + getAlias());
+                log.error(msg);
+                throw new DexUtilsException(msg);
+            }
+            if (indexAttribute(attr, a.getKind())) {
+                indexed++;
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Sets the {@link AttributeKind} of an attribute, building its index if
+     * required.
+     * <p>
+     * Before an attribute becomes {@link AttributeKind#Unique}, it is indexed
+     * as {@link AttributeKind#Indexed} and its values are checked to be
+     * unique. If they are not, it remains indexed.
+     * 
+     * @param attr
+     *            Dex attribute identifier.
+     * @param kind
+     *            New {@link AttributeKind}.
+     * @return <code>true</code> if the kind was changed, <code>false</code>
+     *         if the attribute already had it.
+     * @throws DexUtilsException
+     *             if a unique attribute has duplicated values.
+     */
+    public boolean indexAttribute(int attr, AttributeKind kind)
+            throws DexUtilsException {
+        Graph graph = getGraph();
+        Attribute adata = graph.getAttribute(attr);
+        if (adata.getKind() == kind) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        if (kind == AttributeKind.Unique) {
+            if (adata.getKind() == AttributeKind.Basic) {
+                graph.indexAttribute(attr, AttributeKind.Indexed);
+            }
+            Values values = graph.getValues(attr);
+            long distinct = values.count();
+            values.close();
+            long count = graph.getAttribute(attr).getCount();
+            if (distinct != count) {
+                String msg = new String("Attribute '" + adata.getName()
+                        + "' cannot be unique: " + count
+                        + " objects have just " + distinct
+                        + " distinct values");
+                log.error(msg);
+                throw new DexUtilsException(msg);
+            }
+        }
+        graph.indexAttribute(attr, kind);
+        log.info("Attribute '" + adata.getName() + "' of Database "
+                + getAlias() + " became " + kind + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * Clears the schema cache.
+     * <p>
+     * Type and attribute identifiers are cached once found, and the cache is
+     * cleared when the schema is dropped ({@link #dropSchema()}) or the
+     * Database is closed. If types or attributes are removed directly through
+     * the {@link Graph}, this must be called.
+     */
+    public void clearSchemaCache() {
+        typeIds.clear();
+        attrIds.clear();
+        splitAttrIds.clear();
+    }
+
+    /**
+     * Gets the Dex attribute identifier for the given attribute.
+     * 
+     * @param typename
+     *            Node or edge type name.
+     * @param name
+     *            Attribute name.
+     * @return The Dex attribute identifier or
+     *         {@link Attribute#InvalidAttribute} if if does not exist.
+     */
+    public Integer getAttributeIdentifier(String typename, String name) {
+        ConcurrentMap<String, Integer> ids = attrIds.get(typename);
+        Integer attr = (ids == null) ? null : ids.get(name);
+        if (attr != null) {
+            return attr;
+        }
+
+        int type = getTypeIdentifier(typename);
+        if (type == Type.InvalidType) {
+            return Attribute.InvalidAttribute;
+        }
+        attr = sessMngr.get().getGraph().findAttribute(type, name);
+        if (attr != Attribute.InvalidAttribute) {
+            if (ids == null) {
+                ids = new ConcurrentHashMap<String, Integer>();
+                ConcurrentMap<String, Integer> aux = attrIds.putIfAbsent(
+                        typename, ids);
+                if (aux != null) {
+                    ids = aux;
+                }
+            }
+            ids.put(name, attr);
+        }
+        return attr;
+    }
+
+    /**
+     * Gets the Dex attribute identifier for the given attribute name.
+     * <p>
+     * The attribute name corresponds to the concatenation of the type name, a
+     * split character and the attribute name. For example:
+     * <code>"person.name"</code>, where <code>"person"</code> is the type name,
+     * <code>'.'</code> the split character and <code>"name"</code> the
+     * attribute name.
+     * <p>
+     * The split character can just exist once.
+     * 
+     * @param attrname
+     *            Type and attribute name concatenation.
+     * @param split
+     *            Split character.
+     * @return The Dex attribute identifier or
+     *         {@link Attribute#InvalidAttribute} if if does not exist.
+     */
+    public Integer getAttributeIdentifier(String attrname, char split) {
+        ConcurrentMap<String, Integer> ids = splitAttrIds.get(split);
+        Integer attr = (ids == null) ? null : ids.get(attrname);
+        if (attr != null) {
+            return attr;
+        }
+
+        int i = attrname.indexOf(split);
+        if (i == -1 || attrname.lastIndexOf(split) != i) {
+            throw new IllegalArgumentException("Attribute name '" + attrname
+                    + "' cannot be splited as expected using '" + split + "'.");
+        }
+        attr = getAttributeIdentifier(attrname.substring(0, i),
+                attrname.substring(i + 1));
+        if (attr != Attribute.InvalidAttribute) {
+            if (ids == null) {
+                ids = new ConcurrentHashMap<String, Integer>();
+                ConcurrentMap<String, Integer> aux = splitAttrIds.putIfAbsent(
+                        split, ids);
+                if (aux != null) {
+                    ids = aux;
+                }
+            }
+            ids.put(attrname, attr);
+        }
+        return attr;
+    }
+
+    /**
+     * Gets the Dex type identifier for the given type.
+     * 
+     * @param name
+     *            Node or edge type name.
+     * @return The Dex node or edge type identifier or {@link Type#InvalidType}
+     *         if it does not exist.
+     */
+    public Integer getTypeIdentifier(String name) {
+        Integer type = typeIds.get(name);
+        if (type != null) {
+            return type;
+        }
+
+        if (isClosed()) {
+            openDatabase();
+        }
+        type = sessMngr.get().getGraph().findType(name);
+        if (type != Type.InvalidType) {
+            typeIds.put(name, type);
+        }
+        return type;
+    }
+}
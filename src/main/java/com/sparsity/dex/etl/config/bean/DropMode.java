@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.bean;
+
+/**
+ * Ways of dropping the schema of a Database (see
+ * {@link DatabaseConfiguration#dropSchema(DropMode)}).
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public enum DropMode {
+
+    /**
+     * Removes the attributes and types one by one through the API. The
+     * Database remains open.
+     */
+    REMOVE,
+
+    /**
+     * Closes the Database, deletes its file and creates it again. All the
+     * {@link com.sparsity.dex.gdb.Session}s are closed.
+     */
+    RECREATE,
+
+    /**
+     * Chooses {@link #RECREATE} for large Databases (see
+     * {@link DatabaseConfiguration#RECREATE_THRESHOLD}) and {@link #REMOVE}
+     * otherwise.
+     */
+    AUTO
+}
@@ -0,0 +1,772 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.bean;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.loader.AbstractLoader;
+import com.sparsity.dex.etl.loader.DeltaLoader;
+import com.sparsity.dex.etl.loader.EdgeLoader;
+import com.sparsity.dex.etl.loader.HeapOIDIndex;
+import com.sparsity.dex.etl.loader.LoadJournal;
+import com.sparsity.dex.etl.loader.MappedOIDIndex;
+import com.sparsity.dex.etl.loader.NodeLoader;
+import com.sparsity.dex.etl.loader.OIDIndex;
+import com.sparsity.dex.etl.loader.ParallelLoader;
+
+/**
+ * Load job definition: loads an input file into a node or edge type of a
+ * database.
+ * <p>
+ * Fields of the input records are described by position with
+ * {@link ColumnDefinition}s: the attribute they are loaded into, and whether
+ * they are the external key of the nodes or the tail or head of the edges.
+ * <p>
+ * Edges are resolved through the external keys of the nodes loaded by
+ * previous jobs (see {@link #setTail(String)} and {@link #setHead(String)}),
+ * so node jobs must be executed before the edge jobs referring to them (see
+ * {@link Configuration#execute()}), unless those nodes were loaded by an
+ * earlier execution into a {@link IndexStorage#PERSISTENT} index.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class JobDefinition {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(JobDefinition.class);
+
+    /**
+     * Input file format.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public enum Format {
+        /**
+         * CSV.
+         */
+        CSV,
+        /**
+         * JSON Lines.
+         */
+        JSONL
+    }
+
+    /**
+     * Use of a field besides being loaded into an attribute.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public enum Reference {
+        /**
+         * External key of the loaded nodes.
+         */
+        KEY,
+        /**
+         * External key of the tail node of the loaded edges.
+         */
+        TAIL,
+        /**
+         * External key of the head node of the loaded edges.
+         */
+        HEAD
+    }
+
+    /**
+     * Storage of the {@link OIDIndex} of a node job.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public enum IndexStorage {
+        /**
+         * Java heap (see {@link HeapOIDIndex}).
+         */
+        HEAP,
+        /**
+         * Temporary memory-mapped file (see {@link MappedOIDIndex}).
+         */
+        MAPPED,
+        /**
+         * Memory-mapped file next to the database image, reused by later
+         * executions (see
+         * {@link MappedOIDIndex#MappedOIDIndex(DatabaseConfiguration, String, boolean)}
+         * ).
+         */
+        PERSISTENT
+    }
+
+    /**
+     * Input field definition.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public static class ColumnDefinition {
+
+        /**
+         * Attribute name, or <code>null</code>.
+         */
+        private String attribute;
+
+        /**
+         * JSON key, or <code>null</code>.
+         */
+        private String key;
+
+        /**
+         * {@link Reference}, or <code>null</code>.
+         */
+        private Reference reference;
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param attribute
+         *            Attribute name, or <code>null</code> if the field is not
+         *            loaded into an attribute.
+         * @param key
+         *            JSON key, or <code>null</code> to use the attribute
+         *            name.
+         * @param reference
+         *            {@link Reference}, or <code>null</code>.
+         */
+        public ColumnDefinition(String attribute, String key,
+                Reference reference) {
+            this.attribute = attribute;
+            this.key = key;
+            this.reference = reference;
+        }
+
+        /**
+         * Gets the attribute name.
+         * 
+         * @return The attribute name, or <code>null</code> if the field is
+         *         not loaded into an attribute.
+         */
+        public String getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * Gets the JSON key.
+         * 
+         * @return The JSON key, which defaults to the attribute name.
+         */
+        public String getKey() {
+            return (key == null) ? attribute : key;
+        }
+
+        /**
+         * Gets the {@link Reference}.
+         * 
+         * @return The {@link Reference}, or <code>null</code>.
+         */
+        public Reference getReference() {
+            return reference;
+        }
+    }
+
+    /**
+     * Job name.
+     */
+    private String name;
+
+    /**
+     * {@link DatabaseConfiguration} instance.
+     */
+    private DatabaseConfiguration database;
+
+    /**
+     * Input file.
+     */
+    private File file = null;
+
+    /**
+     * Input file {@link Format}.
+     */
+    private Format format = Format.CSV;
+
+    /**
+     * Node or edge type name.
+     */
+    private String type = null;
+
+    /**
+     * Whether it loads edges.
+     */
+    private boolean edge = false;
+
+    /**
+     * Name of the job which loaded the tail nodes.
+     */
+    private String tail = null;
+
+    /**
+     * Name of the job which loaded the head nodes.
+     */
+    private String head = null;
+
+    /**
+     * Whether external keys are <code>long</code> values.
+     */
+    private boolean numericKeys = true;
+
+    /**
+     * Storage of the {@link OIDIndex}.
+     */
+    private IndexStorage indexStorage = IndexStorage.HEAP;
+
+    /**
+     * Number of records per transaction.
+     */
+    private int batchSize = AbstractLoader.DEFAULT_BATCH_SIZE;
+
+    /**
+     * Number of loading threads.
+     */
+    private int parallelism = 1;
+
+    /**
+     * Whether the CSV file has a header.
+     */
+    private boolean header = false;
+
+    /**
+     * CSV field separator.
+     */
+    private char separator = ',';
+
+    /**
+     * Whether indexes are deferred.
+     */
+    private boolean deferIndexes = false;
+
+    /**
+     * Field definitions by position.
+     */
+    private List<ColumnDefinition> columns = new ArrayList<ColumnDefinition>();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param name
+     *            Job name.
+     * @param database
+     *            {@link DatabaseConfiguration} to load into.
+     */
+    public JobDefinition(String name, DatabaseConfiguration database) {
+        if (name == null || database == null) {
+            String msg = new String("Job name and database cannot be null.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.name = name;
+        this.database = database;
+    }
+
+    /**
+     * Gets the job name.
+     * 
+     * @return The job name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the {@link DatabaseConfiguration} to load into.
+     * 
+     * @return The {@link DatabaseConfiguration} to load into.
+     */
+    public DatabaseConfiguration getDatabase() {
+        return database;
+    }
+
+    /**
+     * Gets the input file.
+     * 
+     * @return The input file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Sets the input file.
+     * 
+     * @param f
+     *            The input file.
+     */
+    public void setFile(File f) {
+        file = f;
+    }
+
+    /**
+     * Gets the input file {@link Format}.
+     * 
+     * @return The input file {@link Format}.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the input file {@link Format}. By default, {@link Format#CSV}.
+     * 
+     * @param f
+     *            The input file {@link Format}.
+     */
+    public void setFormat(Format f) {
+        format = f;
+    }
+
+    /**
+     * Gets the node or edge type name.
+     * 
+     * @return The node or edge type name.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets if it loads edges.
+     * 
+     * @return <code>true</code> if it loads edges, <code>false</code> if it
+     *         loads nodes.
+     */
+    public boolean isEdge() {
+        return edge;
+    }
+
+    /**
+     * Sets the node type to be loaded.
+     * 
+     * @param t
+     *            Node type name.
+     */
+    public void setNodeType(String t) {
+        type = t;
+        edge = false;
+    }
+
+    /**
+     * Sets the edge type to be loaded.
+     * 
+     * @param t
+     *            Edge type name.
+     */
+    public void setEdgeType(String t) {
+        type = t;
+        edge = true;
+    }
+
+    /**
+     * Gets the name of the job which loaded the tail nodes.
+     * 
+     * @return The name of the job which loaded the tail nodes.
+     */
+    public String getTail() {
+        return tail;
+    }
+
+    /**
+     * Sets the name of the job which loaded the tail nodes.
+     * 
+     * @param job
+     *            Name of a node job with a {@link Reference#KEY} field, or
+     *            of a {@link IndexStorage#PERSISTENT} index.
+     */
+    public void setTail(String job) {
+        tail = job;
+    }
+
+    /**
+     * Gets the name of the job which loaded the head nodes.
+     * 
+     * @return The name of the job which loaded the head nodes.
+     */
+    public String getHead() {
+        return head;
+    }
+
+    /**
+     * Sets the name of the job which loaded the head nodes.
+     * 
+     * @param job
+     *            Name of a node job with a {@link Reference#KEY} field, or
+     *            of a {@link IndexStorage#PERSISTENT} index.
+     */
+    public void setHead(String job) {
+        head = job;
+    }
+
+    /**
+     * Gets if external keys are <code>long</code> values.
+     * 
+     * @return <code>true</code> if external keys are <code>long</code>
+     *         values, <code>false</code> if they are {@link String}s.
+     */
+    public boolean isNumericKeys() {
+        return numericKeys;
+    }
+
+    /**
+     * Sets if external keys are <code>long</code> values. By default,
+     * <code>true</code>.
+     * 
+     * @param numeric
+     *            <code>true</code> if external keys are <code>long</code>
+     *            values, <code>false</code> if they are {@link String}s.
+     */
+    public void setNumericKeys(boolean numeric) {
+        numericKeys = numeric;
+    }
+
+    /**
+     * Gets the storage of the {@link OIDIndex} filled by a node job.
+     * 
+     * @return The storage of the {@link OIDIndex}.
+     */
+    public IndexStorage getIndexStorage() {
+        return indexStorage;
+    }
+
+    /**
+     * Sets the storage of the {@link OIDIndex} filled by a node job. By
+     * default, {@link IndexStorage#HEAP}.
+     * <p>
+     * A {@link IndexStorage#PERSISTENT} index is named after the job, so it
+     * keeps the keys loaded by previous executions of the job and edge jobs
+     * can refer to them even if the job is not executed again. Changes
+     * applied later to the nodes must keep it up to date (see
+     * {@link DeltaLoader#setIndex(OIDIndex)}).
+     * 
+     * @param storage
+     *            The storage of the {@link OIDIndex}.
+     */
+    public void setIndexStorage(IndexStorage storage) {
+        if (storage == null) {
+            String msg = new String("Index storage cannot be null.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        indexStorage = storage;
+    }
+
+    /**
+     * Gets the number of records per transaction.
+     * 
+     * @return The number of records per transaction.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of records per transaction. By default,
+     * {@link AbstractLoader#DEFAULT_BATCH_SIZE}.
+     * 
+     * @param size
+     *            The number of records per transaction. It must be positive.
+     */
+    public void setBatchSize(int size) {
+        if (size <= 0) {
+            String msg = new String("Batch size must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        batchSize = size;
+    }
+
+    /**
+     * Gets the number of loading threads.
+     * 
+     * @return The number of loading threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of loading threads. By default, <code>1</code>.
+     * <p>
+     * With more than one thread, the input is loaded by a
+     * {@link ParallelLoader}, so records cannot span several lines.
+     * 
+     * @param p
+     *            The number of loading threads. It must be positive.
+     */
+    public void setParallelism(int p) {
+        if (p <= 0) {
+            String msg = new String("Parallelism must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        parallelism = p;
+    }
+
+    /**
+     * Gets if the CSV file has a header.
+     * 
+     * @return <code>true</code> if the CSV file has a header.
+     */
+    public boolean hasHeader() {
+        return header;
+    }
+
+    /**
+     * Sets if the CSV file has a header. By default, <code>false</code>.
+     * 
+     * @param h
+     *            Whether the CSV file has a header.
+     */
+    public void setHeader(boolean h) {
+        header = h;
+    }
+
+    /**
+     * Gets the CSV field separator.
+     * 
+     * @return The CSV field separator.
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Sets the CSV field separator. By default, <code>','</code>.
+     * 
+     * @param s
+     *            The CSV field separator.
+     */
+    public void setSeparator(char s) {
+        separator = s;
+    }
+
+    /**
+     * Gets if indexes are deferred.
+     * 
+     * @return <code>true</code> if indexes are deferred.
+     */
+    public boolean isDeferIndexes() {
+        return deferIndexes;
+    }
+
+    /**
+     * Sets if indexes are deferred. By default, <code>false</code>.
+     * 
+     * @param defer
+     *            Whether indexes are deferred.
+     * @see AbstractLoader#setDeferIndexes(boolean)
+     */
+    public void setDeferIndexes(boolean defer) {
+        deferIndexes = defer;
+    }
+
+    /**
+     * Adds the definition of the next field.
+     * 
+     * @param column
+     *            {@link ColumnDefinition} instance.
+     * @return This instance.
+     */
+    public JobDefinition addColumn(ColumnDefinition column) {
+        columns.add(column);
+        return this;
+    }
+
+    /**
+     * Gets the field definitions by position.
+     * 
+     * @return The field definitions by position.
+     */
+    public List<ColumnDefinition> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Gets the position of the field with the given {@link Reference}.
+     * 
+     * @param ref
+     *            {@link Reference} instance.
+     * @return The position of the field, or <code>-1</code> if there is none.
+     */
+    private int getPosition(Reference ref) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getReference() == ref) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the {@link OIDIndex} filled by a previous job.
+     * <p>
+     * If the job has not been executed, its {@link IndexStorage#PERSISTENT}
+     * index is opened, if it exists, and added to the given ones.
+     * 
+     * @param indexes
+     *            {@link OIDIndex} instances by job name.
+     * @param job
+     *            Job name.
+     * @param ref
+     *            {@link Reference} of the field resolved through it.
+     * @return The {@link OIDIndex} instance.
+     * @throws DexUtilsException
+     *             if there is no such {@link OIDIndex} or field.
+     */
+    private OIDIndex getIndex(Map<String, OIDIndex> indexes, String job,
+            Reference ref) throws DexUtilsException {
+        OIDIndex idx = (job == null) ? null : indexes.get(job);
+        if (idx == null && job != null
+                && MappedOIDIndex.getFile(database, job).exists()) {
+            idx = new MappedOIDIndex(database, job, numericKeys);
+            indexes.put(job, idx);
+        }
+        if (idx == null || getPosition(ref) < 0) {
+            String msg = new String("Job '" + name + "' requires a "
+                    + ref.name().toLowerCase()
+                    + " field and a previous node job with key field"
+                    + " or a persistent index.");
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        return idx;
+    }
+
+    /**
+     * Executes the job.
+     * 
+     * @param indexes
+     *            {@link OIDIndex} instances by job name, filled by the
+     *            previous jobs. If it is a node job with a
+     *            {@link Reference#KEY} field, its own {@link OIDIndex} is
+     *            added, as well as the {@link IndexStorage#PERSISTENT}
+     *            ones opened for an edge job. The caller must close them if
+     *            they are {@link MappedOIDIndex}es.
+     * @return The number of loaded records.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    public long execute(Map<String, OIDIndex> indexes)
+            throws DexUtilsException {
+        return execute(indexes, null);
+    }
+
+    /**
+     * Executes the job recording its progress in the given
+     * {@link LoadJournal}, so it resumes from the last checkpoint if it
+     * failed before.
+     * 
+     * @param indexes
+     *            {@link OIDIndex} instances by job name, filled by the
+     *            previous jobs. If it is a node job with a
+     *            {@link Reference#KEY} field, its own {@link OIDIndex} is
+     *            added, as well as the {@link IndexStorage#PERSISTENT}
+     *            ones opened for an edge job. The caller must close them if
+     *            they are {@link MappedOIDIndex}es.
+     * @param journal
+     *            {@link LoadJournal} of the database, or <code>null</code>.
+     * @return The number of loaded records.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    public long execute(Map<String, OIDIndex> indexes, LoadJournal journal)
+            throws DexUtilsException {
+        if (file == null || type == null) {
+            String msg = new String("Job '" + name
+                    + "' requires an input file and a type.");
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        String[] attrs = new String[columns.size()];
+        String[] keys = new String[columns.size()];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = columns.get(i).getAttribute();
+            keys[i] = columns.get(i).getKey();
+            if (format == Format.JSONL && keys[i] == null) {
+                String msg = new String("Job '" + name
+                        + "' requires a JSON key for field " + i + ".");
+                log.error(msg);
+                throw new DexUtilsException(msg);
+            }
+        }
+
+        AbstractLoader loader;
+        if (edge) {
+            EdgeLoader el = new EdgeLoader(database);
+            el.setType(type);
+            el.setColumns(attrs);
+            el.setTail(getIndex(indexes, tail, Reference.TAIL),
+                    getPosition(Reference.TAIL));
+            el.setHead(getIndex(indexes, head, Reference.HEAD),
+                    getPosition(Reference.HEAD));
+            loader = el;
+        } else {
+            NodeLoader nl = new NodeLoader(database);
+            nl.setType(type);
+            nl.setColumns(attrs);
+            int key = getPosition(Reference.KEY);
+            if (key >= 0) {
+                OIDIndex idx;
+                if (indexStorage == IndexStorage.MAPPED) {
+                    idx = new MappedOIDIndex(numericKeys);
+                } else if (indexStorage == IndexStorage.PERSISTENT) {
+                    idx = new MappedOIDIndex(database, name, numericKeys);
+                } else {
+                    idx = new HeapOIDIndex(numericKeys);
+                }
+                nl.setIndex(idx, key);
+                indexes.put(name, idx);
+            }
+            loader = nl;
+        }
+        loader.setFile(file);
+        loader.setBatchSize(batchSize);
+        loader.setDeferIndexes(deferIndexes);
+        loader.setJournal(journal);
+        if (format == Format.JSONL) {
+            loader.setJSONKeys(keys);
+        } else {
+            loader.setHeader(header);
+            loader.setSeparator(separator);
+        }
+
+        log.info("Executing job '" + name + "' on " + database.getAlias());
+        if (parallelism > 1) {
+            ParallelLoader pl = new ParallelLoader(loader);
+            pl.setParallelism(parallelism);
+            return pl.load();
+        }
+        return loader.load();
+    }
+}
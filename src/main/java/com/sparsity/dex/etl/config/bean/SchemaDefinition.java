@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.bean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.AttributeListIterator;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.ObjectType;
+import com.sparsity.dex.gdb.Type;
+import com.sparsity.dex.gdb.TypeListIterator;
+
+/**
+ * Schema template: node types, edge types and their attributes.
+ * <p>
+ * It can be built by hand or captured from an existing {@link Graph} (see
+ * {@link #capture(Graph)}), and then applied to a {@link Graph} (see
+ * {@link #apply(Graph)}) to create the missing types and attributes.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class SchemaDefinition {
+
+    /**
+     * Node or edge type definition.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public static class TypeDefinition {
+
+        /**
+         * Type name.
+         */
+        private String name;
+
+        /**
+         * Whether it is a node type.
+         */
+        private boolean node;
+
+        /**
+         * Whether edges are directed.
+         */
+        private boolean directed;
+
+        /**
+         * Whether neighbors are indexed.
+         */
+        private boolean neighbors;
+
+        /**
+         * Tail node type name of a restricted edge type, or <code>null</code>.
+         */
+        private String tail;
+
+        /**
+         * Head node type name of a restricted edge type, or <code>null</code>.
+         */
+        private String head;
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param name
+         *            Type name.
+         * @param node
+         *            Whether it is a node type.
+         * @param directed
+         *            Whether edges are directed.
+         * @param neighbors
+         *            Whether neighbors are indexed.
+         * @param tail
+         *            Tail node type name of a restricted edge type, or
+         *            <code>null</code>.
+         * @param head
+         *            Head node type name of a restricted edge type, or
+         *            <code>null</code>.
+         */
+        TypeDefinition(String name, boolean node, boolean directed,
+                boolean neighbors, String tail, String head) {
+            this.name = name;
+            this.node = node;
+            this.directed = directed;
+            this.neighbors = neighbors;
+            this.tail = tail;
+            this.head = head;
+        }
+
+        /**
+         * Gets the type name.
+         * 
+         * @return The type name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets if it is a node type.
+         * 
+         * @return <code>true</code> for node types, <code>false</code> for
+         *         edge types.
+         */
+        public boolean isNode() {
+            return node;
+        }
+
+        /**
+         * Gets if edges are directed.
+         * 
+         * @return <code>true</code> if edges are directed.
+         */
+        public boolean isDirected() {
+            return directed;
+        }
+
+        /**
+         * Gets if neighbors are indexed.
+         * 
+         * @return <code>true</code> if neighbors are indexed.
+         */
+        public boolean isNeighbors() {
+            return neighbors;
+        }
+
+        /**
+         * Gets the tail node type name of a restricted edge type.
+         * 
+         * @return The tail node type name or <code>null</code>.
+         */
+        public String getTail() {
+            return tail;
+        }
+
+        /**
+         * Gets the head node type name of a restricted edge type.
+         * 
+         * @return The head node type name or <code>null</code>.
+         */
+        public String getHead() {
+            return head;
+        }
+    }
+
+    /**
+     * Attribute definition.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public static class AttributeDefinition {
+
+        /**
+         * Type name.
+         */
+        private String type;
+
+        /**
+         * Attribute name.
+         */
+        private String name;
+
+        /**
+         * {@link DataType} of the attribute.
+         */
+        private DataType dataType;
+
+        /**
+         * {@link AttributeKind} of the attribute.
+         */
+        private AttributeKind kind;
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param type
+         *            Type name.
+         * @param name
+         *            Attribute name.
+         * @param dataType
+         *            {@link DataType} of the attribute.
+         * @param kind
+         *            {@link AttributeKind} of the attribute.
+         */
+        AttributeDefinition(String type, String name, DataType dataType,
+                AttributeKind kind) {
+            this.type = type;
+            this.name = name;
+            this.dataType = dataType;
+            this.kind = kind;
+        }
+
+        /**
+         * Gets the type name.
+         * 
+         * @return The type name.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Gets the attribute name.
+         * 
+         * @return The attribute name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the {@link DataType} of the attribute.
+         * 
+         * @return The {@link DataType} of the attribute.
+         */
+        public DataType getDataType() {
+            return dataType;
+        }
+
+        /**
+         * Gets the {@link AttributeKind} of the attribute.
+         * 
+         * @return The {@link AttributeKind} of the attribute.
+         */
+        public AttributeKind getKind() {
+            return kind;
+        }
+    }
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(SchemaDefinition.class);
+
+    /**
+     * Type definitions.
+     */
+    private List<TypeDefinition> types = new ArrayList<TypeDefinition>();
+
+    /**
+     * Attribute definitions.
+     */
+    private List<AttributeDefinition> attributes = new ArrayList<AttributeDefinition>();
+
+    /**
+     * Creates a new empty instance.
+     */
+    public SchemaDefinition() {
+    }
+
+    /**
+     * Captures the schema of the given {@link Graph}.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @return A new {@link SchemaDefinition} with all the node types, edge
+     *         types and attributes of the given {@link Graph}.
+     */
+    public static SchemaDefinition capture(Graph graph) {
+        SchemaDefinition schema = new SchemaDefinition();
+        List<Integer> ids = new ArrayList<Integer>();
+        TypeListIterator typeIt = graph.findNodeTypes().iterator();
+        while (typeIt.hasNext()) {
+            ids.add(typeIt.next());
+        }
+        typeIt = graph.findEdgeTypes().iterator();
+        while (typeIt.hasNext()) {
+            ids.add(typeIt.next());
+        }
+        for (Integer id : ids) {
+            Type t = graph.getType(id);
+            if (t.getObjectType() == ObjectType.Node) {
+                schema.addNodeType(t.getName());
+            } else if (t.getIsRestricted()) {
+                schema.addRestrictedEdgeType(t.getName(),
+                        graph.getType(t.getRestrictedFrom()).getName(), graph
+                                .getType(t.getRestrictedTo()).getName(), t
+                                .getAreNeighborsIndexed());
+            } else {
+                schema.addEdgeType(t.getName(), t.getIsDirected(),
+                        t.getAreNeighborsIndexed());
+            }
+            AttributeListIterator attrIt = graph.findAttributes(id).iterator();
+            while (attrIt.hasNext()) {
+                Attribute a = graph.getAttribute(attrIt.next());
+                schema.addAttribute(t.getName(), a.getName(), a.getDataType(),
+                        a.getKind());
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Checks the given name is not <code>null</code>.
+     * 
+     * @param name
+     *            Name to be checked.
+     */
+    private static void checkName(String name) {
+        if (name == null) {
+            String msg = new String("Name cannot be null.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * Adds a node type.
+     * 
+     * @param name
+     *            Node type name.
+     * @return This {@link SchemaDefinition}.
+     */
+    public SchemaDefinition addNodeType(String name) {
+        checkName(name);
+        types.add(new TypeDefinition(name, true, false, false, null, null));
+        return this;
+    }
+
+    /**
+     * Adds an edge type.
+     * 
+     * @param name
+     *            Edge type name.
+     * @param directed
+     *            Whether edges are directed.
+     * @param neighbors
+     *            Whether neighbors are indexed.
+     * @return This {@link SchemaDefinition}.
+     */
+    public SchemaDefinition addEdgeType(String name, boolean directed,
+            boolean neighbors) {
+        checkName(name);
+        types.add(new TypeDefinition(name, false, directed, neighbors, null,
+                null));
+        return this;
+    }
+
+    /**
+     * Adds a restricted (and thus directed) edge type.
+     * 
+     * @param name
+     *            Edge type name.
+     * @param tail
+     *            Tail node type name.
+     * @param head
+     *            Head node type name.
+     * @param neighbors
+     *            Whether neighbors are indexed.
+     * @return This {@link SchemaDefinition}.
+     */
+    public SchemaDefinition addRestrictedEdgeType(String name, String tail,
+            String head, boolean neighbors) {
+        checkName(name);
+        checkName(tail);
+        checkName(head);
+        types.add(new TypeDefinition(name, false, true, neighbors, tail, head));
+        return this;
+    }
+
+    /**
+     * Adds an attribute.
+     * 
+     * @param type
+     *            Node or edge type name.
+     * @param name
+     *            Attribute name.
+     * @param dataType
+     *            {@link DataType} of the attribute.
+     * @param kind
+     *            {@link AttributeKind} of the attribute.
+     * @return This {@link SchemaDefinition}.
+     */
+    public SchemaDefinition addAttribute(String type, String name,
+            DataType dataType, AttributeKind kind) {
+        checkName(type);
+        checkName(name);
+        if (dataType == null || kind == null) {
+            String msg = new String("Data type and kind cannot be null.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        attributes.add(new AttributeDefinition(type, name, dataType, kind));
+        return this;
+    }
+
+    /**
+     * Gets the type definitions.
+     * 
+     * @return The type definitions, in the order they were added.
+     */
+    public List<TypeDefinition> getTypes() {
+        return Collections.unmodifiableList(types);
+    }
+
+    /**
+     * Gets the attribute definitions.
+     * 
+     * @return The attribute definitions, in the order they were added.
+     */
+    public List<AttributeDefinition> getAttributes() {
+        return Collections.unmodifiableList(attributes);
+    }
+
+    /**
+     * Creates the missing types and attributes in the given {@link Graph}.
+     * <p>
+     * Node types are created first, then edge types and finally attributes.
+     * Existing types and attributes are left untouched.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @return The number of created types and attributes.
+     * @throws DexUtilsException
+     *             if a type referenced by the definition does not exist.
+     */
+    public int apply(Graph graph) throws DexUtilsException {
+        return apply(graph, false);
+    }
+
+    /**
+     * Creates the missing types and attributes in the given {@link Graph}.
+     * <p>
+     * If indexes are deferred, indexed and unique attributes are created as
+     * {@link AttributeKind#Basic}, so bulk loads do not maintain their index
+     * on every insert. They must be indexed once loaded (see
+     * {@link DatabaseConfiguration#buildIndexes()}).
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @param deferIndexes
+     *            Whether to create indexed and unique attributes as
+     *            {@link AttributeKind#Basic}.
+     * @return The number of created types and attributes.
+     * @throws DexUtilsException
+     *             if a type referenced by the definition does not exist.
+     */
+    public int apply(Graph graph, boolean deferIndexes)
+            throws DexUtilsException {
+        int created = 0;
+        for (TypeDefinition t : types) {
+            if (t.isNode() && graph.findType(t.getName()) == Type.InvalidType) {
+                graph.newNodeType(t.getName());
+                created++;
+            }
+        }
+        for (TypeDefinition t : types) {
+            if (t.isNode() || graph.findType(t.getName()) != Type.InvalidType) {
+                continue;
+            }
+            if (t.getTail() != null) {
+                graph.newRestrictedEdgeType(t.getName(),
+                        findType(graph, t.getTail()),
+                        findType(graph, t.getHead()), t.isNeighbors());
+            } else {
+                graph.newEdgeType(t.getName(), t.isDirected(), t.isNeighbors());
+            }
+            created++;
+        }
+        for (AttributeDefinition a : attributes) {
+            int type = findType(graph, a.getType());
+            if (graph.findAttribute(type, a.getName()) == Attribute.InvalidAttribute) {
+                graph.newAttribute(type, a.getName(), a.getDataType(),
+                        deferIndexes ? AttributeKind.Basic : a.getKind());
+                created++;
+            }
+        }
+        log.debug(created + " types and attributes were created");
+        return created;
+    }
+
+    /**
+     * Finds an existing type.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @param name
+     *            Type name.
+     * @return The type identifier.
+     * @throws DexUtilsException
+     *             if the type does not exist.
+     */
+    private static int findType(Graph graph, String name)
+            throws DexUtilsException {
+        int type = graph.findType(name);
+        if (type == Type.InvalidType) {
+            String msg = new String("Unknown type '" + name + "'.");
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        return type;
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.bean;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Session;
+
+/**
+ * Bounded pool of Dex {@link Session}s.
+ * <p>
+ * At most {@link #getMaxSize()} {@link Session}s are borrowed at the same time.
+ * Borrowers wait for a returned {@link Session} up to the wait timeout, and
+ * idle {@link Session}s are closed once they exceed the idle timeout.
+ * Eviction runs when {@link Session}s are returned, so the pool does not
+ * require any background thread.
+ * <p>
+ * A borrowed {@link Session} must be used by a single thread at a time and it
+ * must be returned ({@link #release(Session)}) once it is no longer required.
+ * Waits do not hold any monitor, so it can be used from any kind of thread.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class SessionPool {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(SessionPool.class);
+
+    /**
+     * An idle {@link Session}.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class Idle {
+
+        /**
+         * {@link Session} instance.
+         */
+        private Session session;
+
+        /**
+         * Time it was returned to the pool.
+         */
+        private long since = System.currentTimeMillis();
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param session
+         *            {@link Session} instance.
+         */
+        public Idle(Session session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * {@link Database} the {@link Session}s belong to.
+     */
+    private Database db;
+
+    /**
+     * Maximum number of borrowed {@link Session}s.
+     */
+    private int maxSize;
+
+    /**
+     * Maximum time (in milliseconds) a {@link Session} may remain idle.
+     */
+    private long idleTimeout;
+
+    /**
+     * Maximum time (in milliseconds) to wait for a {@link Session}.
+     */
+    private long waitTimeout;
+
+    /**
+     * Permits to borrow a {@link Session}.
+     */
+    private Semaphore permits;
+
+    /**
+     * Idle {@link Session}s, the most recently used first.
+     */
+    private BlockingDeque<Idle> idle = new LinkedBlockingDeque<Idle>();
+
+    /**
+     * Borrowed {@link Session}s.
+     */
+    private Set<Session> borrowed = Collections
+            .newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+
+    /**
+     * All the open {@link Session}s of the pool.
+     */
+    private Set<Session> sessions = Collections
+            .newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+
+    /**
+     * Whether the pool has been closed or not.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Number of created {@link Session}s.
+     */
+    private AtomicLong created = new AtomicLong();
+
+    /**
+     * Number of closed {@link Session}s.
+     */
+    private AtomicLong destroyed = new AtomicLong();
+
+    /**
+     * Number of borrows.
+     */
+    private AtomicLong borrows = new AtomicLong();
+
+    /**
+     * Number of borrows which had to wait.
+     */
+    private AtomicLong waits = new AtomicLong();
+
+    /**
+     * Number of borrows which timed out.
+     */
+    private AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Number of idle {@link Session}s closed by the idle timeout.
+     */
+    private AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param db
+     *            {@link Database} the {@link Session}s belong to.
+     * @param maxSize
+     *            Maximum number of borrowed {@link Session}s.
+     * @param idleTimeout
+     *            Maximum time (in milliseconds) a {@link Session} may remain
+     *            idle, or <code>0</code> to never close them.
+     * @param waitTimeout
+     *            Maximum time (in milliseconds) to wait for a {@link Session}
+     *            .
+     */
+    SessionPool(Database db, int maxSize, long idleTimeout, long waitTimeout) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Session pool size must be positive.");
+        }
+        this.db = db;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.waitTimeout = waitTimeout;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrows a {@link Session}.
+     * 
+     * @return A {@link Session}.
+     * @throws DexUtilsException
+     *             if the pool is closed or no {@link Session} is available
+     *             within the wait timeout.
+     */
+    public Session borrow() throws DexUtilsException {
+        if (closed) {
+            throw new DexUtilsException("Session pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire()) {
+                waits.incrementAndGet();
+                if (!permits.tryAcquire(waitTimeout, TimeUnit.MILLISECONDS)) {
+                    timeouts.incrementAndGet();
+                    throw new DexUtilsException("No Session available after "
+                            + waitTimeout + " ms (" + maxSize
+                            + " Sessions borrowed)");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexUtilsException("Interrupted while waiting for a Session",
+                    e);
+        }
+
+        try {
+            Idle entry;
+            while ((entry = idle.pollFirst()) != null) {
+                if (!entry.session.isClosed()) {
+                    checkOpen(entry.session);
+                    borrowed.add(entry.session);
+                    borrows.incrementAndGet();
+                    return entry.session;
+                }
+                sessions.remove(entry.session);
+            }
+            Session sess;
+            synchronized (this) {
+                // So close() either sees it or prevents it
+                if (closed) {
+                    throw new DexUtilsException("Session pool is closed");
+                }
+                sess = db.newSession();
+                sessions.add(sess);
+            }
+            borrowed.add(sess);
+            created.incrementAndGet();
+            borrows.incrementAndGet();
+            log.debug("Dex Session was created by the pool");
+            return sess;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the pool has not been closed while the given idle
+     * {@link Session} was being borrowed.
+     * 
+     * @param sess
+     *            {@link Session} being borrowed.
+     * @throws DexUtilsException
+     *             if the pool has been closed. The {@link Session} is closed.
+     */
+    private void checkOpen(Session sess) throws DexUtilsException {
+        if (closed) {
+            destroy(sess);
+            throw new DexUtilsException("Session pool is closed");
+        }
+    }
+
+    /**
+     * Returns a borrowed {@link Session} to the pool.
+     * <p>
+     * If the {@link Session} has been closed by the borrower, it is just
+     * discarded.
+     * 
+     * @param sess
+     *            Borrowed {@link Session}.
+     * @throws IllegalArgumentException
+     *             if the {@link Session} is not borrowed, for instance, if it
+     *             has already been returned.
+     */
+    public void release(Session sess) {
+        // Returning it twice would release two permits
+        if (!borrowed.remove(sess)) {
+            throw new IllegalArgumentException(
+                    "Session is not borrowed from the pool.");
+        }
+        if (closed || sess.isClosed()) {
+            destroy(sess);
+        } else {
+            idle.offerFirst(new Idle(sess));
+        }
+        permits.release();
+        evict();
+    }
+
+    /**
+     * Closes the idle {@link Session}s which exceed the idle timeout.
+     */
+    public void evict() {
+        if (idleTimeout <= 0) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - idleTimeout;
+        Idle entry;
+        while ((entry = idle.peekLast()) != null && entry.since < limit) {
+            if (idle.removeLastOccurrence(entry)) {
+                destroy(entry.session);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Closes the given {@link Session}.
+     * 
+     * @param sess
+     *            {@link Session} instance.
+     */
+    private void destroy(Session sess) {
+        if (sessions.remove(sess)) {
+            if (!sess.isClosed()) {
+                sess.close();
+            }
+            destroyed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes the pool and all its {@link Session}s, even the borrowed ones.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        idle.clear();
+        Iterator<Session> it = sessions.iterator();
+        while (it.hasNext()) {
+            destroy(it.next());
+        }
+        log.info("Session pool was closed: " + this);
+    }
+
+    /**
+     * Gets if the pool has been closed or not.
+     * 
+     * @return <code>true</code> if closed, <code>false</code> otherwise.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets the maximum number of borrowed {@link Session}s.
+     * 
+     * @return The maximum number of borrowed {@link Session}s.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the number of currently borrowed {@link Session}s.
+     * 
+     * @return The number of currently borrowed {@link Session}s.
+     */
+    public int getActive() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of currently idle {@link Session}s.
+     * 
+     * @return The number of currently idle {@link Session}s.
+     */
+    public int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * Gets the number of {@link Session}s created so far.
+     * 
+     * @return The number of {@link Session}s created so far.
+     */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * Gets the number of {@link Session}s closed so far.
+     * 
+     * @return The number of {@link Session}s closed so far.
+     */
+    public long getClosed() {
+        return destroyed.get();
+    }
+
+    /**
+     * Gets the number of borrows so far.
+     * 
+     * @return The number of borrows so far.
+     */
+    public long getBorrows() {
+        return borrows.get();
+    }
+
+    /**
+     * Gets the number of borrows which had to wait so far.
+     * 
+     * @return The number of borrows which had to wait so far.
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * Gets the number of borrows which timed out so far.
+     * 
+     * @return The number of borrows which timed out so far.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Gets the number of idle {@link Session}s closed by the idle timeout so
+     * far.
+     * 
+     * @return The number of evicted {@link Session}s.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "active=" + getActive() + ", idle=" + getIdle() + ", max="
+                + maxSize + ", created=" + getCreated() + ", closed="
+                + getClosed() + ", borrows=" + getBorrows() + ", waits="
+                + getWaits() + ", timeouts=" + getTimeouts() + ", evictions="
+                + getEvictions();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.bean;
+
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Session;
+
+/**
+ * Unit of work to be run with a task-scoped {@link Session} (see
+ * {@link DatabaseConfiguration#execute(SessionTask)}).
+ * 
+ * @param <T>
+ *            Result type.
+ * @author Sparsity Technologies
+ * 
+ */
+public interface SessionTask<T> {
+
+    /**
+     * Runs the task.
+     * <p>
+     * The given {@link Session} must not be used once this method returns.
+     * 
+     * @param sess
+     *            {@link Session} bound to the task.
+     * @param graph
+     *            {@link Graph} of the given {@link Session}.
+     * @return The result of the task.
+     * @throws Exception
+     *             if the task fails.
+     */
+    T execute(Session sess, Graph graph) throws Exception;
+}
@@ -1,182 +1,410 @@
-/*
- * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
- * 
- * This file is part of 'dexjava-etl'.
- * 
- * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
- * "License"). You may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * http://www.gnu.org/licenses/lgpl-3.0.txt
- * 
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
- * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
- * License for the specific language governing permissions and limitations under
- * the License.
- */
-package com.sparsity.dex.etl.config.impl;
-
-import java.io.File;
-
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
-import com.sparsity.dex.etl.DexUtilsException;
-import com.sparsity.dex.etl.config.ConfigurationProvider;
-import com.sparsity.dex.etl.config.bean.Configuration;
-import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
-
-/**
- * Loads a {@link Configuration} from an XML file.
- * 
- * @author Sparsity Technologies
- * 
- */
-public class XMLConfigurationProvider implements ConfigurationProvider {
-    /**
-     * {@link Log} instance.
-     */
-    private static Log log = LogFactory.getLog(XMLConfigurationProvider.class);
-
-    /**
-     * XML handler to load a {@link Configuration} from a XML file.
-     * 
-     * @author Sparsity Technologies
-     * 
-     */
-    public class DexUtilsHandler extends DefaultHandler {
-
-        /**
-         * {@link Configuration} instance to be used.
-         */
-        private Configuration conf;
-
-        /**
-         * Default {@link DatabaseConfiguration} alias.
-         */
-        private String defaultDatabase;
-
-        /**
-         * Creates a new instance.
-         * 
-         * @param conf
-         *            {@link Configuration} instance to be used.
-         */
-        public DexUtilsHandler(Configuration conf) {
-            this.conf = conf;
-        }
-
-        @Override
-        public void startDocument() throws SAXException {
-            log.debug("Start document.");
-        }
-
-        @Override
-        public void endDocument() throws SAXException {
-            if (conf.getDefaultDatabase() == null) {
-                throw new DexUtilsException("There is no default database.");
-            }
-            log.debug("End document.");
-        }
-
-        @Override
-        public void startElement(String uri, String localName, String qName,
-                Attributes attrs) throws SAXException {
-
-            if (qName.equals("config")) {
-
-                log.debug("Processing 'config' xml tag.");
-
-            } else if (qName.equals("databases")) {
-
-                log.debug("Processing 'databases' xml tag.");
-                defaultDatabase = attrs.getValue("default");
-
-            } else if (qName.equals("database")) {
-
-                log.debug("Processing 'database' xml tag.");
-                DatabaseConfiguration dbConfig = new DatabaseConfiguration();
-                String name = attrs.getValue("name");
-                String alias = attrs.getValue("alias");
-                String path = attrs.getValue("path");
-                if (name == null || alias == null || path == null) {
-                    throw new DexUtilsException(
-                            "'name', 'alias' and 'path' attribute are required for 'database' xml tag.");
-                }
-                dbConfig.setName(name);
-                dbConfig.setAlias(alias);
-                dbConfig.setPath(path);
-                String dexConf = attrs.getValue("conf");
-                if (dexConf != null) {
-                    dbConfig.setDexConfiguration(dexConf);
-                }
-                conf.addDatabaseConfiguration(dbConfig);
-                if (name.equals(defaultDatabase)) {
-                    conf.setDefaultDatabase(dbConfig);
-                }
-
-            } else {
-                throw new DexUtilsException("Unexpected xml tag '" + qName
-                        + "'.");
-            }
-        }
-
-        @Override
-        public void endElement(String uri, String localName, String qName)
-                throws SAXException {
-        }
-    }
-
-    /**
-     * {@link Configuration} instance.
-     */
-    private Configuration config = null;
-
-    /**
-     * XML file.
-     */
-    private File xml;
-
-    /**
-     * Creates a new instance.
-     */
-    public XMLConfigurationProvider() {
-    }
-
-    /**
-     * Sets the {@link File} to be loaded.
-     * 
-     * @param f
-     *            {@link File} to be loaded.
-     */
-    public void setFile(File f) {
-        xml = f;
-    }
-
-    public void set(Configuration config) {
-        this.config = config;
-    }
-
-    public void load() throws DexUtilsException {
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setValidating(true);
-        factory.setNamespaceAware(true);
-
-        try {
-            SAXParser parser = factory.newSAXParser();
-            DexUtilsHandler handler = new DexUtilsHandler(config);
-            parser.parse(xml.getAbsolutePath(), handler);
-        } catch (Exception e) {
-            String msg = new String("Parsing error.");
-            log.error(msg, e);
-            throw new DexUtilsException(msg, e);
-        }
-        log.info("Loaded configuration from " + xml.getAbsolutePath());
-    }
-}
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.config.impl;
+
+import java.io.File;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.ConfigurationProvider;
+import com.sparsity.dex.etl.config.bean.Configuration;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.etl.config.bean.JobDefinition;
+import com.sparsity.dex.etl.config.bean.SchemaDefinition;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+
+/**
+ * Loads a {@link Configuration} from an XML file.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class XMLConfigurationProvider implements ConfigurationProvider {
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(XMLConfigurationProvider.class);
+
+    /**
+     * XML handler to load a {@link Configuration} from a XML file.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public class DexUtilsHandler extends DefaultHandler {
+
+        /**
+         * {@link Configuration} instance to be used.
+         */
+        private Configuration conf;
+
+        /**
+         * Default {@link DatabaseConfiguration} alias.
+         */
+        private String defaultDatabase;
+
+        /**
+         * {@link DatabaseConfiguration} being processed.
+         */
+        private DatabaseConfiguration database = null;
+
+        /**
+         * {@link SchemaDefinition} being processed.
+         */
+        private SchemaDefinition schema = null;
+
+        /**
+         * Name of the node or edge type being processed.
+         */
+        private String type = null;
+
+        /**
+         * {@link JobDefinition} being processed.
+         */
+        private JobDefinition job = null;
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param conf
+         *            {@link Configuration} instance to be used.
+         */
+        public DexUtilsHandler(Configuration conf) {
+            this.conf = conf;
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            log.debug("Start document.");
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            if (conf.getDefaultDatabase() == null) {
+                throw new DexUtilsException("There is no default database.");
+            }
+            log.debug("End document.");
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attrs) throws SAXException {
+
+            if (qName.equals("config")) {
+
+                log.debug("Processing 'config' xml tag.");
+
+            } else if (qName.equals("databases")) {
+
+                log.debug("Processing 'databases' xml tag.");
+                defaultDatabase = attrs.getValue("default");
+
+            } else if (qName.equals("database")) {
+
+                log.debug("Processing 'database' xml tag.");
+                DatabaseConfiguration dbConfig = new DatabaseConfiguration();
+                String name = attrs.getValue("name");
+                String alias = attrs.getValue("alias");
+                String path = attrs.getValue("path");
+                if (name == null || alias == null || path == null) {
+                    throw new DexUtilsException(
+                            "'name', 'alias' and 'path' attribute are required for 'database' xml tag.");
+                }
+                dbConfig.setName(name);
+                dbConfig.setAlias(alias);
+                dbConfig.setPath(path);
+                String dexConf = attrs.getValue("conf");
+                if (dexConf != null) {
+                    dbConfig.setDexConfiguration(dexConf);
+                }
+                String pool = attrs.getValue("pool");
+                if ("auto".equals(pool)) {
+                    dbConfig.setSessionPoolSize(Runtime.getRuntime()
+                            .availableProcessors());
+                } else if (pool != null) {
+                    try {
+                        dbConfig.setSessionPoolSize(Integer.parseInt(pool));
+                    } catch (NumberFormatException e) {
+                        throw new DexUtilsException("Invalid 'pool' value '"
+                                + pool + "' for 'database' xml tag.", e);
+                    }
+                }
+                conf.addDatabaseConfiguration(dbConfig);
+                if (name.equals(defaultDatabase)) {
+                    conf.setDefaultDatabase(dbConfig);
+                }
+                database = dbConfig;
+                schema = null;
+                type = null;
+
+            } else if (qName.equals("schema")) {
+
+                log.debug("Processing 'schema' xml tag.");
+                checkNested(qName, database, "database");
+                schema = new SchemaDefinition();
+                database.setSchema(schema);
+
+            } else if (qName.equals("node")) {
+
+                log.debug("Processing 'node' xml tag.");
+                checkNested(qName, schema, "schema");
+                type = attrs.getValue("name");
+                if (type == null) {
+                    throw new DexUtilsException(
+                            "'name' attribute is required for 'node' xml tag.");
+                }
+                schema.addNodeType(type);
+
+            } else if (qName.equals("edge")) {
+
+                log.debug("Processing 'edge' xml tag.");
+                checkNested(qName, schema, "schema");
+                type = attrs.getValue("name");
+                if (type == null) {
+                    throw new DexUtilsException(
+                            "'name' attribute is required for 'edge' xml tag.");
+                }
+                boolean neighbors = "true".equals(attrs.getValue("neighbors"));
+                String tail = attrs.getValue("tail");
+                String head = attrs.getValue("head");
+                if (tail != null || head != null) {
+                    if (tail == null || head == null) {
+                        throw new DexUtilsException(
+                                "Both 'tail' and 'head' attributes are required for restricted 'edge' xml tag.");
+                    }
+                    schema.addRestrictedEdgeType(type, tail, head, neighbors);
+                } else {
+                    schema.addEdgeType(type,
+                            !"false".equals(attrs.getValue("directed")),
+                            neighbors);
+                }
+
+            } else if (qName.equals("attribute")) {
+
+                log.debug("Processing 'attribute' xml tag.");
+                checkNested(qName, type, "node' or 'edge");
+                String name = attrs.getValue("name");
+                String dataType = attrs.getValue("type");
+                if (name == null || dataType == null) {
+                    throw new DexUtilsException(
+                            "'name' and 'type' attributes are required for 'attribute' xml tag.");
+                }
+                String kind = attrs.getValue("kind");
+                try {
+                    schema.addAttribute(type, name, DataType.valueOf(dataType),
+                            kind == null ? AttributeKind.Basic : AttributeKind
+                                    .valueOf(kind));
+                } catch (IllegalArgumentException e) {
+                    throw new DexUtilsException("Invalid 'type' or 'kind' for '"
+                            + name + "' attribute.", e);
+                }
+
+            } else if (qName.equals("jobs")) {
+
+                log.debug("Processing 'jobs' xml tag.");
+
+            } else if (qName.equals("job")) {
+
+                log.debug("Processing 'job' xml tag.");
+                startJob(attrs);
+
+            } else if (qName.equals("column")) {
+
+                log.debug("Processing 'column' xml tag.");
+                checkNested(qName, job, "job");
+                String ref = attrs.getValue("ref");
+                try {
+                    job.addColumn(new JobDefinition.ColumnDefinition(attrs
+                            .getValue("attribute"), attrs.getValue("key"),
+                            ref == null ? null : JobDefinition.Reference
+                                    .valueOf(ref.toUpperCase())));
+                } catch (IllegalArgumentException e) {
+                    throw new DexUtilsException("Invalid 'ref' value '" + ref
+                            + "' for 'column' xml tag.", e);
+                }
+
+            } else {
+                throw new DexUtilsException("Unexpected xml tag '" + qName
+                        + "'.");
+            }
+        }
+
+        /**
+         * Processes a 'job' xml tag.
+         * 
+         * @param attrs
+         *            Attributes of the xml tag.
+         */
+        private void startJob(Attributes attrs) {
+            String name = attrs.getValue("name");
+            String file = attrs.getValue("file");
+            if (name == null || file == null) {
+                throw new DexUtilsException(
+                        "'name' and 'file' attributes are required for 'job' xml tag.");
+            }
+            String db = attrs.getValue("database");
+            DatabaseConfiguration dbConf = (db == null) ? conf
+                    .getDefaultDatabase() : conf.getDatabase(db);
+            if (dbConf == null) {
+                throw new DexUtilsException("Unknown database '" + db
+                        + "' for '" + name + "' job.");
+            }
+            job = new JobDefinition(name, dbConf);
+            job.setFile(new File(file));
+            if ("jsonl".equals(attrs.getValue("format"))) {
+                job.setFormat(JobDefinition.Format.JSONL);
+            }
+            String node = attrs.getValue("node");
+            String edge = attrs.getValue("edge");
+            if ((node == null) == (edge == null)) {
+                throw new DexUtilsException(
+                        "Either 'node' or 'edge' attribute is required for 'job' xml tag.");
+            }
+            if (node != null) {
+                job.setNodeType(node);
+            } else {
+                job.setEdgeType(edge);
+                job.setTail(attrs.getValue("tail"));
+                job.setHead(attrs.getValue("head"));
+            }
+            job.setNumericKeys(!"string".equals(attrs.getValue("keys")));
+            job.setHeader("true".equals(attrs.getValue("header")));
+            job.setDeferIndexes("true".equals(attrs.getValue("defer")));
+            String separator = attrs.getValue("separator");
+            if ("\\t".equals(separator)) {
+                job.setSeparator('\t');
+            } else if (separator != null) {
+                if (separator.length() != 1) {
+                    throw new DexUtilsException("Invalid 'separator' value '"
+                            + separator + "' for 'job' xml tag.");
+                }
+                job.setSeparator(separator.charAt(0));
+            }
+            String value = null;
+            try {
+                value = attrs.getValue("batch");
+                if (value != null) {
+                    job.setBatchSize(Integer.parseInt(value));
+                }
+                value = attrs.getValue("parallelism");
+                if ("auto".equals(value)) {
+                    job.setParallelism(Runtime.getRuntime()
+                            .availableProcessors());
+                } else if (value != null) {
+                    job.setParallelism(Integer.parseInt(value));
+                }
+                value = attrs.getValue("index");
+                if (value != null) {
+                    job.setIndexStorage(JobDefinition.IndexStorage
+                            .valueOf(value.toUpperCase()));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new DexUtilsException("Invalid value '" + value
+                        + "' for '" + name + "' job.", e);
+            }
+            conf.addJob(job);
+        }
+
+        /**
+         * Checks an xml tag is nested in the expected one.
+         * 
+         * @param qName
+         *            Name of the xml tag.
+         * @param parent
+         *            Object built from the parent xml tag, or
+         *            <code>null</code> if there is none.
+         * @param expected
+         *            Name of the expected parent xml tag.
+         */
+        private void checkNested(String qName, Object parent, String expected) {
+            if (parent == null) {
+                throw new DexUtilsException("'" + qName
+                        + "' xml tag must be inside '" + expected + "' xml tag.");
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            if (qName.equals("node") || qName.equals("edge")) {
+                type = null;
+            } else if (qName.equals("schema")) {
+                schema = null;
+            } else if (qName.equals("database")) {
+                database = null;
+            } else if (qName.equals("job")) {
+                job = null;
+            }
+        }
+    }
+
+    /**
+     * {@link Configuration} instance.
+     */
+    private Configuration config = null;
+
+    /**
+     * XML file.
+     */
+    private File xml;
+
+    /**
+     * Creates a new instance.
+     */
+    public XMLConfigurationProvider() {
+    }
+
+    /**
+     * Sets the {@link File} to be loaded.
+     * 
+     * @param f
+     *            {@link File} to be loaded.
+     */
+    public void setFile(File f) {
+        xml = f;
+    }
+
+    public void set(Configuration config) {
+        this.config = config;
+    }
+
+    public void load() throws DexUtilsException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setValidating(true);
+        factory.setNamespaceAware(true);
+
+        try {
+            SAXParser parser = factory.newSAXParser();
+            DexUtilsHandler handler = new DexUtilsHandler(config);
+            parser.parse(xml.getAbsolutePath(), handler);
+        } catch (Exception e) {
+            String msg = new String("Parsing error.");
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+        log.info("Loaded configuration from " + xml.getAbsolutePath());
+    }
+}
@@ -0,0 +1,830 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.exporter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.AttributeListIterator;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.EdgeData;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.ObjectType;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.ObjectsIterator;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Type;
+import com.sparsity.dex.gdb.TypeListIterator;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Exports the nodes and edges of a Dex database.
+ * <p>
+ * Each node and edge type is exported into its own file,
+ * <code>&lt;type&gt;.csv</code> or <code>&lt;type&gt;.jsonl</code>, in the
+ * output directory. Records contain the OID of the object, the OIDs of the
+ * tail and head nodes for edges, and the value of each attribute of the type
+ * (<code>Text</code> attributes are not exported). CSV files have a header
+ * with the field names.
+ * <p>
+ * The objects of each type are split into chunks of {@link #getChunkSize()}
+ * objects, which are encoded by a pool of worker threads, each one with its
+ * own working {@link Session} (see {@link DatabaseConfiguration#getSession()}
+ * ). The encoded chunks are written in order through a {@link FileChannel},
+ * so the output does not depend on the number of threads. At most two chunks
+ * per thread are kept in memory.
+ * <p>
+ * For instance:
+ * 
+ * <pre>
+ * Exporter exporter = new Exporter(dbConf);
+ * exporter.setDirectory(new File(&quot;snapshot&quot;));
+ * exporter.setFormat(Exporter.Format.JSONL);
+ * exporter.export();
+ * </pre>
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class Exporter {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(Exporter.class);
+
+    /**
+     * Default number of objects per chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    /**
+     * Output file format.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    public enum Format {
+        /**
+         * CSV.
+         */
+        CSV,
+        /**
+         * JSON Lines.
+         */
+        JSONL
+    }
+
+    /**
+     * {@link DatabaseConfiguration} instance.
+     */
+    private DatabaseConfiguration dbConf;
+
+    /**
+     * Output directory.
+     */
+    private File directory = null;
+
+    /**
+     * Output file {@link Format}.
+     */
+    private Format format = Format.CSV;
+
+    /**
+     * CSV field separator.
+     */
+    private char separator = ',';
+
+    /**
+     * Output file charset name.
+     */
+    private String charset = "UTF-8";
+
+    /**
+     * Number of worker threads.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of objects per chunk.
+     */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    public Exporter(DatabaseConfiguration dbConf) {
+        if (dbConf == null) {
+            throw new IllegalArgumentException(
+                    "Database configuration cannot be null.");
+        }
+        this.dbConf = dbConf;
+    }
+
+    /**
+     * Gets the output directory.
+     * 
+     * @return The output directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sets the output directory. It is created if it does not exist.
+     * 
+     * @param dir
+     *            The output directory.
+     */
+    public void setDirectory(File dir) {
+        directory = dir;
+    }
+
+    /**
+     * Gets the output file {@link Format}.
+     * 
+     * @return The output file {@link Format}.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the output file {@link Format}. By default, {@link Format#CSV}.
+     * 
+     * @param f
+     *            The output file {@link Format}.
+     */
+    public void setFormat(Format f) {
+        if (f == null) {
+            throw new IllegalArgumentException("Format cannot be null.");
+        }
+        format = f;
+    }
+
+    /**
+     * Gets the CSV field separator.
+     * 
+     * @return The CSV field separator.
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Sets the CSV field separator. By default, <code>','</code>.
+     * 
+     * @param s
+     *            The CSV field separator.
+     */
+    public void setSeparator(char s) {
+        if (s == '"' || s == '\n' || s == '\r') {
+            throw new IllegalArgumentException("Invalid separator '" + s
+                    + "'.");
+        }
+        separator = s;
+    }
+
+    /**
+     * Gets the output file charset name.
+     * 
+     * @return The output file charset name.
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the output file charset name. By default, <code>"UTF-8"</code>.
+     * 
+     * @param c
+     *            The output file charset name.
+     */
+    public void setCharset(String c) {
+        if (c == null) {
+            throw new IllegalArgumentException("Charset cannot be null.");
+        }
+        charset = c;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     * 
+     * @return The number of worker threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of worker threads. By default, the number of available
+     * processors.
+     * 
+     * @param p
+     *            The number of worker threads. It must be positive.
+     */
+    public void setParallelism(int p) {
+        if (p <= 0) {
+            String msg = new String("Parallelism must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        parallelism = p;
+    }
+
+    /**
+     * Gets the number of objects per chunk.
+     * 
+     * @return The number of objects per chunk.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of objects per chunk. By default,
+     * {@link #DEFAULT_CHUNK_SIZE}.
+     * 
+     * @param size
+     *            The number of objects per chunk. It must be positive.
+     */
+    public void setChunkSize(int size) {
+        if (size <= 0) {
+            String msg = new String("Chunk size must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        chunkSize = size;
+    }
+
+    /**
+     * Exports all the node and edge types.
+     * 
+     * @return The number of exported objects.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    public long export() throws DexUtilsException {
+        if (directory == null) {
+            throw new DexUtilsException("No output directory has been set.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            String msg = new String("Cannot create "
+                    + directory.getAbsolutePath());
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        dbConf.openDatabase();
+        Graph graph = dbConf.getSession().getGraph();
+        List<Integer> types = new ArrayList<Integer>();
+        TypeListIterator typeIt = graph.findNodeTypes().iterator();
+        while (typeIt.hasNext()) {
+            types.add(typeIt.next());
+        }
+        typeIt = graph.findEdgeTypes().iterator();
+        while (typeIt.hasNext()) {
+            types.add(typeIt.next());
+        }
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism,
+                new WorkerFactory(dbConf));
+        try {
+            long count = 0;
+            for (Integer type : types) {
+                count += export(graph, type, pool);
+            }
+            log.info(count + " objects exported from " + dbConf.getAlias()
+                    + " with " + parallelism + " threads in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return count;
+        } finally {
+            pool.shutdownNow();
+            awaitTermination(pool);
+        }
+    }
+
+    /**
+     * Exports the given type.
+     * 
+     * @param graph
+     *            {@link Graph} of the working {@link Session}.
+     * @param typeId
+     *            Dex type identifier.
+     * @param pool
+     *            Worker threads.
+     * @return The number of exported objects.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    private long export(Graph graph, int typeId, ExecutorService pool)
+            throws DexUtilsException {
+        Type type = graph.getType(typeId);
+        boolean edge = type.getObjectType() == ObjectType.Edge;
+        List<Attribute> attrs = new ArrayList<Attribute>();
+        AttributeListIterator attrIt = graph.findAttributes(typeId).iterator();
+        while (attrIt.hasNext()) {
+            Attribute attr = graph.getAttribute(attrIt.next());
+            if (attr.getDataType() == DataType.Text) {
+                log.warn("Text attribute " + type.getName() + "."
+                        + attr.getName() + " is not exported");
+            } else {
+                attrs.add(attr);
+            }
+        }
+        Columns columns = new Columns(edge, attrs);
+
+        File file = new File(directory, type.getName()
+                + (format == Format.CSV ? ".csv" : ".jsonl"));
+        long start = System.currentTimeMillis();
+        long count = 0;
+        LinkedList<Future<ByteBuffer>> pending = new LinkedList<Future<ByteBuffer>>();
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            FileChannel ch = out.getChannel();
+            if (format == Format.CSV) {
+                write(ch, ByteBuffer.wrap(columns.header().getBytes(charset)));
+            }
+            Objects objs = graph.select(typeId);
+            try {
+                ObjectsIterator it = objs.iterator();
+                try {
+                    long[] chunk = new long[chunkSize];
+                    int n = 0;
+                    while (it.hasNext()) {
+                        chunk[n++] = it.next();
+                        if (n == chunkSize) {
+                            pending.add(pool.submit(new ChunkWriter(chunk,
+                                    columns)));
+                            count += n;
+                            chunk = new long[chunkSize];
+                            n = 0;
+                            // Bound the encoded chunks kept in memory
+                            if (pending.size() >= parallelism * 2) {
+                                write(ch, pending.removeFirst().get());
+                            }
+                        }
+                    }
+                    if (n > 0) {
+                        pending.add(pool.submit(new ChunkWriter(Arrays
+                                .copyOf(chunk, n), columns)));
+                        count += n;
+                    }
+                } finally {
+                    it.close();
+                }
+            } finally {
+                objs.close();
+            }
+            while (!pending.isEmpty()) {
+                write(ch, pending.removeFirst().get());
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            String msg = new String("Cannot write " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } catch (ExecutionException e) {
+            String msg = new String("Cannot export " + type.getName());
+            log.error(msg, e.getCause());
+            throw new DexUtilsException(msg, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexUtilsException("Interrupted while exporting "
+                    + type.getName(), e);
+        } finally {
+            for (Future<ByteBuffer> f : pending) {
+                f.cancel(true);
+            }
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.warn("Cannot close " + file.getAbsolutePath(), e);
+                }
+            }
+        }
+        log.info(count + " objects of " + type.getName() + " exported to "
+                + file.getAbsolutePath() + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return count;
+    }
+
+    /**
+     * Writes the whole buffer into the given channel.
+     * 
+     * @param ch
+     *            {@link FileChannel} instance.
+     * @param buf
+     *            Buffer to be written.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private static void write(FileChannel ch, ByteBuffer buf)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * Fields of the exported records of a type.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private class Columns {
+
+        /**
+         * Whether the type is an edge type.
+         */
+        private boolean edge;
+
+        /**
+         * Attribute identifiers.
+         */
+        private int[] ids;
+
+        /**
+         * Attribute names.
+         */
+        private String[] names;
+
+        /**
+         * Attribute data types.
+         */
+        private DataType[] dataTypes;
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param edge
+         *            Whether the type is an edge type.
+         * @param attrs
+         *            Exported attributes.
+         */
+        public Columns(boolean edge, List<Attribute> attrs) {
+            this.edge = edge;
+            ids = new int[attrs.size()];
+            names = new String[attrs.size()];
+            dataTypes = new DataType[attrs.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = attrs.get(i).getId();
+                names[i] = attrs.get(i).getName();
+                dataTypes[i] = attrs.get(i).getDataType();
+            }
+        }
+
+        /**
+         * Gets the CSV header.
+         * 
+         * @return The CSV header.
+         */
+        public String header() {
+            StringBuilder sb = new StringBuilder("oid");
+            if (edge) {
+                sb.append(separator).append("tail");
+                sb.append(separator).append("head");
+            }
+            for (String name : names) {
+                sb.append(separator);
+                appendCSV(sb, name);
+            }
+            return sb.append('\n').toString();
+        }
+
+        /**
+         * Appends the record of the given object.
+         * 
+         * @param sb
+         *            Record builder.
+         * @param graph
+         *            {@link Graph} of the working {@link Session}.
+         * @param oid
+         *            Object identifier.
+         * @param value
+         *            {@link Value} instance to be reused.
+         */
+        public void append(StringBuilder sb, Graph graph, long oid,
+                Value value) {
+            boolean csv = format == Format.CSV;
+            sb.append(csv ? "" : "{\"oid\":").append(oid);
+            if (edge) {
+                EdgeData data = graph.getEdgeData(oid);
+                sb.append(csv ? String.valueOf(separator) : ",\"tail\":")
+                        .append(data.getTail());
+                sb.append(csv ? String.valueOf(separator) : ",\"head\":")
+                        .append(data.getHead());
+            }
+            for (int i = 0; i < ids.length; i++) {
+                graph.getAttribute(oid, ids[i], value);
+                String s = value.isNull() ? null : toText(value,
+                        dataTypes[i]);
+                if (csv) {
+                    sb.append(separator);
+                    if (s != null) {
+                        appendCSV(sb, s);
+                    }
+                } else {
+                    sb.append(',');
+                    appendJSON(sb, names[i]);
+                    sb.append(':');
+                    if (s == null) {
+                        sb.append("null");
+                    } else if (dataTypes[i] == DataType.String) {
+                        appendJSON(sb, s);
+                    } else if (dataTypes[i] == DataType.Double
+                            && (Double.isNaN(value.getDouble()) || Double
+                                    .isInfinite(value.getDouble()))) {
+                        // Not representable in JSON
+                        sb.append("null");
+                    } else {
+                        sb.append(s);
+                    }
+                }
+            }
+            sb.append(csv ? "\n" : "}\n");
+        }
+
+        /**
+         * Appends a CSV field, quoted if required.
+         * 
+         * @param sb
+         *            Record builder.
+         * @param s
+         *            Field value.
+         */
+        private void appendCSV(StringBuilder sb, String s) {
+            boolean quote = false;
+            for (int i = 0; i < s.length() && !quote; i++) {
+                char c = s.charAt(i);
+                quote = c == separator || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                sb.append(s);
+                return;
+            }
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"') {
+                    sb.append('"');
+                }
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+    }
+
+    /**
+     * Gets the textual representation of a non-null value, as expected by the
+     * loaders.
+     * 
+     * @param value
+     *            {@link Value} instance.
+     * @param dt
+     *            Attribute {@link DataType}.
+     * @return The textual representation of the value.
+     */
+    private static String toText(Value value, DataType dt) {
+        switch (dt) {
+        case Boolean:
+            return String.valueOf(value.getBoolean());
+        case Integer:
+            return String.valueOf(value.getInteger());
+        case Long:
+            return String.valueOf(value.getLong());
+        case Double:
+            return String.valueOf(value.getDouble());
+        case Timestamp:
+            return String.valueOf(value.getTimestampAsLong());
+        case OID:
+            return String.valueOf(value.getOID());
+        default:
+            return value.getString();
+        }
+    }
+
+    /**
+     * Appends a JSON string.
+     * 
+     * @param sb
+     *            Record builder.
+     * @param s
+     *            String value.
+     */
+    private static void appendJSON(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Encodes a chunk of objects.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private class ChunkWriter implements Callable<ByteBuffer> {
+
+        /**
+         * Object identifiers.
+         */
+        private long[] oids;
+
+        /**
+         * {@link Columns} instance.
+         */
+        private Columns columns;
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param oids
+         *            Object identifiers.
+         * @param columns
+         *            {@link Columns} instance.
+         */
+        public ChunkWriter(long[] oids, Columns columns) {
+            this.oids = oids;
+            this.columns = columns;
+        }
+
+        public ByteBuffer call() throws Exception {
+            Graph graph = dbConf.getSession().getGraph();
+            Value value = new Value();
+            Chunk chunk = new Chunk();
+            Writer w = new BufferedWriter(new OutputStreamWriter(chunk,
+                    charset));
+            StringBuilder sb = new StringBuilder();
+            for (long oid : oids) {
+                sb.setLength(0);
+                columns.append(sb, graph, oid, value);
+                w.append(sb);
+            }
+            w.close();
+            return chunk.toBuffer();
+        }
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} whose content can be wrapped without
+     * copying it.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class Chunk extends ByteArrayOutputStream {
+
+        /**
+         * Creates a new instance.
+         */
+        public Chunk() {
+            super(64 * 1024);
+        }
+
+        /**
+         * Wraps the content.
+         * 
+         * @return A {@link ByteBuffer} with the content.
+         */
+        public ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * Waits for the worker threads to finish, so their {@link Session}s are
+     * closed when the export returns.
+     * 
+     * @param pool
+     *            {@link ExecutorService} which has been shutdown.
+     */
+    private static void awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the worker threads.
+     * <p>
+     * Worker threads close their working {@link Session} when they finish.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class WorkerFactory implements ThreadFactory {
+
+        /**
+         * {@link DatabaseConfiguration} instance.
+         */
+        private DatabaseConfiguration dbConf;
+
+        /**
+         * Number of created threads.
+         */
+        private AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param dbConf
+         *            {@link DatabaseConfiguration} instance.
+         */
+        public WorkerFactory(DatabaseConfiguration dbConf) {
+            this.dbConf = dbConf;
+        }
+
+        public Thread newThread(final Runnable r) {
+            Thread th = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        r.run();
+                    } finally {
+                        dbConf.closeSession();
+                    }
+                }
+            }, "exporter-" + dbConf.getAlias() + "-" + count.incrementAndGet());
+            th.setDaemon(true);
+            return th;
+        }
+    }
+}
@@ -0,0 +1,1162 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Type;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Base class for all loaders.
+ * <p>
+ * A loader reads records from a {@link RecordReader} and writes them into the
+ * Dex database of a {@link DatabaseConfiguration} using the working
+ * {@link Session} of the calling thread. Records are written in batched
+ * transactions, that is, the {@link Session} commits every
+ * {@link #getBatchSize()} records.
+ * <p>
+ * By default records are read from a CSV file ({@link #setFile(File)}), or
+ * from a JSON Lines file if its keys are given ({@link #setJSONKeys(String...)}
+ * ).
+ * <p>
+ * For bulk loads, indexes can be deferred (see {@link #setDeferIndexes(boolean)}
+ * ): indexed and unique attributes are loaded as basic ones and indexed in a
+ * single pass at the end.
+ * <p>
+ * CSV files are memory-mapped by default (see {@link MappedCSVRecordReader}),
+ * so records are parsed without copying them to the Java heap.
+ * <p>
+ * Loads from files can be resumed after a failure if a {@link LoadJournal}
+ * is set (see {@link #setJournal(LoadJournal)}).
+ * <p>
+ * Attributes are buffered per batch in primitive columns and written one
+ * attribute at a time before the transaction commits (see
+ * {@link #bufferAttributes(long, RecordReader, int[], DataType[])}).
+ * Loaders parse all the fields of a record before creating its object (see
+ * {@link #readAttributes(RecordReader, int[], DataType[])}), so a record which
+ * cannot be parsed does not leave a partial object in the batch. If the
+ * attributes of a batch cannot be written, for instance, a duplicated value
+ * of a unique attribute, its objects are dropped and it is not checkpointed,
+ * so a resumed load creates them again.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public abstract class AbstractLoader {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(AbstractLoader.class);
+
+    /**
+     * Default number of records per transaction.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    /**
+     * {@link DatabaseConfiguration} instance.
+     */
+    private DatabaseConfiguration dbConf = null;
+
+    /**
+     * Input file.
+     */
+    private File file = null;
+
+    /**
+     * CSV field separator.
+     */
+    private char separator = ',';
+
+    /**
+     * Whether the first record of the input is a header or not.
+     */
+    private boolean header = false;
+
+    /**
+     * JSON keys by field position, or <code>null</code> for CSV input.
+     */
+    private String[] jsonKeys = null;
+
+    /**
+     * Input file charset name.
+     */
+    private String charset = "UTF-8";
+
+    /**
+     * Whether CSV files are memory-mapped or not.
+     */
+    private boolean memoryMapped = true;
+
+    /**
+     * Number of records per transaction.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Whether {@link #prepare(Graph)} has been called or not.
+     */
+    private boolean prepared = false;
+
+    /**
+     * Whether indexes are deferred or not.
+     */
+    private boolean deferIndexes = false;
+
+    /**
+     * Original {@link AttributeKind} of the deferred attributes by attribute
+     * identifier.
+     */
+    private Map<Integer, AttributeKind> deferred = new LinkedHashMap<Integer, AttributeKind>();
+
+    /**
+     * {@link LoadJournal} instance, or <code>null</code>.
+     */
+    private LoadJournal journal = null;
+
+    /**
+     * Journal state of the input being loaded by each thread.
+     */
+    private ThreadLocal<Checkpoint> checkpoint = new ThreadLocal<Checkpoint>();
+
+    /**
+     * Attributes of the current batch buffered by each thread.
+     */
+    private ThreadLocal<AttributeBuffer> attributes = new ThreadLocal<AttributeBuffer>();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    protected AbstractLoader(DatabaseConfiguration dbConf) {
+        if (dbConf == null) {
+            throw new IllegalArgumentException(
+                    "Database configuration cannot be null.");
+        }
+        this.dbConf = dbConf;
+    }
+
+    /**
+     * Gets the {@link DatabaseConfiguration} instance.
+     * 
+     * @return The {@link DatabaseConfiguration} instance.
+     */
+    public DatabaseConfiguration getDatabaseConfiguration() {
+        return dbConf;
+    }
+
+    /**
+     * Gets the input file.
+     * 
+     * @return The input file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Sets the input file.
+     * 
+     * @param f
+     *            The input file.
+     */
+    public void setFile(File f) {
+        file = f;
+    }
+
+    /**
+     * Gets the CSV field separator.
+     * 
+     * @return The CSV field separator.
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Sets the CSV field separator. By default, <code>','</code>.
+     * 
+     * @param s
+     *            The CSV field separator.
+     */
+    public void setSeparator(char s) {
+        separator = s;
+    }
+
+    /**
+     * Gets the JSON keys by field position.
+     * 
+     * @return The JSON keys by field position, or <code>null</code> for CSV
+     *         input.
+     */
+    public String[] getJSONKeys() {
+        return (jsonKeys == null) ? null : jsonKeys.clone();
+    }
+
+    /**
+     * Sets the input to be JSON Lines, one object per line, with the given
+     * keys by field position (see {@link JSONLRecordReader}).
+     * <p>
+     * Fields are then mapped to attributes by position as for CSV input.
+     * 
+     * @param keys
+     *            The JSON keys by field position, or <code>null</code> for CSV
+     *            input.
+     */
+    public void setJSONKeys(String... keys) {
+        jsonKeys = (keys == null) ? null : keys.clone();
+    }
+
+    /**
+     * Gets whether the first record of the input is a header or not.
+     * 
+     * @return <code>true</code> if the first record is a header,
+     *         <code>false</code> otherwise.
+     */
+    public boolean hasHeader() {
+        return header;
+    }
+
+    /**
+     * Sets whether the first record of the input is a header or not. By
+     * default, <code>false</code>.
+     * <p>
+     * It is ignored for JSON Lines input.
+     * 
+     * @param h
+     *            <code>true</code> if the first record is a header and must be
+     *            skipped, <code>false</code> otherwise.
+     */
+    public void setHeader(boolean h) {
+        header = h;
+    }
+
+    /**
+     * Gets the input file charset name.
+     * 
+     * @return The input file charset name.
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the input file charset name. By default, <code>"UTF-8"</code>.
+     * 
+     * @param c
+     *            The input file charset name.
+     */
+    public void setCharset(String c) {
+        if (c == null) {
+            throw new IllegalArgumentException("Charset cannot be null.");
+        }
+        charset = c;
+    }
+
+    /**
+     * Gets if CSV files are memory-mapped.
+     * 
+     * @return <code>true</code> if CSV files are memory-mapped,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Sets if CSV files are memory-mapped. By default, <code>true</code>.
+     * <p>
+     * Memory-mapping is just used for ASCII separators and charsets where
+     * the CSV delimiters are single bytes (for instance, UTF-8 or
+     * ISO-8859-1). Otherwise, or if it is disabled, files are read as
+     * streams (see {@link #open(InputStream)}).
+     * 
+     * @param mapped
+     *            Whether CSV files are memory-mapped.
+     */
+    public void setMemoryMapped(boolean mapped) {
+        memoryMapped = mapped;
+    }
+
+    /**
+     * Gets the number of records per transaction.
+     * 
+     * @return The number of records per transaction.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of records per transaction. By default,
+     * {@link #DEFAULT_BATCH_SIZE}.
+     * 
+     * @param size
+     *            The number of records per transaction. It must be positive.
+     */
+    public void setBatchSize(int size) {
+        if (size <= 0) {
+            String msg = new String("Batch size must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        batchSize = size;
+    }
+
+    /**
+     * Gets if indexes are deferred.
+     * 
+     * @return <code>true</code> if indexes are deferred, <code>false</code>
+     *         otherwise.
+     */
+    public boolean isDeferIndexes() {
+        return deferIndexes;
+    }
+
+    /**
+     * Sets if indexes are deferred. By default, <code>false</code>.
+     * <p>
+     * If so, the indexed and unique attributes written by the loader are
+     * turned into basic attributes before the first record is loaded, so
+     * their indexes are not maintained on every insert. Once the input file
+     * is loaded ({@link #load()}), they are indexed again in a single pass and
+     * unique attributes are checked to have unique values.
+     * <p>
+     * Other loaders must not use those attributes meanwhile.
+     * 
+     * @param defer
+     *            Whether indexes are deferred.
+     */
+    public synchronized void setDeferIndexes(boolean defer) {
+        deferIndexes = defer;
+        invalidate();
+    }
+
+    /**
+     * Gets the {@link LoadJournal}.
+     * 
+     * @return The {@link LoadJournal} or <code>null</code>.
+     */
+    public LoadJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the {@link LoadJournal} where the progress of the loads from files
+     * is recorded. By default, there is none.
+     * <p>
+     * The committed records of an input recorded in the journal are skipped,
+     * so a failed load resumes from its last checkpoint.
+     * 
+     * @param j
+     *            {@link LoadJournal} instance or <code>null</code>.
+     */
+    public void setJournal(LoadJournal j) {
+        journal = j;
+    }
+
+    /**
+     * Loads the input file.
+     * <p>
+     * If indexes are deferred, they are built once the file is loaded. If
+     * the load fails, they remain deferred until {@link #buildIndexes()} is
+     * called.
+     * 
+     * @return The number of loaded records.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    public long load() throws DexUtilsException {
+        if (file == null) {
+            throw new DexUtilsException("No input file has been set.");
+        }
+        long count = load(new FileRange(file, 0, file.length()));
+        buildIndexes();
+        return count;
+    }
+
+    /**
+     * Restores the indexes of the attributes deferred by the loader.
+     * 
+     * @return The number of indexed attributes.
+     * @throws DexUtilsException
+     *             if a unique attribute has duplicated values. It remains
+     *             indexed, but not unique.
+     * @see DatabaseConfiguration#indexAttribute(int, AttributeKind)
+     */
+    public synchronized int buildIndexes() throws DexUtilsException {
+        int indexed = 0;
+        Iterator<Map.Entry<Integer, AttributeKind>> it = deferred.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, AttributeKind> entry = it.next();
+            if (dbConf.indexAttribute(entry.getKey(), entry.getValue())) {
+                indexed++;
+            }
+            it.remove();
+        }
+        // Indexes are deferred again by the next load
+        invalidate();
+        return indexed;
+    }
+
+    /**
+     * Loads the given range of the input file.
+     * <p>
+     * The header, if any, is skipped just for the range starting at the
+     * beginning of the file.
+     * 
+     * @param range
+     *            {@link FileRange} instance.
+     * @return The number of loaded records.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    long load(FileRange range) throws DexUtilsException {
+        String name = null;
+        long skip = 0;
+        if (journal != null) {
+            name = LoadJournal.getName(range);
+            skip = journal.getCheckpoint(range);
+            restore(journal, name);
+            if (journal.isComplete(name)) {
+                log.info(range + " was already loaded");
+                return 0;
+            }
+        }
+        RecordReader reader = null;
+        try {
+            reader = open(range);
+            if (header && jsonKeys == null && range.getStart() == 0) {
+                reader.next();
+            }
+            if (skip > 0) {
+                for (long i = 0; i < skip && reader.next(); i++) {
+                }
+                log.info("Resuming " + range + " after " + skip + " records");
+            }
+            if (name != null) {
+                checkpoint.set(new Checkpoint(name, skip));
+            }
+            long count = load(reader);
+            if (name != null) {
+                journal.complete(name);
+            }
+            return count;
+        } catch (IOException e) {
+            String msg = new String("Cannot read " + range);
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } finally {
+            checkpoint.remove();
+            close(reader);
+        }
+    }
+
+    /**
+     * Creates the {@link RecordReader} for the given range of the input file.
+     * <p>
+     * By default, it creates a {@link MappedCSVRecordReader} if CSV files are
+     * memory-mapped (see {@link #setMemoryMapped(boolean)}), or calls
+     * {@link #open(InputStream)} otherwise.
+     * 
+     * @param range
+     *            {@link FileRange} instance.
+     * @return A {@link RecordReader} for the given range.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    RecordReader open(FileRange range) throws IOException {
+        Charset cs = Charset.forName(charset);
+        if (memoryMapped && jsonKeys == null && separator < 0x80
+                && isByteDelimited(cs)) {
+            return new MappedCSVRecordReader(range.getFile(), range
+                    .getStart(), range.getEnd(), separator, cs,
+                    MappedCSVRecordReader.DEFAULT_WINDOW_SIZE);
+        }
+        return open(range.openStream());
+    }
+
+    /**
+     * Checks if the CSV delimiters are encoded as single bytes which do not
+     * appear in other characters.
+     * 
+     * @param cs
+     *            {@link Charset} instance.
+     * @return <code>true</code> if the given {@link Charset} can be parsed
+     *         byte by byte, <code>false</code> otherwise.
+     */
+    private static boolean isByteDelimited(Charset cs) {
+        String name = cs.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII")
+                || name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+    }
+
+    /**
+     * Creates the {@link RecordReader} for the given input.
+     * <p>
+     * By default, it creates a {@link CSVRecordReader} using
+     * {@link #getSeparator()} and {@link #getCharset()}, or a
+     * {@link JSONLRecordReader} if JSON keys have been set.
+     * 
+     * @param in
+     *            Input stream.
+     * @return A {@link RecordReader} for the given input.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    protected RecordReader open(InputStream in) throws IOException {
+        if (jsonKeys != null) {
+            return new JSONLRecordReader(new InputStreamReader(in, charset),
+                    jsonKeys);
+        }
+        return new CSVRecordReader(new InputStreamReader(in, charset),
+                separator);
+    }
+
+    /**
+     * Loads all the records from the given {@link RecordReader}.
+     * <p>
+     * It uses the working {@link Session} of the calling thread, so it can be
+     * called concurrently from different threads.
+     * 
+     * @param reader
+     *            {@link RecordReader} instance.
+     * @return The number of loaded records.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    public long load(RecordReader reader) throws DexUtilsException {
+        dbConf.openDatabase();
+        Session sess = dbConf.getSession();
+        Graph graph = sess.getGraph();
+        prepareOnce(graph);
+
+        long start = System.currentTimeMillis();
+        Value value = new Value();
+        Checkpoint cp = checkpoint.get();
+        long count = 0;
+        long read = 0;
+        // Set until the attributes of the batch are written, as its objects
+        // are dropped if they cannot be
+        boolean dropped = false;
+        sess.begin();
+        try {
+            while (reader.next()) {
+                if (process(reader, graph, value)) {
+                    count++;
+                }
+                if (++read % batchSize == 0) {
+                    count += flush(graph, value);
+                    dropped = true;
+                    writeAttributes(graph, value);
+                    dropped = false;
+                    sess.commit();
+                    checkpoint(cp, read);
+                    sess.begin();
+                    log.debug(count + " records loaded into "
+                            + dbConf.getAlias());
+                }
+            }
+            count += flush(graph, value);
+            dropped = true;
+            writeAttributes(graph, value);
+            dropped = false;
+        } catch (IOException e) {
+            String msg = new String("Cannot read record "
+                    + (reader.getRecordNumber() + 1));
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } catch (RuntimeException e) {
+            if (dropped) {
+                // It already has the number of the failed record
+                throw e;
+            }
+            String msg = new String("Cannot load record "
+                    + reader.getRecordNumber());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } finally {
+            try {
+                if (!dropped) {
+                    // Objects already created must not lose their attributes
+                    dropped = true;
+                    writeAttributes(graph, value);
+                    dropped = false;
+                }
+            } catch (RuntimeException e) {
+                // Already logged, the load error is thrown instead
+            } finally {
+                attributes.remove();
+                sess.commit();
+                if (dropped) {
+                    discard(cp);
+                } else {
+                    checkpoint(cp, read - getBufferedCount());
+                }
+            }
+        }
+        log.info(count + " records loaded into " + dbConf.getAlias() + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return count;
+    }
+
+    /**
+     * Calls {@link #prepare(Graph)} just if it has not been called before.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     */
+    private synchronized void prepareOnce(Graph graph) {
+        if (!prepared) {
+            prepare(graph);
+            prepared = true;
+        }
+    }
+
+    /**
+     * Forces {@link #prepare(Graph)} to be called again before the next
+     * record is processed.
+     * <p>
+     * Subclasses must call it when a property used by
+     * {@link #prepare(Graph)} changes.
+     */
+    protected synchronized void invalidate() {
+        prepared = false;
+    }
+
+    /**
+     * Resolves the Dex identifiers required by the loader.
+     * <p>
+     * It is called once, before the first record is processed.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @throws DexUtilsException
+     *             if any required type or attribute does not exist.
+     */
+    protected abstract void prepare(Graph graph) throws DexUtilsException;
+
+    /**
+     * Writes the current record of the given {@link RecordReader}.
+     * 
+     * @param reader
+     *            {@link RecordReader} positioned at the record to be written.
+     * @param graph
+     *            {@link Graph} of the working {@link Session}.
+     * @param value
+     *            {@link Value} instance to be reused.
+     * @return <code>true</code> if the record was written, <code>false</code>
+     *         if it was skipped.
+     */
+    protected abstract boolean process(RecordReader reader, Graph graph,
+            Value value);
+
+    /**
+     * Writes the records buffered by {@link #process(RecordReader, Graph, Value)}
+     * , if any.
+     * <p>
+     * It is called before each transaction commits, so loaders can write the
+     * records of a whole batch at once. By default, it does nothing.
+     * 
+     * @param graph
+     *            {@link Graph} of the working {@link Session}.
+     * @param value
+     *            {@link Value} instance to be reused.
+     * @return The number of written records.
+     */
+    protected long flush(Graph graph, Value value) {
+        return 0;
+    }
+
+    /**
+     * Gets the number of records buffered by the calling thread which have
+     * not been written yet (see {@link #flush(Graph, Value)}).
+     * <p>
+     * They are not recorded as committed in the {@link LoadJournal}. By
+     * default, <code>0</code>.
+     * 
+     * @return The number of buffered records.
+     */
+    protected int getBufferedCount() {
+        return 0;
+    }
+
+    /**
+     * Restores the state of the loader for an input which is resumed.
+     * <p>
+     * By default, it does nothing.
+     * 
+     * @param j
+     *            {@link LoadJournal} instance.
+     * @param name
+     *            Journal name of the input.
+     * @throws DexUtilsException
+     *             if the journal cannot be read.
+     */
+    protected void restore(LoadJournal j, String name)
+            throws DexUtilsException {
+    }
+
+    /**
+     * Makes the external keys registered so far durable by themselves, if
+     * the loader can, before a checkpoint is recorded in the
+     * {@link LoadJournal}.
+     * <p>
+     * By default, it returns <code>false</code>, so the keys are recorded in
+     * the journal and restored from it.
+     * 
+     * @return <code>true</code> if the keys do not need to be recorded in the
+     *         journal.
+     * @throws DexUtilsException
+     *             if the keys cannot be written.
+     */
+    protected boolean sync() throws DexUtilsException {
+        return false;
+    }
+
+    /**
+     * Unregisters the external keys of the calling thread whose objects were
+     * dropped (see {@link #journalKey(String, long)}).
+     * <p>
+     * By default, it does nothing.
+     * 
+     * @param keys
+     *            External keys registered since the last checkpoint.
+     * @param oids
+     *            OIDs of the external keys.
+     */
+    protected void unregister(List<String> keys, List<Long> oids) {
+    }
+
+    /**
+     * Records an external key registered by the calling thread, so it is
+     * restored if the load is resumed (see {@link #restore(LoadJournal, String)}
+     * ).
+     * <p>
+     * It does nothing if there is no {@link LoadJournal}.
+     * 
+     * @param key
+     *            External key.
+     * @param oid
+     *            The OID.
+     */
+    protected void journalKey(String key, long oid) {
+        Checkpoint cp = checkpoint.get();
+        if (cp != null) {
+            cp.keys.add(key);
+            cp.oids.add(oid);
+        }
+    }
+
+    /**
+     * Records a numeric external key registered by the calling thread (see
+     * {@link #journalKey(String, long)}).
+     * 
+     * @param key
+     *            External key.
+     * @param oid
+     *            The OID.
+     */
+    protected void journalKey(long key, long oid) {
+        if (checkpoint.get() != null) {
+            journalKey(Long.toString(key), oid);
+        }
+    }
+
+    /**
+     * Records the committed records in the {@link LoadJournal}.
+     * 
+     * @param cp
+     *            {@link Checkpoint} of the calling thread, or
+     *            <code>null</code>.
+     * @param records
+     *            Number of committed records by this load.
+     */
+    private void checkpoint(Checkpoint cp, long records) {
+        if (cp != null) {
+            if (sync()) {
+                cp.keys.clear();
+                cp.oids.clear();
+            }
+            journal.checkpoint(cp.name, cp.skipped + records, cp.keys, cp.oids);
+            cp.keys.clear();
+            cp.oids.clear();
+        }
+    }
+
+    /**
+     * Discards the external keys registered since the last checkpoint, as
+     * their objects were dropped.
+     * 
+     * @param cp
+     *            {@link Checkpoint} of the calling thread, or
+     *            <code>null</code>.
+     */
+    private void discard(Checkpoint cp) {
+        if (cp != null) {
+            unregister(cp.keys, cp.oids);
+            cp.keys.clear();
+            cp.oids.clear();
+        }
+    }
+
+    /**
+     * Journal state of an input being loaded.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class Checkpoint {
+
+        /**
+         * Journal name of the input.
+         */
+        private String name;
+
+        /**
+         * Number of records skipped because they were already committed.
+         */
+        private long skipped;
+
+        /**
+         * External keys registered since the last checkpoint.
+         */
+        private List<String> keys = new ArrayList<String>();
+
+        /**
+         * OIDs of the external keys.
+         */
+        private List<Long> oids = new ArrayList<Long>();
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param name
+         *            Journal name of the input.
+         * @param skipped
+         *            Number of skipped records.
+         */
+        public Checkpoint(String name, long skipped) {
+            this.name = name;
+            this.skipped = skipped;
+        }
+    }
+
+    /**
+     * Resolves a Dex type identifier.
+     * 
+     * @param type
+     *            Node or edge type name.
+     * @return The Dex type identifier.
+     * @throws DexUtilsException
+     *             if the type does not exist.
+     */
+    protected int resolveType(String type) throws DexUtilsException {
+        int id = dbConf.getTypeIdentifier(type);
+        if (id == Type.InvalidType) {
+            String msg = new String("Type '" + type + "' does not exist in "
+                    + dbConf.getAlias());
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        return id;
+    }
+
+    /**
+     * Resolves a Dex attribute identifier.
+     * 
+     * @param type
+     *            Node or edge type name.
+     * @param name
+     *            Attribute name.
+     * @return The Dex attribute identifier.
+     * @throws DexUtilsException
+     *             if the attribute does not exist.
+     */
+    protected int resolveAttribute(String type, String name)
+            throws DexUtilsException {
+        int id = dbConf.getAttributeIdentifier(type, name);
+        if (id == Attribute.InvalidAttribute) {
+            String msg = new String("Attribute '" + type + "." + name
+                    + "' does not exist in " + dbConf.getAlias());
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+        return id;
+    }
+
+    /**
+     * Resolves the attribute identifiers and data types for the given
+     * attribute names.
+     * <p>
+     * If indexes are deferred, indexed and unique attributes are turned into
+     * basic ones (see {@link #setDeferIndexes(boolean)}).
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @param type
+     *            Node or edge type name.
+     * @param names
+     *            Attribute names by field position. A <code>null</code> name
+     *            means the field is ignored.
+     * @param attrs
+     *            Output attribute identifiers by field position (
+     *            {@link Attribute#InvalidAttribute} for ignored fields).
+     * @param dataTypes
+     *            Output attribute data types by field position.
+     * @throws DexUtilsException
+     *             if any attribute does not exist or its data type is not
+     *             supported.
+     */
+    protected void resolveAttributes(Graph graph, String type, String[] names,
+            int[] attrs, DataType[] dataTypes) throws DexUtilsException {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                attrs[i] = Attribute.InvalidAttribute;
+                continue;
+            }
+            attrs[i] = resolveAttribute(type, names[i]);
+            Attribute adata = graph.getAttribute(attrs[i]);
+            dataTypes[i] = adata.getDataType();
+            if (dataTypes[i] == DataType.Text) {
+                String msg = new String("Text attribute '" + type + "."
+                        + names[i] + "' cannot be loaded");
+                log.error(msg);
+                throw new DexUtilsException(msg);
+            }
+            if (deferIndexes && adata.getKind() != AttributeKind.Basic
+                    && !deferred.containsKey(attrs[i])) {
+                deferred.put(attrs[i], adata.getKind());
+                graph.indexAttribute(attrs[i], AttributeKind.Basic);
+                log.debug("Index of '" + type + "." + names[i]
+                        + "' was deferred");
+            }
+        }
+    }
+
+    /**
+     * Sets the given field of the current record into the given {@link Value}.
+     * 
+     * @param reader
+     *            {@link RecordReader} instance.
+     * @param i
+     *            Field position.
+     * @param dt
+     *            Attribute {@link DataType}.
+     * @param value
+     *            {@link Value} instance to be set.
+     * @return The given {@link Value} instance.
+     */
+    protected static Value toValue(RecordReader reader, int i, DataType dt,
+            Value value) {
+        if (reader.isNull(i)) {
+            return value.setNull();
+        }
+        switch (dt) {
+        case Boolean:
+            return value.setBoolean(reader.getBoolean(i));
+        case Integer:
+            return value.setInteger(reader.getInt(i));
+        case Long:
+            return value.setLong(reader.getLong(i));
+        case Double:
+            return value.setDouble(reader.getDouble(i));
+        case Timestamp:
+            return value.setTimestamp(reader.getLong(i));
+        case OID:
+            return value.setOID(reader.getLong(i));
+        default:
+            return value.setString(reader.getString(i));
+        }
+    }
+
+    /**
+     * Sets the attributes of the given object from the current record.
+     * <p>
+     * Empty fields and fields not mapped to an attribute are ignored.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @param oid
+     *            Object identifier.
+     * @param reader
+     *            {@link RecordReader} instance.
+     * @param attrs
+     *            Attribute identifiers by field position.
+     * @param dataTypes
+     *            Attribute data types by field position.
+     * @param value
+     *            {@link Value} instance to be reused.
+     */
+    protected static void setAttributes(Graph graph, long oid,
+            RecordReader reader, int[] attrs, DataType[] dataTypes, Value value) {
+        for (int i = 0; i < attrs.length; i++) {
+            if (attrs[i] != Attribute.InvalidAttribute && !reader.isNull(i)) {
+                graph.setAttribute(oid, attrs[i],
+                        toValue(reader, i, dataTypes[i], value));
+            }
+        }
+    }
+
+    /**
+     * Buffers the attributes of the given object from the current record.
+     * <p>
+     * They are written along with the rest of the batch before the
+     * transaction commits, attribute by attribute, so it is faster than
+     * {@link #setAttributes(Graph, long, RecordReader, int[], DataType[], Value)}
+     * . Empty fields and fields not mapped to an attribute are ignored.
+     * <p>
+     * The same attribute identifiers and data types must be given for all the
+     * records of a load.
+     * 
+     * @param oid
+     *            Object identifier.
+     * @param reader
+     *            {@link RecordReader} instance.
+     * @param attrs
+     *            Attribute identifiers by field position.
+     * @param dataTypes
+     *            Attribute data types by field position.
+     */
+    protected void bufferAttributes(long oid, RecordReader reader,
+            int[] attrs, DataType[] dataTypes) {
+        readAttributes(reader, attrs, dataTypes);
+        bufferAttributes(oid);
+    }
+
+    /**
+     * Parses the attributes of the current record, which are buffered for
+     * an object by the next call to {@link #bufferAttributes(long)}.
+     * <p>
+     * Loaders call it before creating the object, so the object is not
+     * created if a field cannot be parsed.
+     * 
+     * @param reader
+     *            {@link RecordReader} instance.
+     * @param attrs
+     *            Attribute identifiers by field position.
+     * @param dataTypes
+     *            Attribute data types by field position.
+     */
+    protected void readAttributes(RecordReader reader, int[] attrs,
+            DataType[] dataTypes) {
+        AttributeBuffer buffer = attributes.get();
+        if (buffer == null) {
+            buffer = new AttributeBuffer(attrs, dataTypes);
+            attributes.set(buffer);
+        }
+        buffer.read(reader);
+    }
+
+    /**
+     * Buffers the attributes parsed by the last call to
+     * {@link #readAttributes(RecordReader, int[], DataType[])} for the given
+     * object.
+     * 
+     * @param oid
+     *            Object identifier.
+     */
+    protected void bufferAttributes(long oid) {
+        attributes.get().add(oid);
+    }
+
+    /**
+     * Writes the attributes buffered by the calling thread, if any.
+     * <p>
+     * If they cannot be written, the buffered objects are dropped, so they
+     * are neither committed with missing attributes nor checkpointed.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @param value
+     *            {@link Value} instance to be reused.
+     * @throws DexUtilsException
+     *             if the attributes cannot be written.
+     */
+    private void writeAttributes(Graph graph, Value value)
+            throws DexUtilsException {
+        AttributeBuffer buffer = attributes.get();
+        if (buffer != null && buffer.size() > 0) {
+            try {
+                buffer.write(graph, value);
+            } catch (DexUtilsException e) {
+                buffer.drop(graph);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Gets the OID for the key in the given field of the current record.
+     * 
+     * @param index
+     *            {@link OIDIndex} instance.
+     * @param reader
+     *            {@link RecordReader} instance.
+     * @param i
+     *            Field position.
+     * @return The OID or {@link Objects#InvalidOID} if the key does not exist.
+     */
+    protected static long lookup(OIDIndex index, RecordReader reader, int i) {
+        if (reader.isNull(i)) {
+            return Objects.InvalidOID;
+        }
+        return index.isNumeric() ? index.get(reader.getLong(i)) : index
+                .get(reader.getString(i));
+    }
+
+    /**
+     * Closes the given {@link RecordReader} quietly.
+     * 
+     * @param reader
+     *            {@link RecordReader} instance. It may be <code>null</code>.
+     */
+    protected static void close(RecordReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.warn("Cannot close record reader", e);
+            }
+        }
+    }
+}
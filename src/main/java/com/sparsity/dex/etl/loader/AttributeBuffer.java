@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Columnar buffer of attribute values to be written in batches.
+ * <p>
+ * The fields of each added record are parsed into a primitive array per
+ * attribute (<code>int</code>, <code>long</code>, <code>double</code>,
+ * <code>boolean</code> or {@link String} values depending on its
+ * {@link DataType}). When the buffer is written (see
+ * {@link #write(Graph, Value)}), the values are set attribute by attribute
+ * reusing a single {@link Value}, so Dex updates the data of one attribute
+ * at a time and no object is allocated per value, except for {@link String}
+ * values, which are kept as read.
+ * <p>
+ * If a value cannot be set, for instance, a duplicated value of a unique
+ * attribute, the buffer is kept, so the buffered objects can be dropped (see
+ * {@link #drop(Graph)}) instead of being committed with missing attributes.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class AttributeBuffer {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(AttributeBuffer.class);
+
+    /**
+     * Initial number of records.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Buffered values of an attribute.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class Column {
+
+        /**
+         * Field position.
+         */
+        private int field;
+
+        /**
+         * Attribute identifier.
+         */
+        private int attr;
+
+        /**
+         * Attribute data type.
+         */
+        private DataType dataType;
+
+        /**
+         * Whether each record has a value or not.
+         */
+        private boolean[] present;
+
+        /**
+         * {@link DataType#Integer} values.
+         */
+        private int[] ints = null;
+
+        /**
+         * {@link DataType#Long}, {@link DataType#Timestamp} and
+         * {@link DataType#OID} values.
+         */
+        private long[] longs = null;
+
+        /**
+         * {@link DataType#Double} values.
+         */
+        private double[] doubles = null;
+
+        /**
+         * {@link DataType#Boolean} values.
+         */
+        private boolean[] booleans = null;
+
+        /**
+         * {@link DataType#String} values.
+         */
+        private String[] strings = null;
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param field
+         *            Field position.
+         * @param attr
+         *            Attribute identifier.
+         * @param dataType
+         *            Attribute data type.
+         * @param capacity
+         *            Initial number of records.
+         */
+        Column(int field, int attr, DataType dataType, int capacity) {
+            this.field = field;
+            this.attr = attr;
+            this.dataType = dataType;
+            resize(capacity);
+        }
+
+        /**
+         * Resizes the arrays, keeping their values.
+         * 
+         * @param capacity
+         *            New number of records.
+         */
+        void resize(int capacity) {
+            present = (present == null) ? new boolean[capacity] : Arrays
+                    .copyOf(present, capacity);
+            switch (dataType) {
+            case Boolean:
+                booleans = (booleans == null) ? new boolean[capacity] : Arrays
+                        .copyOf(booleans, capacity);
+                break;
+            case Integer:
+                ints = (ints == null) ? new int[capacity] : Arrays.copyOf(
+                        ints, capacity);
+                break;
+            case Long:
+            case Timestamp:
+            case OID:
+                longs = (longs == null) ? new long[capacity] : Arrays.copyOf(
+                        longs, capacity);
+                break;
+            case Double:
+                doubles = (doubles == null) ? new double[capacity] : Arrays
+                        .copyOf(doubles, capacity);
+                break;
+            default:
+                strings = (strings == null) ? new String[capacity] : Arrays
+                        .copyOf(strings, capacity);
+            }
+        }
+
+        /**
+         * Parses the field of the current record of the given
+         * {@link RecordReader}.
+         * 
+         * @param row
+         *            Buffer position of the record.
+         * @param reader
+         *            {@link RecordReader} instance.
+         */
+        void read(int row, RecordReader reader) {
+            if (reader.isNull(field)) {
+                present[row] = false;
+                if (strings != null) {
+                    strings[row] = null;
+                }
+                return;
+            }
+            switch (dataType) {
+            case Boolean:
+                booleans[row] = reader.getBoolean(field);
+                break;
+            case Integer:
+                ints[row] = reader.getInt(field);
+                break;
+            case Long:
+            case Timestamp:
+            case OID:
+                longs[row] = reader.getLong(field);
+                break;
+            case Double:
+                doubles[row] = reader.getDouble(field);
+                break;
+            default:
+                strings[row] = reader.getString(field);
+            }
+            present[row] = true;
+        }
+
+        /**
+         * Sets the buffered values.
+         * 
+         * @param graph
+         *            {@link Graph} instance.
+         * @param oids
+         *            Object identifiers by buffer position.
+         * @param records
+         *            Record numbers by buffer position.
+         * @param size
+         *            Number of buffered records.
+         * @param value
+         *            {@link Value} instance to be reused.
+         * @return The number of set values.
+         * @throws DexUtilsException
+         *             if a value cannot be set.
+         */
+        long write(Graph graph, long[] oids, long[] records, int size,
+                Value value) throws DexUtilsException {
+            long count = 0;
+            for (int row = 0; row < size; row++) {
+                if (!present[row]) {
+                    continue;
+                }
+                switch (dataType) {
+                case Boolean:
+                    value.setBoolean(booleans[row]);
+                    break;
+                case Integer:
+                    value.setInteger(ints[row]);
+                    break;
+                case Long:
+                    value.setLong(longs[row]);
+                    break;
+                case Timestamp:
+                    value.setTimestamp(longs[row]);
+                    break;
+                case OID:
+                    value.setOID(longs[row]);
+                    break;
+                case Double:
+                    value.setDouble(doubles[row]);
+                    break;
+                default:
+                    value.setString(strings[row]);
+                }
+                try {
+                    graph.setAttribute(oids[row], attr, value);
+                } catch (RuntimeException e) {
+                    String msg = new String("Cannot set attribute " + attr
+                            + " at record " + records[row]);
+                    log.error(msg, e);
+                    throw new DexUtilsException(msg, e);
+                }
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Releases the buffered {@link String} values.
+         * 
+         * @param size
+         *            Number of buffered records.
+         */
+        void clear(int size) {
+            if (strings != null) {
+                Arrays.fill(strings, 0, size, null);
+            }
+        }
+    }
+
+    /**
+     * Buffered attributes.
+     */
+    private Column[] columns;
+
+    /**
+     * Object identifiers by buffer position.
+     */
+    private long[] oids;
+
+    /**
+     * Record numbers by buffer position.
+     */
+    private long[] records;
+
+    /**
+     * Number of buffered records.
+     */
+    private int size = 0;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param attrs
+     *            Attribute identifiers by field position (
+     *            {@link Attribute#InvalidAttribute} for ignored fields).
+     * @param dataTypes
+     *            Attribute data types by field position.
+     */
+    public AttributeBuffer(int[] attrs, DataType[] dataTypes) {
+        List<Column> list = new ArrayList<Column>();
+        for (int i = 0; i < attrs.length; i++) {
+            if (attrs[i] != Attribute.InvalidAttribute) {
+                list.add(new Column(i, attrs[i], dataTypes[i],
+                        INITIAL_CAPACITY));
+            }
+        }
+        columns = list.toArray(new Column[list.size()]);
+        oids = new long[columns.length == 0 ? 0 : INITIAL_CAPACITY];
+        records = new long[oids.length];
+    }
+
+    /**
+     * Gets the number of buffered records.
+     * 
+     * @return The number of buffered records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the attributes of the given object from the current record.
+     * <p>
+     * Empty fields are ignored. If a field cannot be parsed, the record is
+     * not added.
+     * 
+     * @param oid
+     *            Object identifier.
+     * @param reader
+     *            {@link RecordReader} instance.
+     */
+    public void add(long oid, RecordReader reader) {
+        read(reader);
+        add(oid);
+    }
+
+    /**
+     * Parses the attributes of the current record, without adding them yet
+     * (see {@link #add(long)}).
+     * <p>
+     * It allows to check all the fields of a record before its object is
+     * created. If a field cannot be parsed, the buffer is not changed.
+     * 
+     * @param reader
+     *            {@link RecordReader} instance.
+     */
+    public void read(RecordReader reader) {
+        if (columns.length == 0) {
+            return;
+        }
+        if (size == oids.length) {
+            int capacity = oids.length * 2;
+            oids = Arrays.copyOf(oids, capacity);
+            records = Arrays.copyOf(records, capacity);
+            for (Column column : columns) {
+                column.resize(capacity);
+            }
+        }
+        for (Column column : columns) {
+            column.read(size, reader);
+        }
+        records[size] = reader.getRecordNumber();
+    }
+
+    /**
+     * Adds the attributes parsed by the last call to
+     * {@link #read(RecordReader)} for the given object.
+     * 
+     * @param oid
+     *            Object identifier.
+     */
+    public void add(long oid) {
+        if (columns.length > 0) {
+            oids[size++] = oid;
+        }
+    }
+
+    /**
+     * Writes the buffered values into the given {@link Graph}, attribute by
+     * attribute, and clears the buffer.
+     * <p>
+     * If a value cannot be set, the buffer is not cleared and the values of
+     * the previous attributes are already set.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @param value
+     *            {@link Value} instance to be reused.
+     * @return The number of set values.
+     * @throws DexUtilsException
+     *             if a value cannot be set. The message has its record
+     *             number.
+     */
+    public long write(Graph graph, Value value) throws DexUtilsException {
+        long count = 0;
+        for (Column column : columns) {
+            count += column.write(graph, oids, records, size, value);
+        }
+        clear();
+        return count;
+    }
+
+    /**
+     * Drops the buffered objects from the given {@link Graph} and clears the
+     * buffer.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     */
+    public void drop(Graph graph) {
+        for (int row = 0; row < size; row++) {
+            graph.drop(oids[row]);
+        }
+        clear();
+    }
+
+    /**
+     * Discards the buffered records.
+     */
+    public void clear() {
+        for (Column column : columns) {
+            column.clear(size);
+        }
+        size = 0;
+    }
+}
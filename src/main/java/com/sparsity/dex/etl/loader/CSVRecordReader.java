@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming CSV {@link RecordReader}.
+ * <p>
+ * Records are read one at a time from the given {@link Reader}, so the memory
+ * footprint does not depend on the size of the input. Fields may be quoted
+ * with <code>'"'</code>, in which case they may contain the separator, line
+ * breaks and escaped quotes (<code>""</code>).
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class CSVRecordReader implements RecordReader {
+
+    /**
+     * Quote character.
+     */
+    private static final char QUOTE = '"';
+
+    /**
+     * Input {@link Reader}.
+     */
+    private Reader in;
+
+    /**
+     * Field separator.
+     */
+    private char separator;
+
+    /**
+     * Input buffer.
+     */
+    private char[] buf = new char[64 * 1024];
+
+    /**
+     * Position of the next char to be read from {@link #buf}.
+     */
+    private int pos = 0;
+
+    /**
+     * Number of valid chars in {@link #buf}.
+     */
+    private int len = 0;
+
+    /**
+     * Fields of the current record.
+     */
+    private String[] fields = new String[16];
+
+    /**
+     * Number of fields of the current record.
+     */
+    private int count = 0;
+
+    /**
+     * Number of records read so far.
+     */
+    private long records = 0;
+
+    /**
+     * Field builder.
+     */
+    private StringBuilder field = new StringBuilder();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param in
+     *            Input {@link Reader}.
+     * @param separator
+     *            Field separator.
+     */
+    public CSVRecordReader(Reader in, char separator) {
+        if (separator == QUOTE || separator == '\n' || separator == '\r') {
+            throw new IllegalArgumentException("Invalid separator '"
+                    + separator + "'.");
+        }
+        this.in = in;
+        this.separator = separator;
+    }
+
+    /**
+     * Reads the next char.
+     * 
+     * @return The next char or <code>-1</code> at the end of the input.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private int read() throws IOException {
+        if (pos == len) {
+            len = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Adds the current field to the current record.
+     */
+    private void addField() {
+        if (count == fields.length) {
+            String[] aux = new String[fields.length * 2];
+            System.arraycopy(fields, 0, aux, 0, count);
+            fields = aux;
+        }
+        fields[count++] = field.toString();
+        field.setLength(0);
+    }
+
+    public boolean next() throws IOException {
+        count = 0;
+        field.setLength(0);
+        int c = read();
+        // Skip blank lines
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return false;
+        }
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field at record "
+                            + (records + 1));
+                } else if (c == QUOTE) {
+                    c = read();
+                    if (c == QUOTE) {
+                        field.append(QUOTE);
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == separator) {
+                addField();
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                addField();
+                break;
+            } else if (c == QUOTE && field.length() == 0) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+        records++;
+        return true;
+    }
+
+    public int getFieldCount() {
+        return count;
+    }
+
+    public long getRecordNumber() {
+        return records;
+    }
+
+    public boolean isNull(int i) {
+        return i >= count || fields[i].length() == 0;
+    }
+
+    public String getString(int i) {
+        return (i < count) ? fields[i] : null;
+    }
+
+    public int getInt(int i) {
+        return Integer.parseInt(getString(i).trim());
+    }
+
+    public long getLong(int i) {
+        return Long.parseLong(getString(i).trim());
+    }
+
+    public double getDouble(int i) {
+        return Double.parseDouble(getString(i).trim());
+    }
+
+    public boolean getBoolean(int i) {
+        String s = getString(i).trim();
+        return s.equalsIgnoreCase("true") || s.equals("1");
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
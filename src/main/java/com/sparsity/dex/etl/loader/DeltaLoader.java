@@ -0,0 +1,606 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Applies change sets to the nodes of an existing database.
+ * <p>
+ * Nodes are identified by a key attribute, which must be indexed or unique
+ * (see {@link #setKey(String)}). Each record is an upsert, that is, the node
+ * is created if its key does not exist or updated otherwise, unless the
+ * operation field (see {@link #setOperationColumn(int)}) says it is a
+ * deletion (<code>D</code> or <code>delete</code>, case insensitive). When
+ * a node is updated, empty fields are ignored and just the attributes whose
+ * value changes are written.
+ * <p>
+ * Records are buffered and applied once per batch (see
+ * {@link #setBatchSize(int)}): the distinct keys of the batch are resolved
+ * in order and then the records are applied in their input order. Records
+ * with the same key must be loaded by a single thread, so do not use it with
+ * a {@link ParallelLoader} unless keys do not repeat across the input.
+ * <p>
+ * If the nodes were loaded with an {@link OIDIndex}, for instance, a
+ * persistent {@link MappedOIDIndex} reused by later edge loads, it must be
+ * given (see {@link #setIndex(OIDIndex)}) so it is kept up to date.
+ * <p>
+ * For instance, a CSV file like this:
+ * 
+ * <pre>
+ * U,1,John,36
+ * D,2,,
+ * I,6,Laura,22
+ * </pre>
+ * 
+ * could be applied as follows:
+ * 
+ * <pre>
+ * DeltaLoader loader = new DeltaLoader(dbConf);
+ * loader.setFile(new File(&quot;people-delta.csv&quot;));
+ * loader.setType(&quot;person&quot;);
+ * loader.setColumns(null, &quot;id&quot;, &quot;name&quot;, &quot;age&quot;);
+ * loader.setKey(&quot;id&quot;);
+ * loader.setOperationColumn(0);
+ * loader.load();
+ * </pre>
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class DeltaLoader extends AbstractLoader {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(DeltaLoader.class);
+
+    /**
+     * Node type name.
+     */
+    private String type = null;
+
+    /**
+     * Attribute names by field position.
+     */
+    private String[] columns = new String[0];
+
+    /**
+     * Key attribute name.
+     */
+    private String key = null;
+
+    /**
+     * Position of the operation field.
+     */
+    private int opColumn = -1;
+
+    /**
+     * {@link OIDIndex} to be kept up to date (it may be <code>null</code>).
+     */
+    private OIDIndex index = null;
+
+    /**
+     * Node type identifier.
+     */
+    private int typeId;
+
+    /**
+     * Attribute identifiers by field position.
+     */
+    private int[] attrs;
+
+    /**
+     * Attribute data types by field position.
+     */
+    private DataType[] dataTypes;
+
+    /**
+     * Position of the key field.
+     */
+    private int keyColumn;
+
+    /**
+     * Records buffered by each thread.
+     */
+    private ThreadLocal<List<String[]>> buffers = new ThreadLocal<List<String[]>>() {
+        @Override
+        protected List<String[]> initialValue() {
+            return new ArrayList<String[]>();
+        }
+    };
+
+    /**
+     * Number of created nodes.
+     */
+    private AtomicLong inserted = new AtomicLong();
+
+    /**
+     * Number of updated nodes.
+     */
+    private AtomicLong updated = new AtomicLong();
+
+    /**
+     * Number of deleted nodes.
+     */
+    private AtomicLong deleted = new AtomicLong();
+
+    /**
+     * Number of records which did not change anything.
+     */
+    private AtomicLong unchanged = new AtomicLong();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    public DeltaLoader(DatabaseConfiguration dbConf) {
+        super(dbConf);
+    }
+
+    /**
+     * Gets the node type name.
+     * 
+     * @return The node type name.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the node type name.
+     * 
+     * @param t
+     *            The node type name.
+     */
+    public void setType(String t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Type cannot be null.");
+        }
+        type = t;
+        invalidate();
+    }
+
+    /**
+     * Gets the attribute names by field position.
+     * 
+     * @return The attribute names by field position.
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Sets the attribute names by field position.
+     * 
+     * @param names
+     *            The attribute names by field position. A <code>null</code>
+     *            name means the field is ignored. It must include the key
+     *            attribute.
+     */
+    public void setColumns(String... names) {
+        columns = names.clone();
+        invalidate();
+    }
+
+    /**
+     * Gets the key attribute name.
+     * 
+     * @return The key attribute name.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Sets the key attribute name.
+     * 
+     * @param name
+     *            The key attribute name. It must be an indexed or unique
+     *            attribute of the node type.
+     */
+    public void setKey(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Key cannot be null.");
+        }
+        key = name;
+        invalidate();
+    }
+
+    /**
+     * Gets the position of the operation field.
+     * 
+     * @return The position of the operation field or <code>-1</code>.
+     */
+    public int getOperationColumn() {
+        return opColumn;
+    }
+
+    /**
+     * Sets the position of the operation field. By default, <code>-1</code>,
+     * that is, all the records are upserts.
+     * 
+     * @param column
+     *            Position of the operation field or <code>-1</code>.
+     */
+    public void setOperationColumn(int column) {
+        opColumn = column;
+    }
+
+    /**
+     * Gets the {@link OIDIndex} to be kept up to date.
+     * 
+     * @return The {@link OIDIndex} to be kept up to date or
+     *         <code>null</code>.
+     */
+    public OIDIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the {@link OIDIndex} to be kept up to date: the keys of the
+     * created nodes are added and those of the deleted nodes are removed.
+     * <p>
+     * It must be keyed by the key attribute (see {@link #setKey(String)}).
+     * Updates are synchronized on the index.
+     * 
+     * @param idx
+     *            {@link OIDIndex} to be kept up to date or <code>null</code>
+     *            to disable it.
+     */
+    public void setIndex(OIDIndex idx) {
+        index = idx;
+    }
+
+    /**
+     * Gets the number of nodes created so far.
+     * 
+     * @return The number of created nodes.
+     */
+    public long getInsertedCount() {
+        return inserted.get();
+    }
+
+    /**
+     * Gets the number of nodes updated so far.
+     * 
+     * @return The number of updated nodes.
+     */
+    public long getUpdatedCount() {
+        return updated.get();
+    }
+
+    /**
+     * Gets the number of nodes deleted so far.
+     * 
+     * @return The number of deleted nodes.
+     */
+    public long getDeletedCount() {
+        return deleted.get();
+    }
+
+    /**
+     * Gets the number of records which did not change anything so far.
+     * <p>
+     * These are updates with the current values and deletions of missing
+     * keys.
+     * 
+     * @return The number of unchanged records.
+     */
+    public long getUnchangedCount() {
+        return unchanged.get();
+    }
+
+    @Override
+    protected void prepare(Graph graph) throws DexUtilsException {
+        if (type == null || key == null) {
+            throw new DexUtilsException("No node type or key has been set.");
+        }
+        if (isDeferIndexes()) {
+            throw new DexUtilsException(
+                    "Indexes cannot be deferred when applying changes.");
+        }
+        typeId = resolveType(type);
+        attrs = new int[columns.length];
+        dataTypes = new DataType[columns.length];
+        resolveAttributes(graph, type, columns, attrs, dataTypes);
+        keyColumn = -1;
+        for (int i = 0; i < columns.length; i++) {
+            if (key.equals(columns[i])) {
+                keyColumn = i;
+            }
+        }
+        if (keyColumn < 0
+                || graph.getAttribute(attrs[keyColumn]).getKind() == AttributeKind.Basic) {
+            String msg = new String("Key '" + type + "." + key
+                    + "' must be an indexed or unique attribute in the columns");
+            log.error(msg);
+            throw new DexUtilsException(msg);
+        }
+    }
+
+    @Override
+    protected boolean process(RecordReader reader, Graph graph, Value value) {
+        if (reader.isNull(keyColumn)) {
+            throw new DexUtilsException("Missing key '" + key + "'.");
+        }
+        String[] fields = new String[Math.max(reader.getFieldCount(),
+                columns.length)];
+        for (int i = 0; i < fields.length; i++) {
+            if (!reader.isNull(i)) {
+                fields[i] = reader.getString(i);
+            }
+        }
+        buffers.get().add(fields);
+        return false;
+    }
+
+    @Override
+    protected long flush(Graph graph, Value value) {
+        List<String[]> buffer = buffers.get();
+        if (buffer.isEmpty()) {
+            return 0;
+        }
+        // Resolve the distinct keys in order
+        FieldReader record = new FieldReader();
+        String[] recordKeys = new String[buffer.size()];
+        TreeSet<String> keys = new TreeSet<String>();
+        for (int i = 0; i < recordKeys.length; i++) {
+            recordKeys[i] = getKey(buffer.get(i));
+            keys.add(recordKeys[i]);
+        }
+        Map<String, Long> oids = new HashMap<String, Long>(keys.size() * 2);
+        for (String k : keys) {
+            record.set(new String[] { k });
+            oids.put(k, graph.findObject(attrs[keyColumn], toValue(
+                    record, 0, dataTypes[keyColumn], value)));
+        }
+
+        long count = 0;
+        Value current = new Value();
+        for (int i = 0; i < recordKeys.length; i++) {
+            String[] fields = buffer.get(i);
+            record.set(fields);
+            String k = recordKeys[i];
+            long oid = oids.get(k);
+            if (isDelete(fields)) {
+                if (oid == Objects.InvalidOID) {
+                    unchanged.incrementAndGet();
+                    continue;
+                }
+                graph.drop(oid);
+                oids.put(k, Objects.InvalidOID);
+                if (index != null) {
+                    synchronized (index) {
+                        index.remove(k);
+                    }
+                }
+                deleted.incrementAndGet();
+            } else if (oid == Objects.InvalidOID) {
+                oid = graph.newNode(typeId);
+                setAttributes(graph, oid, record, attrs, dataTypes, value);
+                oids.put(k, oid);
+                if (index != null) {
+                    synchronized (index) {
+                        index.put(k, oid);
+                    }
+                }
+                inserted.incrementAndGet();
+            } else if (update(graph, oid, record, value, current)) {
+                updated.incrementAndGet();
+            } else {
+                unchanged.incrementAndGet();
+                continue;
+            }
+            count++;
+        }
+        buffer.clear();
+        return count;
+    }
+
+    @Override
+    protected int getBufferedCount() {
+        return buffers.get().size();
+    }
+
+    /**
+     * Gets the key of the given record as its value is compared, so the
+     * different texts of a numeric key, such as <code>" 1"</code> and
+     * <code>"01"</code>, are the same key.
+     * 
+     * @param fields
+     *            Record fields.
+     * @return The key.
+     */
+    private String getKey(String[] fields) {
+        String k = fields[keyColumn];
+        if (dataTypes[keyColumn] == DataType.Long) {
+            return Long.toString(Long.parseLong(k.trim()));
+        } else if (dataTypes[keyColumn] == DataType.Integer) {
+            return Integer.toString(Integer.parseInt(k.trim()));
+        }
+        return k;
+    }
+
+    /**
+     * Checks if the given record is a deletion.
+     * 
+     * @param fields
+     *            Record fields.
+     * @return <code>true</code> if it is a deletion.
+     */
+    private boolean isDelete(String[] fields) {
+        if (opColumn < 0 || opColumn >= fields.length
+                || fields[opColumn] == null) {
+            return false;
+        }
+        String op = fields[opColumn].trim();
+        return op.equalsIgnoreCase("D") || op.equalsIgnoreCase("delete");
+    }
+
+    /**
+     * Writes the attributes of the given node which change.
+     * 
+     * @param graph
+     *            {@link Graph} instance.
+     * @param oid
+     *            Node identifier.
+     * @param record
+     *            Current record.
+     * @param value
+     *            {@link Value} instance to be reused.
+     * @param current
+     *            {@link Value} instance to be reused.
+     * @return <code>true</code> if any attribute was written.
+     */
+    private boolean update(Graph graph, long oid, RecordReader record,
+            Value value, Value current) {
+        boolean changed = false;
+        for (int i = 0; i < attrs.length; i++) {
+            if (attrs[i] == Attribute.InvalidAttribute || i == keyColumn
+                    || record.isNull(i)) {
+                continue;
+            }
+            toValue(record, i, dataTypes[i], value);
+            graph.getAttribute(oid, attrs[i], current);
+            if (current.isNull() || !current.equals(value)) {
+                graph.setAttribute(oid, attrs[i], value);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Loads all the records from the given {@link RecordReader}.
+     * <p>
+     * If it fails, the buffered records of the current batch are discarded.
+     * 
+     * @param reader
+     *            {@link RecordReader} instance.
+     * @return The number of created, updated or deleted nodes.
+     * @throws DexUtilsException
+     *             if there is an error.
+     */
+    @Override
+    public long load(RecordReader reader) throws DexUtilsException {
+        try {
+            return super.load(reader);
+        } finally {
+            buffers.get().clear();
+        }
+    }
+
+    @Override
+    public long load() throws DexUtilsException {
+        long count = super.load();
+        log.info(getDatabaseConfiguration().getAlias() + "." + type + ": "
+                + inserted + " inserted, " + updated + " updated, " + deleted
+                + " deleted, " + unchanged + " unchanged");
+        return count;
+    }
+
+    /**
+     * {@link RecordReader} over the fields of a buffered record.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class FieldReader implements RecordReader {
+
+        /**
+         * Fields of the current record.
+         */
+        private String[] fields = new String[0];
+
+        /**
+         * Number of records set so far.
+         */
+        private long records = 0;
+
+        /**
+         * Sets the current record.
+         * 
+         * @param f
+         *            Record fields, <code>null</code> for null fields.
+         */
+        public void set(String[] f) {
+            fields = f;
+            records++;
+        }
+
+        public boolean next() {
+            return false;
+        }
+
+        public int getFieldCount() {
+            return fields.length;
+        }
+
+        public long getRecordNumber() {
+            return records;
+        }
+
+        public boolean isNull(int i) {
+            return i >= fields.length || fields[i] == null
+                    || fields[i].length() == 0;
+        }
+
+        public String getString(int i) {
+            return (i < fields.length) ? fields[i] : null;
+        }
+
+        public int getInt(int i) {
+            return Integer.parseInt(getString(i).trim());
+        }
+
+        public long getLong(int i) {
+            return Long.parseLong(getString(i).trim());
+        }
+
+        public double getDouble(int i) {
+            return Double.parseDouble(getString(i).trim());
+        }
+
+        public boolean getBoolean(int i) {
+            String s = getString(i).trim();
+            return s.equalsIgnoreCase("true") || s.equals("1");
+        }
+
+        public void close() {
+        }
+    }
+}
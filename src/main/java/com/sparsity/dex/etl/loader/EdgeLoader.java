@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Loads edges.
+ * <p>
+ * Each record creates an edge of the given type. The tail and head nodes are
+ * given by external keys in two fields of the record, which are resolved
+ * through {@link OIDIndex} instances filled when the nodes were loaded (see
+ * {@link NodeLoader#setIndex(OIDIndex, int)}). Therefore, the Dex database is
+ * not queried to find the endpoints. The rest of the fields are mapped to
+ * attributes of the edge type by their position (see
+ * {@link #setColumns(String...)}).
+ * <p>
+ * For instance, a CSV file like this:
+ * 
+ * <pre>
+ * 1,2,2012
+ * 2,3,2010
+ * </pre>
+ * 
+ * could be loaded as follows:
+ * 
+ * <pre>
+ * EdgeLoader loader = new EdgeLoader(dbConf);
+ * loader.setFile(new File(&quot;knows.csv&quot;));
+ * loader.setType(&quot;knows&quot;);
+ * loader.setTail(people, 0);
+ * loader.setHead(people, 1);
+ * loader.setColumns(null, null, &quot;since&quot;);
+ * loader.load();
+ * </pre>
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class EdgeLoader extends AbstractLoader {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(EdgeLoader.class);
+
+    /**
+     * Edge type name.
+     */
+    private String type = null;
+
+    /**
+     * Attribute names by field position.
+     */
+    private String[] columns = new String[0];
+
+    /**
+     * {@link OIDIndex} for the tail nodes.
+     */
+    private OIDIndex tailIndex = null;
+
+    /**
+     * Position of the tail external key field.
+     */
+    private int tailColumn = -1;
+
+    /**
+     * {@link OIDIndex} for the head nodes.
+     */
+    private OIDIndex headIndex = null;
+
+    /**
+     * Position of the head external key field.
+     */
+    private int headColumn = -1;
+
+    /**
+     * Whether records with unknown endpoints are skipped or not.
+     */
+    private boolean skipMissing = false;
+
+    /**
+     * Edge type identifier.
+     */
+    private int typeId;
+
+    /**
+     * Attribute identifiers by field position.
+     */
+    private int[] attrs;
+
+    /**
+     * Attribute data types by field position.
+     */
+    private DataType[] dataTypes;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    public EdgeLoader(DatabaseConfiguration dbConf) {
+        super(dbConf);
+    }
+
+    /**
+     * Gets the edge type name.
+     * 
+     * @return The edge type name.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the edge type name.
+     * 
+     * @param t
+     *            The edge type name.
+     */
+    public void setType(String t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Type cannot be null.");
+        }
+        type = t;
+        invalidate();
+    }
+
+    /**
+     * Gets the attribute names by field position.
+     * 
+     * @return The attribute names by field position.
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Sets the attribute names by field position.
+     * 
+     * @param names
+     *            The attribute names by field position. A <code>null</code>
+     *            name means the field is ignored, as it should be for the tail
+     *            and head fields.
+     */
+    public void setColumns(String... names) {
+        columns = names.clone();
+        invalidate();
+    }
+
+    /**
+     * Sets how to resolve the tail nodes.
+     * 
+     * @param idx
+     *            {@link OIDIndex} for the tail nodes.
+     * @param column
+     *            Position of the tail external key field.
+     */
+    public void setTail(OIDIndex idx, int column) {
+        if (idx == null || column < 0) {
+            throw new IllegalArgumentException(
+                    "Tail index cannot be null and column cannot be negative.");
+        }
+        tailIndex = idx;
+        tailColumn = column;
+    }
+
+    /**
+     * Sets how to resolve the head nodes.
+     * 
+     * @param idx
+     *            {@link OIDIndex} for the head nodes.
+     * @param column
+     *            Position of the head external key field.
+     */
+    public void setHead(OIDIndex idx, int column) {
+        if (idx == null || column < 0) {
+            throw new IllegalArgumentException(
+                    "Head index cannot be null and column cannot be negative.");
+        }
+        headIndex = idx;
+        headColumn = column;
+    }
+
+    /**
+     * Gets whether records with unknown endpoints are skipped or not.
+     * 
+     * @return <code>true</code> if they are skipped, <code>false</code> if
+     *         they make the load fail.
+     */
+    public boolean isSkipMissing() {
+        return skipMissing;
+    }
+
+    /**
+     * Sets whether records with unknown endpoints are skipped or not. By
+     * default, <code>false</code>.
+     * 
+     * @param skip
+     *            <code>true</code> to skip them, <code>false</code> to make the
+     *            load fail.
+     */
+    public void setSkipMissing(boolean skip) {
+        skipMissing = skip;
+    }
+
+    @Override
+    protected void prepare(Graph graph) throws DexUtilsException {
+        if (type == null) {
+            throw new DexUtilsException("No edge type has been set.");
+        }
+        if (tailIndex == null || headIndex == null) {
+            throw new DexUtilsException(
+                    "Tail and head indexes have not been set.");
+        }
+        typeId = resolveType(type);
+        attrs = new int[columns.length];
+        dataTypes = new DataType[columns.length];
+        resolveAttributes(graph, type, columns, attrs, dataTypes);
+    }
+
+    @Override
+    protected boolean process(RecordReader reader, Graph graph, Value value) {
+        long tail = lookup(tailIndex, reader, tailColumn);
+        long head = lookup(headIndex, reader, headColumn);
+        if (tail == Objects.InvalidOID || head == Objects.InvalidOID) {
+            String msg = new String("Unknown "
+                    + (tail == Objects.InvalidOID ? "tail '"
+                            + reader.getString(tailColumn) : "head '"
+                            + reader.getString(headColumn)) + "' at record "
+                    + reader.getRecordNumber());
+            if (skipMissing) {
+                log.debug(msg);
+                return false;
+            }
+            throw new DexUtilsException(msg);
+        }
+        // Parsed first, so an invalid record does not leave a partial edge
+        readAttributes(reader, attrs, dataTypes);
+        long oid = graph.newEdge(typeId, tail, head);
+        bufferAttributes(oid);
+        return true;
+    }
+}
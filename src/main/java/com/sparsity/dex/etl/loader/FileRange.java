@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A byte range of a file.
+ * <p>
+ * Files are split into ranges at line boundaries, so each range holds complete
+ * lines and can be read independently from the others.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+class FileRange {
+
+    /**
+     * File.
+     */
+    private File file;
+
+    /**
+     * First byte (inclusive).
+     */
+    private long start;
+
+    /**
+     * Last byte (exclusive).
+     */
+    private long end;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param file
+     *            File.
+     * @param start
+     *            First byte (inclusive).
+     * @param end
+     *            Last byte (exclusive).
+     */
+    FileRange(File file, long start, long end) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Gets the file.
+     * 
+     * @return The file.
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the first byte (inclusive).
+     * 
+     * @return The first byte (inclusive).
+     */
+    long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the last byte (exclusive).
+     * 
+     * @return The last byte (exclusive).
+     */
+    long getEnd() {
+        return end;
+    }
+
+    /**
+     * Gets the length in bytes.
+     * 
+     * @return The length in bytes.
+     */
+    long getLength() {
+        return end - start;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + "[" + start + "," + end + ")";
+    }
+
+    /**
+     * Opens an {@link InputStream} to read the range.
+     * 
+     * @return An {@link InputStream} to read the range.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    InputStream openStream() throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        raf.seek(start);
+        return new InputStream() {
+
+            private long remaining = getLength();
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = raf.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = raf.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                raf.close();
+            }
+        };
+    }
+
+    /**
+     * Splits the given file into ranges at line boundaries.
+     * <p>
+     * Records spanning several lines (for instance, CSV quoted fields with
+     * line breaks) are not supported.
+     * 
+     * @param file
+     *            File.
+     * @param parts
+     *            Expected number of ranges. It may return fewer ranges for
+     *            small files.
+     * @return The ranges, in file order.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    static List<FileRange> split(File file, int parts) throws IOException {
+        List<FileRange> ranges = new ArrayList<FileRange>(parts);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            long length = ch.size();
+            long size = Math.max(1, length / Math.max(1, parts));
+            ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+            long start = 0;
+            while (start < length) {
+                long end = nextLine(ch, buf, Math.min(length, start + size));
+                ranges.add(new FileRange(file, start, end));
+                start = end;
+            }
+        } finally {
+            raf.close();
+        }
+        return ranges;
+    }
+
+    /**
+     * Gets the position of the first line starting at or after the given
+     * position.
+     * 
+     * @param ch
+     *            {@link FileChannel} instance.
+     * @param buf
+     *            Buffer to be used.
+     * @param pos
+     *            Position.
+     * @return The position of the first line starting at or after the given
+     *         position, or the size of the file if there is none.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private static long nextLine(FileChannel ch, ByteBuffer buf, long pos)
+            throws IOException {
+        long length = ch.size();
+        if (pos == 0 || pos >= length) {
+            return Math.min(pos, length);
+        }
+        // The range ends just after the line break found at or after pos - 1
+        long p = pos - 1;
+        while (p < length) {
+            buf.clear();
+            int n = ch.read(buf, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import com.sparsity.dex.gdb.Objects;
+
+/**
+ * In-memory {@link OIDIndex} implementation.
+ * <p>
+ * It is an open addressing hash table (linear probing) backed by primitive
+ * arrays, so no object is allocated per entry for numeric keys. As OIDs are
+ * never {@link Objects#InvalidOID}, that value marks the empty slots.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class HeapOIDIndex implements OIDIndex {
+
+    /**
+     * Maximum ratio of used slots before growing.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Whether the keys are numeric or not.
+     */
+    private boolean numeric;
+
+    /**
+     * Numeric keys (just if {@link #numeric}).
+     */
+    private long[] longKeys = null;
+
+    /**
+     * {@link String} keys (just if not {@link #numeric}).
+     */
+    private String[] stringKeys = null;
+
+    /**
+     * OIDs.
+     */
+    private long[] oids;
+
+    /**
+     * Number of keys.
+     */
+    private int size = 0;
+
+    /**
+     * Number of keys which makes the table grow.
+     */
+    private int threshold;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param numeric
+     *            <code>true</code> if keys are <code>long</code> values,
+     *            <code>false</code> if keys are {@link String}s.
+     */
+    public HeapOIDIndex(boolean numeric) {
+        this(numeric, 1024);
+    }
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param numeric
+     *            <code>true</code> if keys are <code>long</code> values,
+     *            <code>false</code> if keys are {@link String}s.
+     * @param expected
+     *            Expected number of keys.
+     */
+    public HeapOIDIndex(boolean numeric, int expected) {
+        if (expected < 0) {
+            throw new IllegalArgumentException(
+                    "Expected number of keys cannot be negative.");
+        }
+        this.numeric = numeric;
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Allocates the arrays for the given capacity.
+     * 
+     * @param capacity
+     *            Number of slots. It must be a power of two.
+     */
+    private void allocate(int capacity) {
+        if (numeric) {
+            longKeys = new long[capacity];
+        } else {
+            stringKeys = new String[capacity];
+        }
+        oids = new long[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Hash function for <code>long</code> keys.
+     * 
+     * @param key
+     *            Key.
+     * @return The hash.
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Hash function for {@link String} keys.
+     * 
+     * @param key
+     *            Key.
+     * @return The hash.
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Gets the slot of the given key.
+     * 
+     * @param key
+     *            Key.
+     * @return The slot where the key is or where it should be inserted.
+     */
+    private int slot(long key) {
+        int mask = oids.length - 1;
+        int i = hash(key) & mask;
+        while (oids[i] != Objects.InvalidOID && longKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the slot of the given key.
+     * 
+     * @param key
+     *            Key.
+     * @return The slot where the key is or where it should be inserted.
+     */
+    private int slot(String key) {
+        int mask = oids.length - 1;
+        int i = hash(key) & mask;
+        while (oids[i] != Objects.InvalidOID && !stringKeys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Doubles the capacity.
+     */
+    private void grow() {
+        long[] oldLongKeys = longKeys;
+        String[] oldStringKeys = stringKeys;
+        long[] oldOids = oids;
+        allocate(oldOids.length << 1);
+        for (int i = 0; i < oldOids.length; i++) {
+            if (oldOids[i] != Objects.InvalidOID) {
+                int j;
+                if (numeric) {
+                    j = slot(oldLongKeys[i]);
+                    longKeys[j] = oldLongKeys[i];
+                } else {
+                    j = slot(oldStringKeys[i]);
+                    stringKeys[j] = oldStringKeys[i];
+                }
+                oids[j] = oldOids[i];
+            }
+        }
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    public long get(long key) {
+        if (!numeric) {
+            return get(Long.toString(key));
+        }
+        return oids[slot(key)];
+    }
+
+    public long get(String key) {
+        if (numeric) {
+            return get(Long.parseLong(key.trim()));
+        }
+        return oids[slot(key)];
+    }
+
+    public void put(long key, long oid) {
+        if (!numeric) {
+            put(Long.toString(key), oid);
+            return;
+        }
+        if (oid == Objects.InvalidOID) {
+            throw new IllegalArgumentException("Invalid OID.");
+        }
+        int i = slot(key);
+        if (oids[i] == Objects.InvalidOID) {
+            if (size >= threshold) {
+                grow();
+                i = slot(key);
+            }
+            longKeys[i] = key;
+            size++;
+        }
+        oids[i] = oid;
+    }
+
+    public void put(String key, long oid) {
+        if (numeric) {
+            put(Long.parseLong(key.trim()), oid);
+            return;
+        }
+        if (oid == Objects.InvalidOID) {
+            throw new IllegalArgumentException("Invalid OID.");
+        }
+        int i = slot(key);
+        if (oids[i] == Objects.InvalidOID) {
+            if (size >= threshold) {
+                grow();
+                i = slot(key);
+            }
+            stringKeys[i] = key;
+            size++;
+        }
+        oids[i] = oid;
+    }
+
+    public long remove(long key) {
+        if (!numeric) {
+            return remove(Long.toString(key));
+        }
+        return clear(slot(key));
+    }
+
+    public long remove(String key) {
+        if (numeric) {
+            return remove(Long.parseLong(key.trim()));
+        }
+        return clear(slot(key));
+    }
+
+    /**
+     * Empties the given slot. The following keys of the cluster are moved
+     * back when their probe sequence crosses it, so they are still found.
+     * 
+     * @param i
+     *            Slot.
+     * @return The OID of the slot or {@link Objects#InvalidOID} if it was
+     *         empty.
+     */
+    private long clear(int i) {
+        long oid = oids[i];
+        if (oid == Objects.InvalidOID) {
+            return oid;
+        }
+        int mask = oids.length - 1;
+        for (int j = (i + 1) & mask; oids[j] != Objects.InvalidOID; j = (j + 1)
+                & mask) {
+            int home = (numeric ? hash(longKeys[j]) : hash(stringKeys[j]))
+                    & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                if (numeric) {
+                    longKeys[i] = longKeys[j];
+                } else {
+                    stringKeys[i] = stringKeys[j];
+                }
+                oids[i] = oids[j];
+                i = j;
+            }
+        }
+        if (!numeric) {
+            stringKeys[i] = null;
+        }
+        oids[i] = Objects.InvalidOID;
+        size--;
+        return oid;
+    }
+
+    public long size() {
+        return size;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming JSON Lines {@link RecordReader}.
+ * <p>
+ * Each record is a JSON object, usually one per line. Fields are the values
+ * of the given keys of the top-level object, by position, so the same
+ * loaders work for CSV and JSON Lines inputs. For instance, with the keys
+ * <code>"id", "name"</code> the record
+ * 
+ * <pre>
+ * {"name": "John", "id": 1, "tags": ["a", "b"]}
+ * </pre>
+ * 
+ * has <code>1</code> as field 0 and <code>John</code> as field 1. Other keys
+ * are skipped without being stored. Nested objects and arrays of the given
+ * keys are returned as raw JSON text. Missing keys and <code>null</code>
+ * values are null fields.
+ * <p>
+ * Objects are parsed one at a time from the given {@link Reader}, so the
+ * memory footprint does not depend on the size of the input.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class JSONLRecordReader implements RecordReader {
+
+    /**
+     * Input {@link Reader}.
+     */
+    private Reader in;
+
+    /**
+     * Field positions by key.
+     */
+    private Map<String, Integer> positions = new HashMap<String, Integer>();
+
+    /**
+     * Input buffer.
+     */
+    private char[] buf = new char[64 * 1024];
+
+    /**
+     * Position of the next char to be read from {@link #buf}.
+     */
+    private int pos = 0;
+
+    /**
+     * Number of valid chars in {@link #buf}.
+     */
+    private int len = 0;
+
+    /**
+     * Fields of the current record (<code>null</code> for null fields).
+     */
+    private String[] fields;
+
+    /**
+     * Number of records read so far.
+     */
+    private long records = 0;
+
+    /**
+     * Token builder.
+     */
+    private StringBuilder token = new StringBuilder();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param in
+     *            Input {@link Reader}.
+     * @param keys
+     *            Keys of the fields by position.
+     */
+    public JSONLRecordReader(Reader in, String... keys) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) {
+                throw new IllegalArgumentException("Key cannot be null.");
+            }
+            positions.put(keys[i], i);
+        }
+        this.in = in;
+        this.fields = new String[keys.length];
+    }
+
+    /**
+     * Reads the next char.
+     * 
+     * @return The next char or <code>-1</code> at the end of the input.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private int read() throws IOException {
+        if (pos == len) {
+            len = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+
+    /**
+     * Reads the next char which is not a whitespace.
+     * 
+     * @return The next non-whitespace char or <code>-1</code> at the end of
+     *         the input.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private int readToken() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            c = read();
+        }
+        return c;
+    }
+
+    /**
+     * Creates the exception for malformed input.
+     * 
+     * @param reason
+     *            What was wrong.
+     * @return The exception.
+     */
+    private IOException malformed(String reason) {
+        return new IOException("Malformed JSON at record " + (records + 1)
+                + ": " + reason);
+    }
+
+    public boolean next() throws IOException {
+        Arrays.fill(fields, null);
+        int c = readToken();
+        if (c == -1) {
+            return false;
+        }
+        if (c != '{') {
+            throw malformed("object expected");
+        }
+        c = readToken();
+        if (c != '}') {
+            while (true) {
+                if (c != '"') {
+                    throw malformed("key expected");
+                }
+                token.setLength(0);
+                readString(token);
+                Integer i = positions.get(token.toString());
+                if (readToken() != ':') {
+                    throw malformed("':' expected");
+                }
+                token.setLength(0);
+                boolean isNull = readValue(readToken(), i == null ? null
+                        : token);
+                if (i != null && !isNull) {
+                    fields[i] = token.toString();
+                }
+                c = readToken();
+                if (c == '}') {
+                    break;
+                } else if (c != ',') {
+                    throw malformed("',' or '}' expected");
+                }
+                c = readToken();
+            }
+        }
+        records++;
+        return true;
+    }
+
+    /**
+     * Reads a string, once its opening quote has been read.
+     * 
+     * @param out
+     *            Where to append the unescaped string, or <code>null</code>
+     *            to skip it.
+     * @throws IOException
+     *             if there is an I/O error or the string is malformed.
+     */
+    private void readString(StringBuilder out) throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw malformed("unterminated string");
+            } else if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                c = read();
+                switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    break;
+                case 'b':
+                    c = '\b';
+                    break;
+                case 'f':
+                    c = '\f';
+                    break;
+                case 'n':
+                    c = '\n';
+                    break;
+                case 'r':
+                    c = '\r';
+                    break;
+                case 't':
+                    c = '\t';
+                    break;
+                case 'u':
+                    c = 0;
+                    for (int k = 0; k < 4; k++) {
+                        int d = Character.digit(read(), 16);
+                        if (d < 0) {
+                            throw malformed("invalid unicode escape");
+                        }
+                        c = c * 16 + d;
+                    }
+                    break;
+                default:
+                    throw malformed("invalid escape");
+                }
+            }
+            if (out != null) {
+                out.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Reads a value.
+     * <p>
+     * Strings are unescaped, while numbers, literals, objects and arrays are
+     * appended as they are.
+     * 
+     * @param c
+     *            First char of the value.
+     * @param out
+     *            Where to append the value, or <code>null</code> to skip it.
+     * @return <code>true</code> if the value is <code>null</code>.
+     * @throws IOException
+     *             if there is an I/O error or the value is malformed.
+     */
+    private boolean readValue(int c, StringBuilder out) throws IOException {
+        if (c == '"') {
+            readString(out);
+            return false;
+        } else if (c == '{' || c == '[') {
+            readNested(c, out);
+            return false;
+        }
+        int start = (out == null) ? 0 : out.length();
+        while (c != -1 && c != ',' && c != '}' && c != ']' && c != ' '
+                && c != '\t' && c != '\n' && c != '\r') {
+            if (out != null) {
+                out.append((char) c);
+            }
+            c = read();
+        }
+        if (c == -1) {
+            throw malformed("unexpected end of input");
+        }
+        // Give back the delimiter
+        pos--;
+        if (out == null) {
+            return false;
+        }
+        if (out.length() == start) {
+            throw malformed("value expected");
+        }
+        return out.length() - start == 4 && out.indexOf("null", start) == start;
+    }
+
+    /**
+     * Reads a nested object or array, once its opening char has been read.
+     * 
+     * @param open
+     *            Opening char.
+     * @param out
+     *            Where to append the raw JSON text, or <code>null</code> to
+     *            skip it.
+     * @throws IOException
+     *             if there is an I/O error or the value is malformed.
+     */
+    private void readNested(int open, StringBuilder out) throws IOException {
+        int depth = 1;
+        if (out != null) {
+            out.append((char) open);
+        }
+        while (depth > 0) {
+            int c = read();
+            if (c == -1) {
+                throw malformed("unterminated " + (open == '{' ? "object"
+                        : "array"));
+            }
+            if (out != null) {
+                out.append((char) c);
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == '"') {
+                // Skip the string, keeping it escaped
+                while ((c = read()) != '"') {
+                    if (c == -1) {
+                        throw malformed("unterminated string");
+                    }
+                    if (out != null) {
+                        out.append((char) c);
+                    }
+                    if (c == '\\') {
+                        c = read();
+                        if (out != null && c != -1) {
+                            out.append((char) c);
+                        }
+                    }
+                }
+                if (out != null) {
+                    out.append('"');
+                }
+            }
+        }
+    }
+
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    public long getRecordNumber() {
+        return records;
+    }
+
+    public boolean isNull(int i) {
+        return i >= fields.length || fields[i] == null
+                || fields[i].length() == 0;
+    }
+
+    public String getString(int i) {
+        return (i < fields.length) ? fields[i] : null;
+    }
+
+    public int getInt(int i) {
+        return Integer.parseInt(getString(i).trim());
+    }
+
+    public long getLong(int i) {
+        return Long.parseLong(getString(i).trim());
+    }
+
+    public double getDouble(int i) {
+        return Double.parseDouble(getString(i).trim());
+    }
+
+    public boolean getBoolean(int i) {
+        String s = getString(i).trim();
+        return s.equalsIgnoreCase("true") || s.equals("1");
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
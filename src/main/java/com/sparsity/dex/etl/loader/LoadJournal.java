@@ -0,0 +1,603 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+
+/**
+ * Progress journal of the loads into a database, to resume them after a
+ * failure.
+ * <p>
+ * It is stored next to the database image, in the
+ * <code>&lt;path&gt;.journal</code> file (see
+ * {@link DatabaseConfiguration#getPath()}). Each time a loader commits a
+ * batch (see {@link AbstractLoader#setJournal(LoadJournal)}), it records the
+ * number of records committed for its input and the external keys
+ * registered into its {@link OIDIndex}, if any and not a persistent
+ * {@link MappedOIDIndex}, which is flushed instead. When the same input is
+ * loaded again, the committed records are skipped and the {@link OIDIndex}
+ * is restored.
+ * <p>
+ * Entries refer to their input by a number, recorded along with the name of
+ * the input the first time it is checkpointed, so they are short. All the
+ * ranges of a file are restored at once, with a single scan of the journal.
+ * <p>
+ * Inputs are identified by their absolute path and byte range, so a
+ * {@link ParallelLoader} must resume with the same parallelism. Also, as Dex
+ * commits and the journal are not atomic, the last batch may be loaded twice
+ * if the process dies right after committing it.
+ * <p>
+ * Once all the loads have finished, the journal must be deleted (see
+ * {@link #delete()}), otherwise the same inputs would be skipped next time.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class LoadJournal {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(LoadJournal.class);
+
+    /**
+     * Journal file extension.
+     */
+    public static final String EXTENSION = ".journal";
+
+    /**
+     * Input entry tag.
+     */
+    private static final char INPUT = 'I';
+
+    /**
+     * Key entry tag.
+     */
+    private static final char KEY = 'K';
+
+    /**
+     * Checkpoint entry tag.
+     */
+    private static final char CHECKPOINT = 'C';
+
+    /**
+     * Completion entry tag.
+     */
+    private static final char DONE = 'D';
+
+    /**
+     * Journal file.
+     */
+    private File file;
+
+    /**
+     * Output file, or <code>null</code> if it has not been opened yet.
+     */
+    private RandomAccessFile out = null;
+
+    /**
+     * Committed records by input.
+     */
+    private Map<String, Long> checkpoints = new HashMap<String, Long>();
+
+    /**
+     * Completed inputs.
+     */
+    private Set<String> completed = new HashSet<String>();
+
+    /**
+     * Input names by number.
+     */
+    private List<String> names = new ArrayList<String>();
+
+    /**
+     * Input numbers by name.
+     */
+    private Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    /**
+     * {@link OIDIndex} each input has been restored into.
+     */
+    private Map<String, OIDIndex> restored = new HashMap<String, OIDIndex>();
+
+    /**
+     * Creates a new instance and reads the existing journal, if any.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     * @throws DexUtilsException
+     *             if the journal cannot be read.
+     */
+    public LoadJournal(DatabaseConfiguration dbConf) throws DexUtilsException {
+        this(new File(dbConf.getPath() + EXTENSION));
+    }
+
+    /**
+     * Creates a new instance and reads the existing journal, if any.
+     * 
+     * @param file
+     *            Journal file.
+     * @throws DexUtilsException
+     *             if the journal cannot be read.
+     */
+    public LoadJournal(File file) throws DexUtilsException {
+        this.file = file;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            long valid = scan(new EntryHandler() {
+                public void entry(char tag, String[] fields) {
+                    if (tag == INPUT) {
+                        ids.put(fields[2], names.size());
+                        names.add(fields[2]);
+                    } else if (tag == CHECKPOINT) {
+                        checkpoints.put(getName(fields[1]), Long
+                                .parseLong(fields[2]));
+                    } else if (tag == DONE) {
+                        completed.add(getName(fields[1]));
+                    }
+                }
+            });
+            // Drop a partial entry written by a crashed process
+            if (valid < file.length()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(valid);
+                } finally {
+                    raf.close();
+                }
+            }
+        } catch (IOException e) {
+            String msg = new String("Cannot read " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } catch (NumberFormatException e) {
+            String msg = new String("Invalid entry in "
+                    + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } catch (IndexOutOfBoundsException e) {
+            String msg = new String("Invalid entry in "
+                    + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+        log.info("Journal " + file.getAbsolutePath() + " has "
+                + checkpoints.size() + " checkpoints");
+    }
+
+    /**
+     * Gets the journal file.
+     * 
+     * @return The journal file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the journal name of the given input.
+     * 
+     * @param range
+     *            {@link FileRange} instance.
+     * @return The journal name of the input.
+     */
+    static String getName(FileRange range) {
+        return range.getFile().getAbsolutePath() + "@" + range.getStart()
+                + "-" + range.getEnd();
+    }
+
+    /**
+     * Gets the name of the input with the given number.
+     * 
+     * @param id
+     *            Input number, as written in the entries.
+     * @return The input name.
+     */
+    private String getName(String id) {
+        return names.get(Integer.parseInt(id));
+    }
+
+    /**
+     * Gets the number of the given input, recording it first if it has none
+     * yet.
+     * 
+     * @param name
+     *            Journal name of the input.
+     * @param entries
+     *            Entries to be written, where the input entry is appended
+     *            if it is new.
+     * @return The input number.
+     */
+    private int getId(String name, StringBuilder entries) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            entries.append(INPUT).append('\t').append(id).append('\t');
+            entries.append(escape(name)).append('\n');
+        }
+        return id;
+    }
+
+    /**
+     * Records the number of the given input once its entry has been written
+     * (see {@link #getId(String, StringBuilder)}).
+     * 
+     * @param name
+     *            Journal name of the input.
+     */
+    private void register(String name) {
+        if (!ids.containsKey(name)) {
+            ids.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    /**
+     * Gets the number of committed records of the given input.
+     * 
+     * @param range
+     *            {@link FileRange} instance.
+     * @return The number of committed records.
+     * @throws DexUtilsException
+     *             if the journal has checkpoints for overlapping ranges of
+     *             the same file, that is, the file was split differently.
+     */
+    synchronized long getCheckpoint(FileRange range) throws DexUtilsException {
+        String name = getName(range);
+        Long records = checkpoints.get(name);
+        if (records != null) {
+            return records;
+        }
+        // Ranges of a different split overlap the recorded ones
+        String prefix = range.getFile().getAbsolutePath() + "@";
+        for (String input : checkpoints.keySet()) {
+            int sep = input.lastIndexOf('@');
+            if (sep + 1 != prefix.length() || !input.startsWith(prefix)) {
+                continue;
+            }
+            int dash = input.indexOf('-', sep);
+            long start = Long.parseLong(input.substring(sep + 1, dash));
+            long end = Long.parseLong(input.substring(dash + 1));
+            if (start < range.getEnd() && range.getStart() < end) {
+                String msg = new String("Journal " + file.getAbsolutePath()
+                        + " has other ranges of " + range.getFile()
+                        + ", resume it with the same parallelism");
+                log.error(msg);
+                throw new DexUtilsException(msg);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if the given input has been completely loaded.
+     * 
+     * @param name
+     *            Journal name of the input.
+     * @return <code>true</code> if it has been completely loaded.
+     */
+    synchronized boolean isComplete(String name) {
+        return completed.contains(name);
+    }
+
+    /**
+     * Records a checkpoint.
+     * <p>
+     * It must be called once the records have been committed.
+     * 
+     * @param name
+     *            Journal name of the input.
+     * @param records
+     *            Total number of committed records of the input.
+     * @param keys
+     *            External keys registered since the last checkpoint.
+     * @param oids
+     *            OIDs of the external keys.
+     * @throws DexUtilsException
+     *             if the journal cannot be written.
+     */
+    synchronized void checkpoint(String name, long records, List<String> keys,
+            List<Long> oids) throws DexUtilsException {
+        StringBuilder sb = new StringBuilder();
+        int input = getId(name, sb);
+        for (int i = 0; i < keys.size(); i++) {
+            sb.append(KEY).append('\t').append(input).append('\t');
+            sb.append(escape(keys.get(i))).append('\t').append(oids.get(i));
+            sb.append('\n');
+        }
+        sb.append(CHECKPOINT).append('\t').append(input).append('\t');
+        sb.append(records).append('\n');
+        write(sb);
+        register(name);
+        checkpoints.put(name, records);
+    }
+
+    /**
+     * Records that the given input has been completely loaded.
+     * 
+     * @param name
+     *            Journal name of the input.
+     * @throws DexUtilsException
+     *             if the journal cannot be written.
+     */
+    synchronized void complete(String name) throws DexUtilsException {
+        StringBuilder sb = new StringBuilder();
+        int input = getId(name, sb);
+        sb.append(DONE).append('\t').append(input).append('\n');
+        write(sb);
+        register(name);
+        completed.add(name);
+    }
+
+    /**
+     * Restores the external keys committed for the given input.
+     * <p>
+     * Those of the other ranges of the same file are restored in the same
+     * scan of the journal, so they are not restored again when they are
+     * resumed with the same {@link OIDIndex}.
+     * 
+     * @param name
+     *            Journal name of the input.
+     * @param index
+     *            {@link OIDIndex} to be filled.
+     * @return The number of restored keys.
+     * @throws DexUtilsException
+     *             if the journal cannot be read.
+     */
+    synchronized long replay(String name, final OIDIndex index)
+            throws DexUtilsException {
+        if (!checkpoints.containsKey(name) || restored.get(name) == index) {
+            return 0;
+        }
+        String prefix = name.substring(0, name.lastIndexOf('@') + 1);
+        final Map<String, List<String[]>> pending = new HashMap<String, List<String[]>>();
+        for (String input : checkpoints.keySet()) {
+            if (input.startsWith(prefix)
+                    && input.lastIndexOf('@') + 1 == prefix.length()
+                    && restored.get(input) != index) {
+                pending.put(Integer.toString(ids.get(input)),
+                        new ArrayList<String[]>());
+            }
+        }
+        final long[] count = new long[1];
+        try {
+            scan(new EntryHandler() {
+                public void entry(char tag, String[] fields) {
+                    List<String[]> keys = pending.get(fields[1]);
+                    if (keys == null) {
+                        return;
+                    }
+                    if (tag == KEY) {
+                        keys.add(fields);
+                    } else if (tag == CHECKPOINT) {
+                        // Keys are committed with their checkpoint
+                        for (String[] f : keys) {
+                            long oid = Long.parseLong(f[3]);
+                            if (index.isNumeric()) {
+                                index.put(Long.parseLong(f[2]), oid);
+                            } else {
+                                index.put(f[2], oid);
+                            }
+                        }
+                        count[0] += keys.size();
+                        keys.clear();
+                    }
+                }
+            });
+        } catch (IOException e) {
+            String msg = new String("Cannot read " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } catch (NumberFormatException e) {
+            String msg = new String("Invalid key entry for " + name + " in "
+                    + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+        for (String id : pending.keySet()) {
+            restored.put(getName(id), index);
+        }
+        log.info(count[0] + " keys of " + pending.size()
+                + " inputs restored from " + file.getAbsolutePath());
+        return count[0];
+    }
+
+    /**
+     * Closes the journal file. It is reopened if needed.
+     */
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Cannot close " + file.getAbsolutePath(), e);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the journal file, forgetting all the checkpoints.
+     */
+    public synchronized void delete() {
+        close();
+        if (file.exists() && !file.delete()) {
+            log.warn("Cannot delete " + file.getAbsolutePath());
+        }
+        checkpoints.clear();
+        completed.clear();
+        names.clear();
+        ids.clear();
+        restored.clear();
+    }
+
+    /**
+     * Appends and syncs entries to the journal file.
+     * 
+     * @param entries
+     *            Entries to be written.
+     * @throws DexUtilsException
+     *             if the journal cannot be written.
+     */
+    private void write(CharSequence entries) throws DexUtilsException {
+        try {
+            if (out == null) {
+                out = new RandomAccessFile(file, "rw");
+                out.seek(out.length());
+            }
+            out.write(entries.toString().getBytes("UTF-8"));
+            out.getChannel().force(false);
+        } catch (IOException e) {
+            String msg = new String("Cannot write " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+    }
+
+    /**
+     * Journal entry handler.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private interface EntryHandler {
+
+        /**
+         * Processes an entry.
+         * 
+         * @param tag
+         *            Entry tag.
+         * @param fields
+         *            Unescaped entry fields, including the tag.
+         */
+        void entry(char tag, String[] fields);
+    }
+
+    /**
+     * Reads all the complete entries of the journal file.
+     * 
+     * @param handler
+     *            {@link EntryHandler} instance.
+     * @return The length in bytes of the complete entries.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private long scan(EntryHandler handler) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        long valid = 0;
+        try {
+            StringBuilder line = new StringBuilder();
+            char[] buf = new char[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] != '\n') {
+                        line.append(buf[i]);
+                        continue;
+                    }
+                    String s = line.toString();
+                    valid += s.getBytes("UTF-8").length + 1;
+                    line.setLength(0);
+                    String[] fields = s.split("\t", -1);
+                    for (int j = 0; j < fields.length; j++) {
+                        fields[j] = unescape(fields[j]);
+                    }
+                    if (fields[0].length() == 1) {
+                        handler.entry(fields[0].charAt(0), fields);
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return valid;
+    }
+
+    /**
+     * Escapes tabs, line breaks and backslashes.
+     * 
+     * @param s
+     *            {@link String} to be escaped.
+     * @return The escaped {@link String}.
+     */
+    private static String escape(String s) {
+        if (s.indexOf('\\') < 0 && s.indexOf('\t') < 0 && s.indexOf('\n') < 0
+                && s.indexOf('\r') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reverts {@link #escape(String)}.
+     * 
+     * @param s
+     *            Escaped {@link String}.
+     * @return The original {@link String}.
+     */
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                c = s.charAt(++i);
+                sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r'
+                        : c);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
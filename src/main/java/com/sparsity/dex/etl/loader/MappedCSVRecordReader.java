@@ -0,0 +1,530 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Memory-mapped CSV {@link RecordReader}.
+ * <p>
+ * The file is mapped into memory (see {@link FileChannel#map}) in windows of
+ * up to {@link #DEFAULT_WINDOW_SIZE} bytes, and records are parsed straight
+ * from the mapped bytes. Fields are kept as offsets, so numeric and boolean
+ * fields are parsed without creating any object; a {@link String} is just
+ * created when {@link #getString(int)} is called.
+ * <p>
+ * It follows the same CSV rules as {@link CSVRecordReader}. As it works on
+ * bytes, the charset must encode the separator, quotes and line breaks as
+ * single bytes which do not appear in other characters (for instance,
+ * UTF-8 or ISO-8859-1).
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class MappedCSVRecordReader implements RecordReader {
+
+    /**
+     * Default maximum size of the mapped windows (256 MB).
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * Quote character.
+     */
+    private static final byte QUOTE = '"';
+
+    /**
+     * Powers of ten exactly representable as doubles.
+     */
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10.0;
+        }
+    }
+
+    /**
+     * Input file.
+     */
+    private RandomAccessFile raf;
+
+    /**
+     * Input {@link FileChannel}.
+     */
+    private FileChannel ch;
+
+    /**
+     * Field separator.
+     */
+    private byte separator;
+
+    /**
+     * Charset used to create {@link String}s.
+     */
+    private Charset charset;
+
+    /**
+     * End of the input in the file.
+     */
+    private long end;
+
+    /**
+     * Maximum size of the mapped windows.
+     */
+    private int windowSize;
+
+    /**
+     * Current mapped window.
+     */
+    private MappedByteBuffer buf = null;
+
+    /**
+     * Position of the current window in the file.
+     */
+    private long winStart;
+
+    /**
+     * Position of the next byte to be parsed, relative to the window.
+     */
+    private int pos = 0;
+
+    /**
+     * Field start offsets (relative to the window) of the current record.
+     */
+    private int[] starts = new int[16];
+
+    /**
+     * Field end offsets (relative to the window) of the current record.
+     */
+    private int[] ends = new int[16];
+
+    /**
+     * Whether each field of the current record is quoted.
+     */
+    private boolean[] quoted = new boolean[16];
+
+    /**
+     * Number of fields of the current record.
+     */
+    private int count = 0;
+
+    /**
+     * Number of records read so far.
+     */
+    private long records = 0;
+
+    /**
+     * Scratch buffer to create {@link String}s.
+     */
+    private byte[] bytes = new byte[256];
+
+    /**
+     * Creates a new instance to read a whole file.
+     * 
+     * @param file
+     *            Input file.
+     * @param separator
+     *            Field separator.
+     * @param charset
+     *            Charset of the file.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    public MappedCSVRecordReader(File file, char separator, Charset charset)
+            throws IOException {
+        this(file, 0, file.length(), separator, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a new instance to read a range of a file.
+     * 
+     * @param file
+     *            Input file.
+     * @param start
+     *            Position of the first byte to be read, at a line boundary.
+     * @param end
+     *            Position after the last byte to be read, at a line
+     *            boundary.
+     * @param separator
+     *            Field separator.
+     * @param charset
+     *            Charset of the file.
+     * @param windowSize
+     *            Maximum size of the mapped windows. Records must fit in a
+     *            window.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    public MappedCSVRecordReader(File file, long start, long end,
+            char separator, Charset charset, int windowSize) throws IOException {
+        if (separator == QUOTE || separator == '\n' || separator == '\r'
+                || separator > 0x7F) {
+            throw new IllegalArgumentException("Invalid separator '"
+                    + separator + "'.");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Window size must be positive.");
+        }
+        this.separator = (byte) separator;
+        this.charset = charset;
+        this.end = end;
+        this.windowSize = windowSize;
+        raf = new RandomAccessFile(file, "r");
+        ch = raf.getChannel();
+        map(start);
+    }
+
+    /**
+     * Maps the window starting at the given position.
+     * 
+     * @param start
+     *            Position of the window in the file.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private void map(long start) throws IOException {
+        winStart = start;
+        buf = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(
+                windowSize, end - start));
+        pos = 0;
+    }
+
+    /**
+     * Adds a field to the current record.
+     * 
+     * @param start
+     *            Start offset of the field.
+     * @param stop
+     *            End offset of the field.
+     * @param q
+     *            Whether the field is quoted.
+     */
+    private void addField(int start, int stop, boolean q) {
+        if (count == starts.length) {
+            int n = count * 2;
+            int[] s = new int[n];
+            int[] e = new int[n];
+            boolean[] b = new boolean[n];
+            System.arraycopy(starts, 0, s, 0, count);
+            System.arraycopy(ends, 0, e, 0, count);
+            System.arraycopy(quoted, 0, b, 0, count);
+            starts = s;
+            ends = e;
+            quoted = b;
+        }
+        starts[count] = start;
+        ends[count] = stop;
+        quoted[count] = q;
+        count++;
+    }
+
+    public boolean next() throws IOException {
+        while (true) {
+            int limit = buf.limit();
+            // Skip blank lines
+            while (pos < limit && (buf.get(pos) == '\r' || buf.get(pos) == '\n')) {
+                pos++;
+            }
+            boolean last = winStart + limit >= end;
+            if (pos == limit) {
+                if (last) {
+                    count = 0;
+                    return false;
+                }
+                map(winStart + pos);
+                continue;
+            }
+            if (parse(limit, last)) {
+                records++;
+                return true;
+            }
+            // The record crosses the window end
+            if (pos == 0) {
+                throw new IOException("Record " + (records + 1)
+                        + " does not fit in a window of " + windowSize
+                        + " bytes");
+            }
+            map(winStart + pos);
+        }
+    }
+
+    /**
+     * Parses the record starting at the current position.
+     * 
+     * @param limit
+     *            End of the window.
+     * @param last
+     *            Whether the window reaches the end of the input.
+     * @return <code>true</code> if the record was parsed, <code>false</code>
+     *         if it crosses the end of the window (which is not the last
+     *         one).
+     * @throws IOException
+     *             if there is an unterminated quoted field.
+     */
+    private boolean parse(int limit, boolean last) throws IOException {
+        count = 0;
+        int p = pos;
+        int start = p;
+        boolean q = false;
+        boolean inQuotes = false;
+        while (true) {
+            if (p == limit) {
+                if (!last) {
+                    return false;
+                }
+                if (inQuotes) {
+                    throw new IOException("Unterminated quoted field at record "
+                            + (records + 1));
+                }
+                addField(start, p, q);
+                break;
+            }
+            byte b = buf.get(p);
+            if (inQuotes) {
+                if (b == QUOTE) {
+                    if (p + 1 == limit && !last) {
+                        return false;
+                    }
+                    if (p + 1 < limit && buf.get(p + 1) == QUOTE) {
+                        p++;
+                    } else {
+                        inQuotes = false;
+                    }
+                }
+            } else if (b == separator) {
+                addField(start, p, q);
+                start = p + 1;
+                q = false;
+            } else if (b == '\n' || b == '\r') {
+                addField(start, p, q);
+                break;
+            } else if (b == QUOTE && p == start) {
+                inQuotes = true;
+                q = true;
+            }
+            p++;
+        }
+        pos = p;
+        return true;
+    }
+
+    public int getFieldCount() {
+        return count;
+    }
+
+    public long getRecordNumber() {
+        return records;
+    }
+
+    public boolean isNull(int i) {
+        if (i >= count) {
+            return true;
+        }
+        int n = ends[i] - starts[i];
+        return n == 0 || (quoted[i] && n == 2 && buf.get(starts[i] + 1) == QUOTE);
+    }
+
+    public String getString(int i) {
+        if (i >= count) {
+            return null;
+        }
+        int start = starts[i];
+        int n = ends[i] - start;
+        if (bytes.length < n) {
+            bytes = new byte[Math.max(n, bytes.length * 2)];
+        }
+        if (!quoted[i]) {
+            buf.position(start);
+            buf.get(bytes, 0, n);
+            return new String(bytes, 0, n, charset);
+        }
+        // Unescape the quoted field as CSVRecordReader does
+        int len = 0;
+        boolean inQuotes = false;
+        for (int p = start; p < ends[i]; p++) {
+            byte b = buf.get(p);
+            if (b == QUOTE) {
+                if (inQuotes && p + 1 < ends[i] && buf.get(p + 1) == QUOTE) {
+                    bytes[len++] = QUOTE;
+                    p++;
+                } else if (!inQuotes && p == start) {
+                    inQuotes = true;
+                } else if (inQuotes) {
+                    inQuotes = false;
+                } else {
+                    bytes[len++] = b;
+                }
+            } else {
+                bytes[len++] = b;
+            }
+        }
+        return new String(bytes, 0, len, charset);
+    }
+
+    /**
+     * Gets the start of the given field, skipping leading whitespaces.
+     * 
+     * @param i
+     *            Field position.
+     * @return Start offset of the trimmed field.
+     */
+    private int trimStart(int i) {
+        int p = starts[i];
+        while (p < ends[i] && buf.get(p) <= ' ') {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * Gets the end of the given field, skipping trailing whitespaces.
+     * 
+     * @param i
+     *            Field position.
+     * @return End offset of the trimmed field.
+     */
+    private int trimEnd(int i) {
+        int p = ends[i];
+        while (p > starts[i] && buf.get(p - 1) <= ' ') {
+            p--;
+        }
+        return p;
+    }
+
+    /**
+     * Creates the exception for an invalid number.
+     * 
+     * @param i
+     *            Field position.
+     * @return The exception.
+     */
+    private NumberFormatException invalid(int i) {
+        return new NumberFormatException("For input string: \""
+                + getString(i) + "\"");
+    }
+
+    public int getInt(int i) {
+        long v = getLong(i);
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw invalid(i);
+        }
+        return (int) v;
+    }
+
+    public long getLong(int i) {
+        if (i >= count || quoted[i]) {
+            return Long.parseLong(getString(i).trim());
+        }
+        int p = trimStart(i);
+        int stop = trimEnd(i);
+        boolean negative = false;
+        if (p < stop && (buf.get(p) == '-' || buf.get(p) == '+')) {
+            negative = buf.get(p) == '-';
+            p++;
+        }
+        if (p == stop) {
+            throw invalid(i);
+        }
+        // Accumulated as a negative number to reach Long.MIN_VALUE
+        long v = 0;
+        for (; p < stop; p++) {
+            int d = buf.get(p) - '0';
+            if (d < 0 || d > 9 || v < (Long.MIN_VALUE + d) / 10) {
+                throw invalid(i);
+            }
+            v = v * 10 - d;
+        }
+        if (!negative) {
+            if (v == Long.MIN_VALUE) {
+                throw invalid(i);
+            }
+            v = -v;
+        }
+        return v;
+    }
+
+    public double getDouble(int i) {
+        if (i < count && !quoted[i]) {
+            // Fast path for plain decimals which are exactly computed
+            int p = trimStart(i);
+            int stop = trimEnd(i);
+            boolean negative = false;
+            if (p < stop && (buf.get(p) == '-' || buf.get(p) == '+')) {
+                negative = buf.get(p) == '-';
+                p++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = -1;
+            for (; p < stop; p++) {
+                byte b = buf.get(p);
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                } else {
+                    break;
+                }
+            }
+            if (p == stop && digits > 0 && digits <= 15
+                    && decimals < POW10.length) {
+                double v = (decimals > 0) ? mantissa / POW10[decimals]
+                        : mantissa;
+                return negative ? -v : v;
+            }
+        }
+        return Double.parseDouble(getString(i).trim());
+    }
+
+    public boolean getBoolean(int i) {
+        if (i >= count || quoted[i]) {
+            String s = getString(i).trim();
+            return s.equalsIgnoreCase("true") || s.equals("1");
+        }
+        int p = trimStart(i);
+        int n = trimEnd(i) - p;
+        if (n == 1) {
+            return buf.get(p) == '1';
+        }
+        return n == 4 && (buf.get(p) | 0x20) == 't'
+                && (buf.get(p + 1) | 0x20) == 'r'
+                && (buf.get(p + 2) | 0x20) == 'u'
+                && (buf.get(p + 3) | 0x20) == 'e';
+    }
+
+    /**
+     * Closes the file.
+     * <p>
+     * The mapped memory is released once the reader is garbage collected.
+     */
+    public void close() throws IOException {
+        buf = null;
+        ch.close();
+        raf.close();
+    }
+}
@@ -0,0 +1,970 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Objects;
+
+/**
+ * Memory-mapped {@link OIDIndex} implementation.
+ * <p>
+ * It is an open addressing hash table (linear probing) like
+ * {@link HeapOIDIndex}, but its slots are stored in a file mapped into
+ * memory, so it is not limited by the Java heap and the operating system
+ * pages it in and out as required. Each slot takes 16 bytes for numeric keys
+ * and 24 bytes for {@link String} keys, which are stored once in a separate
+ * <code>&lt;file&gt;.keys</code> file along with their 64-bit hash.
+ * <p>
+ * Indexes are either temporary, deleted when they are closed, or persistent
+ * (see {@link #MappedOIDIndex(DatabaseConfiguration, String, boolean)}), so
+ * a later load can reuse the keys of the nodes loaded before without
+ * rebuilding the index. Whenever the table grows, it is rehashed into a new
+ * file, so giving the expected number of keys saves time and disk space.
+ * <p>
+ * The index file just has a header and the slots are stored in
+ * <code>&lt;file&gt;.&lt;generation&gt;</code> files. A grown table is
+ * written to the file of the next generation, which becomes the current one
+ * in the header once it is complete, so no mapped file is ever replaced.
+ * The files of previous generations are deleted as soon as the operating
+ * system allows it (just once they are unmapped on Windows).
+ * <p>
+ * Instances must be closed (see {@link #close()}). As Java cannot unmap
+ * files, the mapped memory is released once the instance is garbage
+ * collected.
+ * <p>
+ * Lookups can run concurrently, for instance, from the threads of a
+ * {@link ParallelLoader}, but updates must be synchronized externally.
+ * Removals move keys between slots, so lookups must not run concurrently
+ * with them.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class MappedOIDIndex implements OIDIndex {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(MappedOIDIndex.class);
+
+    /**
+     * Index file extension.
+     */
+    public static final String EXTENSION = ".oids";
+
+    /**
+     * Extension of the file of the {@link String} keys, appended to the index
+     * file name.
+     */
+    public static final String KEYS_EXTENSION = ".keys";
+
+    /**
+     * Default expected number of keys.
+     */
+    public static final long DEFAULT_EXPECTED = 1L << 20;
+
+    /**
+     * Maximum ratio of used slots before growing.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * File signature.
+     */
+    private static final long MAGIC = 0x4445584f49445831L;
+
+    /**
+     * Header size in bytes.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Header offset of the numeric flag.
+     */
+    private static final int NUMERIC_OFFSET = 8;
+
+    /**
+     * Header offset of the generation of the table file.
+     */
+    private static final int GENERATION_OFFSET = 16;
+
+    /**
+     * Header offset of the number of keys.
+     */
+    private static final int SIZE_OFFSET = 24;
+
+    /**
+     * Header offset of the used length of the keys file.
+     */
+    private static final int KEYS_OFFSET = 32;
+
+    /**
+     * Log2 of the maximum number of slots per mapped segment.
+     */
+    private static final int SEGMENT_SHIFT = 26;
+
+    /**
+     * Log2 of the size in bytes of the mapped segments of the keys file.
+     */
+    private static final int KEYS_SEGMENT_SHIFT = 26;
+
+    /**
+     * Mapped slots of a table file.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class Table {
+
+        /**
+         * Table file.
+         */
+        private RandomAccessFile raf;
+
+        /**
+         * Mapped segments of slots.
+         */
+        private MappedByteBuffer[] segments;
+
+        /**
+         * Number of slots. It is a power of two.
+         */
+        private long capacity;
+
+        /**
+         * Log2 of the number of slots per segment.
+         */
+        private int shift;
+
+        /**
+         * Slot size in bytes.
+         */
+        private int slotSize;
+
+        /**
+         * Maps the given file.
+         * 
+         * @param f
+         *            Table file.
+         * @param capacity
+         *            Number of slots. It must be a power of two.
+         * @param slotSize
+         *            Slot size in bytes.
+         * @throws IOException
+         *             if there is an I/O error.
+         */
+        Table(File f, long capacity, int slotSize) throws IOException {
+            this.capacity = capacity;
+            this.slotSize = slotSize;
+            shift = Math.min(SEGMENT_SHIFT,
+                    Long.numberOfTrailingZeros(capacity));
+            raf = new RandomAccessFile(f, "rw");
+            FileChannel ch = raf.getChannel();
+            long bytes = (1L << shift) * slotSize;
+            segments = new MappedByteBuffer[(int) (capacity >>> shift)];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = ch.map(FileChannel.MapMode.READ_WRITE, i
+                        * bytes, bytes);
+            }
+        }
+
+        /**
+         * Gets the segment of the given slot.
+         * 
+         * @param slot
+         *            Slot.
+         * @return The segment of the slot.
+         */
+        MappedByteBuffer segment(long slot) {
+            return segments[(int) (slot >>> shift)];
+        }
+
+        /**
+         * Gets the position of the given slot in its segment.
+         * 
+         * @param slot
+         *            Slot.
+         * @return The position of the slot in its segment.
+         */
+        int position(long slot) {
+            return (int) (slot & ((1L << shift) - 1)) * slotSize;
+        }
+
+        /**
+         * Writes the changes to the file.
+         */
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        /**
+         * Closes the file.
+         * 
+         * @throws IOException
+         *             if there is an I/O error.
+         */
+        void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    /**
+     * Index file.
+     */
+    private File file;
+
+    /**
+     * Whether the files are deleted when the index is closed.
+     */
+    private boolean temporary;
+
+    /**
+     * Whether the keys are numeric or not.
+     */
+    private boolean numeric;
+
+    /**
+     * Index file, open while the index is.
+     */
+    private RandomAccessFile headerFile;
+
+    /**
+     * Mapped header of the index file.
+     */
+    private MappedByteBuffer header;
+
+    /**
+     * Generation of the table file.
+     */
+    private long generation = 0;
+
+    /**
+     * Mapped slots. Each one has the OID ({@link Objects#InvalidOID} if it is
+     * empty) and either the numeric key or the hash and the offset of the
+     * {@link String} key.
+     */
+    private Table table;
+
+    /**
+     * Number of keys.
+     */
+    private long size;
+
+    /**
+     * Number of keys which makes the table grow.
+     */
+    private long threshold;
+
+    /**
+     * {@link String} keys file (just if not {@link #numeric}).
+     */
+    private RandomAccessFile keysFile = null;
+
+    /**
+     * Mapped segments of {@link #keysFile}. Those with stored keys are mapped
+     * when the index is opened and the rest as keys are stored. The array is
+     * replaced instead of modified, so lookups read it without locking.
+     */
+    private volatile MappedByteBuffer[] keySegments = new MappedByteBuffer[0];
+
+    /**
+     * Used length of {@link #keysFile}.
+     */
+    private long keysLength = 0;
+
+    /**
+     * Creates a new temporary instance with the default expected number of
+     * keys.
+     * 
+     * @param numeric
+     *            <code>true</code> if keys are <code>long</code> values,
+     *            <code>false</code> if keys are {@link String}s.
+     * @throws DexUtilsException
+     *             if the index file cannot be created.
+     */
+    public MappedOIDIndex(boolean numeric) throws DexUtilsException {
+        this(numeric, DEFAULT_EXPECTED);
+    }
+
+    /**
+     * Creates a new temporary instance.
+     * 
+     * @param numeric
+     *            <code>true</code> if keys are <code>long</code> values,
+     *            <code>false</code> if keys are {@link String}s.
+     * @param expected
+     *            Expected number of keys.
+     * @throws DexUtilsException
+     *             if the index file cannot be created.
+     */
+    public MappedOIDIndex(boolean numeric, long expected)
+            throws DexUtilsException {
+        this(createTempFile(), numeric, expected);
+        temporary = true;
+    }
+
+    /**
+     * Creates a new persistent instance stored next to the database image,
+     * in the <code>&lt;path&gt;.&lt;name&gt;.oids</code> file (see
+     * {@link DatabaseConfiguration#getPath()}), or opens it if it exists.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     * @param name
+     *            Index name, for instance, the name of the loaded node type.
+     * @param numeric
+     *            <code>true</code> if keys are <code>long</code> values,
+     *            <code>false</code> if keys are {@link String}s.
+     * @throws DexUtilsException
+     *             if the index file cannot be created or opened.
+     */
+    public MappedOIDIndex(DatabaseConfiguration dbConf, String name,
+            boolean numeric) throws DexUtilsException {
+        this(getFile(dbConf, name), numeric, DEFAULT_EXPECTED);
+    }
+
+    /**
+     * Creates a new persistent instance stored in the given file, or opens
+     * it if it exists.
+     * 
+     * @param file
+     *            Index file.
+     * @param numeric
+     *            <code>true</code> if keys are <code>long</code> values,
+     *            <code>false</code> if keys are {@link String}s.
+     * @param expected
+     *            Expected number of keys. It is ignored if the file exists.
+     * @throws DexUtilsException
+     *             if the index file cannot be created or opened, or the
+     *             existing one does not have the same kind of keys.
+     */
+    public MappedOIDIndex(File file, boolean numeric, long expected)
+            throws DexUtilsException {
+        if (expected < 0) {
+            throw new IllegalArgumentException(
+                    "Expected number of keys cannot be negative.");
+        }
+        this.file = file;
+        this.numeric = numeric;
+        int slotSize = numeric ? 16 : 24;
+        try {
+            headerFile = new RandomAccessFile(file, "rw");
+            header = headerFile.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (header.getLong(0) != 0) {
+                generation = header.getLong(GENERATION_OFFSET);
+                File f = getTableFile(file, generation);
+                long capacity = f.length() / slotSize;
+                if (header.getLong(0) != MAGIC
+                        || (header.getLong(NUMERIC_OFFSET) != 0) != numeric
+                        || capacity < 16 || Long.bitCount(capacity) != 1) {
+                    headerFile.close();
+                    String msg = new String(file.getAbsolutePath()
+                            + " is not a " + (numeric ? "numeric" : "string")
+                            + " OID index.");
+                    log.error(msg);
+                    throw new DexUtilsException(msg);
+                }
+                table = new Table(f, capacity, slotSize);
+                size = header.getLong(SIZE_OFFSET);
+                keysLength = header.getLong(KEYS_OFFSET);
+                log.info("OID index " + file.getAbsolutePath() + " has "
+                        + size + " keys");
+            } else {
+                long capacity = 16;
+                while (capacity * LOAD_FACTOR < expected) {
+                    capacity <<= 1;
+                }
+                table = create(getTableFile(file, generation), capacity);
+                header.putLong(NUMERIC_OFFSET, numeric ? 1 : 0);
+                header.putLong(GENERATION_OFFSET, generation);
+                header.putLong(SIZE_OFFSET, size);
+                header.putLong(KEYS_OFFSET, keysLength);
+                header.putLong(0, MAGIC);
+            }
+            // Left by a process which died while growing the index
+            deleteTables(generation);
+            threshold = (long) (table.capacity * LOAD_FACTOR);
+            if (!numeric) {
+                keysFile = new RandomAccessFile(getKeysFile(file), "rw");
+                if (keysLength > 0) {
+                    keySegment((int) ((keysLength - 1) >>> KEYS_SEGMENT_SHIFT));
+                }
+            }
+        } catch (IOException e) {
+            String msg = new String("Cannot open " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+    }
+
+    /**
+     * Gets the file of the persistent index with the given name.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     * @param name
+     *            Index name.
+     * @return The index file.
+     */
+    public static File getFile(DatabaseConfiguration dbConf, String name) {
+        return new File(dbConf.getPath() + "." + name + EXTENSION);
+    }
+
+    /**
+     * Gets the file of the slots of the given index file and generation.
+     * 
+     * @param file
+     *            Index file.
+     * @param generation
+     *            Generation of the table.
+     * @return The table file.
+     */
+    public static File getTableFile(File file, long generation) {
+        return new File(file.getPath() + "." + generation);
+    }
+
+    /**
+     * Gets the file of the {@link String} keys of the given index file.
+     * 
+     * @param file
+     *            Index file.
+     * @return The file of the {@link String} keys.
+     */
+    public static File getKeysFile(File file) {
+        return new File(file.getPath() + KEYS_EXTENSION);
+    }
+
+    /**
+     * Creates a temporary index file.
+     * 
+     * @return The temporary index file.
+     * @throws DexUtilsException
+     *             if it cannot be created.
+     */
+    private static File createTempFile() throws DexUtilsException {
+        try {
+            File f = File.createTempFile("dex-etl", EXTENSION);
+            f.deleteOnExit();
+            getTableFile(f, 0).deleteOnExit();
+            getKeysFile(f).deleteOnExit();
+            return f;
+        } catch (IOException e) {
+            String msg = new String("Cannot create a temporary OID index.");
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+    }
+
+    /**
+     * Deletes the table files of all the generations but the given one.
+     * <p>
+     * Files which cannot be deleted yet, because they are still mapped, are
+     * deleted later.
+     * 
+     * @param keep
+     *            Generation to be kept, or <code>-1</code> to delete all.
+     */
+    private void deleteTables(long keep) {
+        final String prefix = file.getName() + ".";
+        File[] files = file.getAbsoluteFile().getParentFile().listFiles(
+                new FileFilter() {
+                    public boolean accept(File f) {
+                        String name = f.getName();
+                        return name.startsWith(prefix)
+                                && name.length() > prefix.length()
+                                && name.substring(prefix.length()).matches(
+                                        "[0-9]+");
+                    }
+                });
+        for (int i = 0; files != null && i < files.length; i++) {
+            if (!files[i].getName().equals(prefix + keep)
+                    && !files[i].delete()) {
+                log.debug("Cannot delete " + files[i].getAbsolutePath()
+                        + " yet");
+            }
+        }
+    }
+
+    /**
+     * Creates an empty table in the given file.
+     * 
+     * @param f
+     *            Table file.
+     * @param capacity
+     *            Number of slots. It must be a power of two.
+     * @return The new table.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private Table create(File f, long capacity) throws IOException {
+        if (f.exists() && !f.delete()) {
+            throw new IOException("Cannot delete " + f.getAbsolutePath());
+        }
+        if (temporary) {
+            f.deleteOnExit();
+        }
+        return new Table(f, capacity, numeric ? 16 : 24);
+    }
+
+    /**
+     * Gets the index file.
+     * 
+     * @return The index file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets if the index is deleted when it is closed.
+     * 
+     * @return <code>true</code> if the index is temporary.
+     */
+    public boolean isTemporary() {
+        return temporary;
+    }
+
+    /**
+     * Hash function for <code>long</code> keys.
+     * 
+     * @param key
+     *            Key.
+     * @return The hash.
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Hash function for {@link String} keys.
+     * 
+     * @param key
+     *            Key.
+     * @return The hash.
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+
+    /**
+     * Gets the slot of the given key.
+     * 
+     * @param key
+     *            Key.
+     * @return The slot where the key is or where it should be inserted.
+     */
+    private long slot(long key) {
+        long mask = table.capacity - 1;
+        long i = hash(key) & mask;
+        while (true) {
+            MappedByteBuffer segment = table.segment(i);
+            int pos = table.position(i);
+            if (segment.getLong(pos) == Objects.InvalidOID
+                    || segment.getLong(pos + 8) == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Gets the slot of the given key.
+     * 
+     * @param key
+     *            Key.
+     * @param h
+     *            Hash of the key.
+     * @return The slot where the key is or where it should be inserted.
+     */
+    private long slot(String key, long h) {
+        long mask = table.capacity - 1;
+        long i = h & mask;
+        while (true) {
+            MappedByteBuffer segment = table.segment(i);
+            int pos = table.position(i);
+            if (segment.getLong(pos) == Objects.InvalidOID
+                    || (segment.getLong(pos + 8) == h && equals(
+                            segment.getLong(pos + 16), key))) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Gets the mapped segment of the keys file with the given index, mapping
+     * it and the previous ones if necessary.
+     * <p>
+     * Just called when the index is opened and by {@link #store(String)},
+     * so it is not called concurrently.
+     * 
+     * @param i
+     *            Segment index.
+     * @return The mapped segment.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    private MappedByteBuffer keySegment(int i) throws IOException {
+        MappedByteBuffer[] segments = keySegments;
+        if (i >= segments.length) {
+            int n = segments.length;
+            segments = Arrays.copyOf(segments, i + 1);
+            for (; n <= i; n++) {
+                segments[n] = keysFile.getChannel().map(
+                        FileChannel.MapMode.READ_WRITE,
+                        (long) n << KEYS_SEGMENT_SHIFT,
+                        1L << KEYS_SEGMENT_SHIFT);
+            }
+            keySegments = segments;
+        }
+        return segments[i];
+    }
+
+    /**
+     * Checks if the key stored at the given offset of the keys file is the
+     * given one.
+     * 
+     * @param offset
+     *            Offset of the stored key.
+     * @param key
+     *            Key.
+     * @return <code>true</code> if they are equal.
+     */
+    private boolean equals(long offset, String key) {
+        // Stored keys are always mapped
+        MappedByteBuffer segment = keySegments[(int) (offset
+                >>> KEYS_SEGMENT_SHIFT)];
+        int pos = (int) (offset & ((1L << KEYS_SEGMENT_SHIFT) - 1));
+        int len = segment.getInt(pos);
+        if (len != key.length()) {
+            return false;
+        }
+        pos += 4;
+        for (int i = 0; i < len; i++, pos += 2) {
+            if (segment.getChar(pos) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the given key to the keys file.
+     * 
+     * @param key
+     *            Key.
+     * @return The offset of the stored key.
+     */
+    private long store(String key) {
+        long bytes = 4 + 2L * key.length();
+        long segmentSize = 1L << KEYS_SEGMENT_SHIFT;
+        if (bytes > segmentSize) {
+            throw new IllegalArgumentException("Key is too long.");
+        }
+        // Keys do not span segments
+        long offset = keysLength;
+        if ((offset & (segmentSize - 1)) + bytes > segmentSize) {
+            offset = (offset + segmentSize) & ~(segmentSize - 1);
+        }
+        try {
+            MappedByteBuffer segment = keySegment((int) (offset
+                    >>> KEYS_SEGMENT_SHIFT));
+            int pos = (int) (offset & (segmentSize - 1));
+            segment.putInt(pos, key.length());
+            pos += 4;
+            for (int i = 0; i < key.length(); i++, pos += 2) {
+                segment.putChar(pos, key.charAt(i));
+            }
+        } catch (IOException e) {
+            String msg = new String("Cannot write "
+                    + getKeysFile(file).getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+        keysLength = offset + bytes;
+        header.putLong(KEYS_OFFSET, keysLength);
+        return offset;
+    }
+
+    /**
+     * Doubles the capacity, rehashing the slots into the table file of the
+     * next generation.
+     */
+    private void grow() {
+        Table old = table;
+        long start = System.currentTimeMillis();
+        try {
+            Table t = create(getTableFile(file, generation + 1),
+                    old.capacity << 1);
+            long mask = t.capacity - 1;
+            for (long i = 0; i < old.capacity; i++) {
+                MappedByteBuffer from = old.segment(i);
+                int pos = old.position(i);
+                long oid = from.getLong(pos);
+                if (oid == Objects.InvalidOID) {
+                    continue;
+                }
+                long key = from.getLong(pos + 8);
+                long j = (numeric ? hash(key) : key) & mask;
+                while (t.segment(j).getLong(t.position(j))
+                        != Objects.InvalidOID) {
+                    j = (j + 1) & mask;
+                }
+                MappedByteBuffer to = t.segment(j);
+                int p = t.position(j);
+                to.putLong(p + 8, key);
+                if (!numeric) {
+                    to.putLong(p + 16, from.getLong(pos + 16));
+                }
+                to.putLong(p, oid);
+            }
+            t.force();
+            // A single write switches to the complete new table
+            header.putLong(GENERATION_OFFSET, generation + 1);
+            header.force();
+            generation++;
+            table = t;
+            old.close();
+            deleteTables(generation);
+        } catch (IOException e) {
+            String msg = new String("Cannot grow " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+        threshold = (long) (table.capacity * LOAD_FACTOR);
+        log.debug("OID index " + file.getAbsolutePath() + " grown to "
+                + table.capacity + " slots in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    public long get(long key) {
+        if (!numeric) {
+            return get(Long.toString(key));
+        }
+        long i = slot(key);
+        return table.segment(i).getLong(table.position(i));
+    }
+
+    public long get(String key) {
+        if (numeric) {
+            return get(Long.parseLong(key.trim()));
+        }
+        long i = slot(key, hash(key));
+        return table.segment(i).getLong(table.position(i));
+    }
+
+    public void put(long key, long oid) {
+        if (!numeric) {
+            put(Long.toString(key), oid);
+            return;
+        }
+        if (oid == Objects.InvalidOID) {
+            throw new IllegalArgumentException("Invalid OID.");
+        }
+        long i = slot(key);
+        MappedByteBuffer segment = table.segment(i);
+        int pos = table.position(i);
+        if (segment.getLong(pos) == Objects.InvalidOID) {
+            if (size >= threshold) {
+                grow();
+                i = slot(key);
+                segment = table.segment(i);
+                pos = table.position(i);
+            }
+            segment.putLong(pos + 8, key);
+            size++;
+            header.putLong(SIZE_OFFSET, size);
+        }
+        segment.putLong(pos, oid);
+    }
+
+    public void put(String key, long oid) {
+        if (numeric) {
+            put(Long.parseLong(key.trim()), oid);
+            return;
+        }
+        if (oid == Objects.InvalidOID) {
+            throw new IllegalArgumentException("Invalid OID.");
+        }
+        long h = hash(key);
+        long i = slot(key, h);
+        MappedByteBuffer segment = table.segment(i);
+        int pos = table.position(i);
+        if (segment.getLong(pos) == Objects.InvalidOID) {
+            if (size >= threshold) {
+                grow();
+                i = slot(key, h);
+                segment = table.segment(i);
+                pos = table.position(i);
+            }
+            segment.putLong(pos + 8, h);
+            segment.putLong(pos + 16, store(key));
+            size++;
+            header.putLong(SIZE_OFFSET, size);
+        }
+        segment.putLong(pos, oid);
+    }
+
+    public long remove(long key) {
+        if (!numeric) {
+            return remove(Long.toString(key));
+        }
+        return clear(slot(key));
+    }
+
+    public long remove(String key) {
+        if (numeric) {
+            return remove(Long.parseLong(key.trim()));
+        }
+        return clear(slot(key, hash(key)));
+    }
+
+    /**
+     * Empties the given slot. The following keys of the cluster are moved
+     * back when their probe sequence crosses it, so they are still found.
+     * The stored {@link String} key is not reclaimed.
+     * 
+     * @param i
+     *            Slot.
+     * @return The OID of the slot or {@link Objects#InvalidOID} if it was
+     *         empty.
+     */
+    private long clear(long i) {
+        MappedByteBuffer segment = table.segment(i);
+        int pos = table.position(i);
+        long oid = segment.getLong(pos);
+        if (oid == Objects.InvalidOID) {
+            return oid;
+        }
+        long mask = table.capacity - 1;
+        for (long j = (i + 1) & mask;; j = (j + 1) & mask) {
+            MappedByteBuffer from = table.segment(j);
+            int p = table.position(j);
+            long moved = from.getLong(p);
+            if (moved == Objects.InvalidOID) {
+                break;
+            }
+            long key = from.getLong(p + 8);
+            long home = (numeric ? hash(key) : key) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                segment.putLong(pos + 8, key);
+                if (!numeric) {
+                    segment.putLong(pos + 16, from.getLong(p + 16));
+                }
+                segment.putLong(pos, moved);
+                i = j;
+                segment = from;
+                pos = p;
+            }
+        }
+        segment.putLong(pos, Objects.InvalidOID);
+        size--;
+        header.putLong(SIZE_OFFSET, size);
+        return oid;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes the changes to the index files.
+     */
+    public void flush() {
+        header.force();
+        table.force();
+        for (MappedByteBuffer segment : keySegments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Closes the index. Temporary indexes are deleted.
+     * <p>
+     * The instance cannot be used afterwards.
+     * 
+     * @throws DexUtilsException
+     *             if the index files cannot be closed.
+     */
+    public void close() throws DexUtilsException {
+        if (table == null) {
+            return;
+        }
+        try {
+            if (!temporary) {
+                flush();
+            }
+            table.close();
+            headerFile.close();
+            if (keysFile != null) {
+                keysFile.close();
+            }
+        } catch (IOException e) {
+            String msg = new String("Cannot close " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        } finally {
+            table = null;
+            keySegments = new MappedByteBuffer[0];
+        }
+        if (temporary) {
+            delete();
+        }
+    }
+
+    /**
+     * Closes the index and deletes its files.
+     * 
+     * @throws DexUtilsException
+     *             if the index files cannot be closed.
+     */
+    public void delete() throws DexUtilsException {
+        close();
+        file.delete();
+        deleteTables(-1);
+        getKeysFile(file).delete();
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.util.List;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Loads nodes.
+ * <p>
+ * Each record creates a node of the given type. Fields are mapped to
+ * attributes of that type by their position (see {@link #setColumns(String...)}
+ * ).
+ * <p>
+ * For instance, a CSV file like this:
+ * 
+ * <pre>
+ * 1,John,35
+ * 2,Mary,28
+ * </pre>
+ * 
+ * could be loaded as follows:
+ * 
+ * <pre>
+ * NodeLoader loader = new NodeLoader(dbConf);
+ * loader.setFile(new File(&quot;people.csv&quot;));
+ * loader.setType(&quot;person&quot;);
+ * loader.setColumns(&quot;id&quot;, &quot;name&quot;, &quot;age&quot;);
+ * loader.load();
+ * </pre>
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class NodeLoader extends AbstractLoader {
+
+    /**
+     * Node type name.
+     */
+    private String type = null;
+
+    /**
+     * Attribute names by field position.
+     */
+    private String[] columns = new String[0];
+
+    /**
+     * {@link OIDIndex} to be filled (it may be <code>null</code>).
+     */
+    private OIDIndex index = null;
+
+    /**
+     * Position of the external key field.
+     */
+    private int keyColumn = -1;
+
+    /**
+     * Node type identifier.
+     */
+    private int typeId;
+
+    /**
+     * Attribute identifiers by field position.
+     */
+    private int[] attrs;
+
+    /**
+     * Attribute data types by field position.
+     */
+    private DataType[] dataTypes;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    public NodeLoader(DatabaseConfiguration dbConf) {
+        super(dbConf);
+    }
+
+    /**
+     * Gets the node type name.
+     * 
+     * @return The node type name.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the node type name.
+     * 
+     * @param t
+     *            The node type name.
+     */
+    public void setType(String t) {
+        if (t == null) {
+            throw new IllegalArgumentException("Type cannot be null.");
+        }
+        type = t;
+        invalidate();
+    }
+
+    /**
+     * Gets the attribute names by field position.
+     * 
+     * @return The attribute names by field position.
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Sets the attribute names by field position.
+     * 
+     * @param names
+     *            The attribute names by field position. A <code>null</code>
+     *            name means the field is ignored.
+     */
+    public void setColumns(String... names) {
+        columns = names.clone();
+        invalidate();
+    }
+
+    /**
+     * Gets the {@link OIDIndex} to be filled.
+     * 
+     * @return The {@link OIDIndex} to be filled or <code>null</code>.
+     */
+    public OIDIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the position of the external key field.
+     * 
+     * @return The position of the external key field or <code>-1</code>.
+     */
+    public int getKeyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * Sets the {@link OIDIndex} to be filled with the OIDs of the new nodes.
+     * <p>
+     * The key of each node is taken from the given field. It does not need to
+     * be mapped to an attribute.
+     * <p>
+     * Updates are synchronized on the index, so the same index can be filled
+     * from several threads (see {@link ParallelLoader}). If there is a
+     * {@link LoadJournal}, the keys are also recorded in it, so the index is
+     * restored when a load is resumed, unless it is a persistent
+     * {@link MappedOIDIndex}, which is flushed at each checkpoint instead.
+     * 
+     * @param idx
+     *            {@link OIDIndex} to be filled or <code>null</code> to disable
+     *            it.
+     * @param column
+     *            Position of the external key field.
+     */
+    public void setIndex(OIDIndex idx, int column) {
+        if (idx != null && column < 0) {
+            throw new IllegalArgumentException(
+                    "Key column cannot be negative.");
+        }
+        index = idx;
+        keyColumn = (idx == null) ? -1 : column;
+    }
+
+    @Override
+    protected void prepare(Graph graph) throws DexUtilsException {
+        if (type == null) {
+            throw new DexUtilsException("No node type has been set.");
+        }
+        typeId = resolveType(type);
+        attrs = new int[columns.length];
+        dataTypes = new DataType[columns.length];
+        resolveAttributes(graph, type, columns, attrs, dataTypes);
+    }
+
+    /**
+     * Gets if the {@link OIDIndex} is a persistent {@link MappedOIDIndex},
+     * which keeps the keys by itself.
+     * 
+     * @return <code>true</code> if the {@link OIDIndex} is persistent.
+     */
+    private boolean isPersistent() {
+        return index instanceof MappedOIDIndex
+                && !((MappedOIDIndex) index).isTemporary();
+    }
+
+    /**
+     * Restores the external keys of the nodes already loaded into the
+     * {@link OIDIndex}, if any and it is not persistent.
+     */
+    @Override
+    protected void restore(LoadJournal j, String name)
+            throws DexUtilsException {
+        if (index != null && !isPersistent()) {
+            synchronized (index) {
+                j.replay(name, index);
+            }
+        }
+    }
+
+    /**
+     * Flushes the {@link OIDIndex} if it is persistent, instead of recording
+     * its keys in the {@link LoadJournal}.
+     */
+    @Override
+    protected boolean sync() throws DexUtilsException {
+        if (!isPersistent()) {
+            return false;
+        }
+        synchronized (index) {
+            ((MappedOIDIndex) index).flush();
+        }
+        return true;
+    }
+
+    /**
+     * Removes the keys of the dropped nodes from the {@link OIDIndex}, unless
+     * they were registered again for another node.
+     */
+    @Override
+    protected void unregister(List<String> keys, List<Long> oids) {
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            for (int i = 0; i < keys.size(); i++) {
+                if (index.get(keys.get(i)) == oids.get(i)) {
+                    index.remove(keys.get(i));
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean process(RecordReader reader, Graph graph, Value value) {
+        // Everything is parsed first, so an invalid record does not leave a
+        // partial node to be committed with the batch
+        String key = null;
+        long numericKey = 0;
+        if (index != null) {
+            if (reader.isNull(keyColumn)) {
+                throw new DexUtilsException("Empty key at record "
+                        + reader.getRecordNumber());
+            }
+            if (index.isNumeric()) {
+                numericKey = reader.getLong(keyColumn);
+            } else {
+                key = reader.getString(keyColumn);
+            }
+        }
+        readAttributes(reader, attrs, dataTypes);
+
+        long oid = graph.newNode(typeId);
+        if (index != null) {
+            // Journaled as the index keeps it, so it is replayed as is
+            if (key == null) {
+                synchronized (index) {
+                    index.put(numericKey, oid);
+                }
+                journalKey(numericKey, oid);
+            } else {
+                synchronized (index) {
+                    index.put(key, oid);
+                }
+                journalKey(key, oid);
+            }
+        }
+        bufferAttributes(oid);
+        return true;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import com.sparsity.dex.gdb.Objects;
+
+/**
+ * Common interface for all external key to Dex object identifier (OID)
+ * indexes.
+ * <p>
+ * Loaders use it to resolve the endpoints of the edges from the external keys
+ * of the nodes instead of querying the Dex database. It is filled while nodes
+ * are loaded (see {@link NodeLoader#setIndex(OIDIndex, int)}) and queried
+ * while edges are loaded (see {@link EdgeLoader}), and kept up to date when
+ * changes are applied (see {@link DeltaLoader#setIndex(OIDIndex)}).
+ * <p>
+ * An index is either numeric or not. Numeric indexes store <code>long</code>
+ * keys, otherwise keys are {@link String}s. In both cases keys can be given
+ * with any of the methods, they are converted as required.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public interface OIDIndex {
+
+    /**
+     * Gets if the keys are numeric or not.
+     * 
+     * @return <code>true</code> if keys are <code>long</code> values,
+     *         <code>false</code> if keys are {@link String}s.
+     */
+    public boolean isNumeric();
+
+    /**
+     * Gets the OID for the given key.
+     * 
+     * @param key
+     *            External key.
+     * @return The OID or {@link Objects#InvalidOID} if the key does not exist.
+     */
+    public long get(long key);
+
+    /**
+     * Gets the OID for the given key.
+     * 
+     * @param key
+     *            External key.
+     * @return The OID or {@link Objects#InvalidOID} if the key does not exist.
+     */
+    public long get(String key);
+
+    /**
+     * Sets the OID for the given key.
+     * 
+     * @param key
+     *            External key.
+     * @param oid
+     *            The OID. It cannot be {@link Objects#InvalidOID}.
+     */
+    public void put(long key, long oid);
+
+    /**
+     * Sets the OID for the given key.
+     * 
+     * @param key
+     *            External key.
+     * @param oid
+     *            The OID. It cannot be {@link Objects#InvalidOID}.
+     */
+    public void put(String key, long oid);
+
+    /**
+     * Removes the given key.
+     * 
+     * @param key
+     *            External key.
+     * @return The OID it had or {@link Objects#InvalidOID} if the key did not
+     *         exist.
+     */
+    public long remove(long key);
+
+    /**
+     * Removes the given key.
+     * 
+     * @param key
+     *            External key.
+     * @return The OID it had or {@link Objects#InvalidOID} if the key did not
+     *         exist.
+     */
+    public long remove(String key);
+
+    /**
+     * Gets the number of keys.
+     * 
+     * @return The number of keys.
+     */
+    public long size();
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Session;
+
+/**
+ * Runs a loader with several threads.
+ * <p>
+ * The input file of the loader is split into chunks at line boundaries, which
+ * are loaded by a pool of worker threads. Each worker thread uses its own
+ * working {@link Session} (see {@link DatabaseConfiguration#getSession()}),
+ * which is closed when the load finishes.
+ * <p>
+ * Input records cannot span several lines. Also, note that Dex serializes the
+ * write transactions, so parallelism mostly speeds up reading, parsing and
+ * resolving the records.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class ParallelLoader {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(ParallelLoader.class);
+
+    /**
+     * Number of chunks per worker thread.
+     * <p>
+     * Having more chunks than threads balances the load when some chunks are
+     * slower than others.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Loader.
+     */
+    private AbstractLoader loader;
+
+    /**
+     * Number of worker threads.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param loader
+     *            Loader to be run.
+     */
+    public ParallelLoader(AbstractLoader loader) {
+        if (loader == null) {
+            throw new IllegalArgumentException("Loader cannot be null.");
+        }
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     * 
+     * @return The number of worker threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of worker threads. By default, the number of available
+     * processors.
+     * 
+     * @param p
+     *            The number of worker threads. It must be positive.
+     */
+    public void setParallelism(int p) {
+        if (p <= 0) {
+            String msg = new String("Parallelism must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        parallelism = p;
+    }
+
+    /**
+     * Loads the input file of the loader.
+     * 
+     * @return The number of loaded records.
+     * @throws DexUtilsException
+     *             if there is an error. In that case, the records of the
+     *             chunks already loaded remain in the database.
+     */
+    public long load() throws DexUtilsException {
+        File file = loader.getFile();
+        if (file == null) {
+            throw new DexUtilsException("No input file has been set.");
+        }
+        List<FileRange> ranges;
+        try {
+            ranges = FileRange.split(file, parallelism * CHUNKS_PER_THREAD);
+        } catch (IOException e) {
+            String msg = new String("Cannot split " + file.getAbsolutePath());
+            log.error(msg, e);
+            throw new DexUtilsException(msg, e);
+        }
+
+        final DatabaseConfiguration dbConf = loader.getDatabaseConfiguration();
+        dbConf.openDatabase();
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism,
+                new WorkerFactory(dbConf, file.getName()));
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>(
+                    ranges.size());
+            for (final FileRange range : ranges) {
+                results.add(pool.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        log.debug("Loading " + range);
+                        return loader.load(range);
+                    }
+                }));
+            }
+            long count = 0;
+            for (Future<Long> result : results) {
+                count += result.get();
+            }
+            loader.buildIndexes();
+            log.info(count + " records loaded from " + file.getAbsolutePath()
+                    + " with " + parallelism + " threads in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return count;
+        } catch (ExecutionException e) {
+            String msg = new String("Cannot load " + file.getAbsolutePath());
+            log.error(msg, e.getCause());
+            throw new DexUtilsException(msg, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexUtilsException("Interrupted while loading "
+                    + file.getAbsolutePath(), e);
+        } finally {
+            pool.shutdownNow();
+            awaitTermination(pool);
+        }
+    }
+
+    /**
+     * Waits for the worker threads to finish, so their {@link Session}s are
+     * closed when the load returns.
+     * 
+     * @param pool
+     *            {@link ExecutorService} which has been shutdown.
+     */
+    private static void awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the worker threads.
+     * <p>
+     * Worker threads close their working {@link Session} when they finish.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class WorkerFactory implements ThreadFactory {
+
+        /**
+         * {@link DatabaseConfiguration} instance.
+         */
+        private DatabaseConfiguration dbConf;
+
+        /**
+         * Thread name prefix.
+         */
+        private String prefix;
+
+        /**
+         * Number of created threads.
+         */
+        private AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Creates a new instance.
+         * 
+         * @param dbConf
+         *            {@link DatabaseConfiguration} instance.
+         * @param name
+         *            Name of the input.
+         */
+        public WorkerFactory(DatabaseConfiguration dbConf, String name) {
+            this.dbConf = dbConf;
+            this.prefix = "loader-" + name + "-";
+        }
+
+        public Thread newThread(final Runnable r) {
+            Thread th = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        r.run();
+                    } finally {
+                        dbConf.closeSession();
+                    }
+                }
+            }, prefix + count.incrementAndGet());
+            th.setDaemon(true);
+            return th;
+        }
+    }
+}
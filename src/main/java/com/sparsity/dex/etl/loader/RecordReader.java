@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import java.io.IOException;
+
+/**
+ * Common interface for all record readers.
+ * <p>
+ * A record reader works as a cursor: each call to {@link #next()} moves to the
+ * next record, whose fields are then accessed by their position. Typed getters
+ * allow implementations to avoid creating a {@link String} for each field.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public interface RecordReader {
+
+    /**
+     * Moves to the next record.
+     * 
+     * @return <code>true</code> if there is a current record,
+     *         <code>false</code> if the end of the input has been reached.
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    public boolean next() throws IOException;
+
+    /**
+     * Gets the number of fields of the current record.
+     * 
+     * @return The number of fields of the current record.
+     */
+    public int getFieldCount();
+
+    /**
+     * Gets the number of records read so far.
+     * 
+     * @return The number of records read so far.
+     */
+    public long getRecordNumber();
+
+    /**
+     * Gets if the given field of the current record is empty or does not
+     * exist.
+     * 
+     * @param i
+     *            Field position.
+     * @return <code>true</code> if empty, <code>false</code> otherwise.
+     */
+    public boolean isNull(int i);
+
+    /**
+     * Gets the given field of the current record as a {@link String}.
+     * 
+     * @param i
+     *            Field position.
+     * @return The field value or <code>null</code> if it does not exist.
+     */
+    public String getString(int i);
+
+    /**
+     * Gets the given field of the current record as an <code>int</code>.
+     * 
+     * @param i
+     *            Field position.
+     * @return The field value.
+     * @throws NumberFormatException
+     *             if the field is not a valid number.
+     */
+    public int getInt(int i);
+
+    /**
+     * Gets the given field of the current record as a <code>long</code>.
+     * 
+     * @param i
+     *            Field position.
+     * @return The field value.
+     * @throws NumberFormatException
+     *             if the field is not a valid number.
+     */
+    public long getLong(int i);
+
+    /**
+     * Gets the given field of the current record as a <code>double</code>.
+     * 
+     * @param i
+     *            Field position.
+     * @return The field value.
+     * @throws NumberFormatException
+     *             if the field is not a valid number.
+     */
+    public double getDouble(int i);
+
+    /**
+     * Gets the given field of the current record as a <code>boolean</code>.
+     * 
+     * @param i
+     *            Field position.
+     * @return The field value.
+     */
+    public boolean getBoolean(int i);
+
+    /**
+     * Closes the reader.
+     * 
+     * @throws IOException
+     *             if there is an I/O error.
+     */
+    public void close() throws IOException;
+}
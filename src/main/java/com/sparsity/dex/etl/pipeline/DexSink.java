@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.pipeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Session;
+
+/**
+ * {@link Sink} which writes into the Dex database of a
+ * {@link DatabaseConfiguration}.
+ * <p>
+ * Items are written with the working {@link Session} of the writer thread in
+ * batched transactions, that is, the {@link Session} commits every
+ * {@link #getBatchSize()} items. The {@link Session} is closed with the sink.
+ * <p>
+ * Subclasses just implement {@link #write(Object, Graph)}.
+ * 
+ * @author Sparsity Technologies
+ * 
+ * @param <T>
+ *            Item type.
+ */
+public abstract class DexSink<T> implements Sink<T> {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(DexSink.class);
+
+    /**
+     * Default number of items per transaction.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    /**
+     * {@link DatabaseConfiguration} instance.
+     */
+    private DatabaseConfiguration dbConf;
+
+    /**
+     * Number of items per transaction.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Working {@link Session}.
+     */
+    private Session sess = null;
+
+    /**
+     * {@link Graph} of the working {@link Session}.
+     */
+    private Graph graph = null;
+
+    /**
+     * Number of items written so far.
+     */
+    private long count = 0;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dbConf
+     *            {@link DatabaseConfiguration} instance.
+     */
+    protected DexSink(DatabaseConfiguration dbConf) {
+        if (dbConf == null) {
+            throw new IllegalArgumentException(
+                    "Database configuration cannot be null.");
+        }
+        this.dbConf = dbConf;
+    }
+
+    /**
+     * Gets the {@link DatabaseConfiguration}.
+     * 
+     * @return The {@link DatabaseConfiguration}.
+     */
+    public DatabaseConfiguration getDatabaseConfiguration() {
+        return dbConf;
+    }
+
+    /**
+     * Gets the number of items per transaction.
+     * 
+     * @return The number of items per transaction.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of items per transaction. By default,
+     * {@link #DEFAULT_BATCH_SIZE}.
+     * 
+     * @param size
+     *            The number of items per transaction. It must be positive.
+     */
+    public void setBatchSize(int size) {
+        if (size <= 0) {
+            String msg = new String("Batch size must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        batchSize = size;
+    }
+
+    /**
+     * Opens the database and begins the first transaction.
+     * <p>
+     * Subclasses may override it to resolve the Dex identifiers they need,
+     * but they must call it first.
+     */
+    public void open() throws Exception {
+        dbConf.openDatabase();
+        sess = dbConf.getSession();
+        graph = sess.getGraph();
+        count = 0;
+        sess.begin();
+    }
+
+    public void write(T item) throws Exception {
+        write(item, graph);
+        if (++count % batchSize == 0) {
+            sess.commit();
+            sess.begin();
+            log.debug(count + " items written into " + dbConf.getAlias());
+        }
+    }
+
+    /**
+     * Commits the last transaction and closes the working {@link Session}.
+     */
+    public void close() throws Exception {
+        if (sess == null) {
+            return;
+        }
+        try {
+            sess.commit();
+        } finally {
+            sess = null;
+            graph = null;
+            dbConf.closeSession();
+        }
+    }
+
+    /**
+     * Writes an item into the database.
+     * 
+     * @param item
+     *            Item to be written.
+     * @param graph
+     *            {@link Graph} of the working {@link Session}.
+     * @throws Exception
+     *             if the item cannot be written.
+     */
+    protected abstract void write(T item, Graph graph) throws Exception;
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sparsity.dex.etl.DexUtilsException;
+
+/**
+ * ETL pipeline.
+ * <p>
+ * Items are read from a {@link Source}, transformed by a {@link Transformer}
+ * and written into a {@link Sink}, each stage running in its own threads:
+ * <ul>
+ * <li>A reader thread, which calls the {@link Source}.</li>
+ * <li>{@link #getParallelism()} transformer threads, which call the
+ * {@link Transformer}.</li>
+ * <li>A writer thread, which calls the {@link Sink}.</li>
+ * </ul>
+ * Stages are connected through bounded queues of
+ * {@link #getQueueCapacity()} items, so a stage blocks when the next one
+ * cannot keep up (backpressure) and the memory footprint does not depend on
+ * the size of the input. Note that items may be written in a different order
+ * than they were read when there are several transformer threads.
+ * <p>
+ * For instance, to load a CSV file into Dex (see {@link RecordSource} and
+ * {@link DexSink}):
+ * 
+ * <pre>
+ * Pipeline&lt;String[], Person&gt; p = new Pipeline&lt;String[], Person&gt;(
+ *         new RecordSource(new CSVRecordReader(in, ',')), parser,
+ *         new PersonSink(dbConf));
+ * p.run();
+ * </pre>
+ * 
+ * @author Sparsity Technologies
+ * 
+ * @param <I>
+ *            Input item type.
+ * @param <O>
+ *            Output item type.
+ */
+public class Pipeline<I, O> {
+
+    /**
+     * {@link Log} instance.
+     */
+    private static Log log = LogFactory.getLog(Pipeline.class);
+
+    /**
+     * Default capacity of the queues.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * End of input marker.
+     */
+    private static final Object END = new Object();
+
+    /**
+     * Number of created pipelines, to name their threads.
+     */
+    private static final AtomicInteger pipelines = new AtomicInteger();
+
+    /**
+     * {@link Source} instance.
+     */
+    private Source<I> source;
+
+    /**
+     * {@link Transformer} instance.
+     */
+    private Transformer<I, O> transformer;
+
+    /**
+     * {@link Sink} instance.
+     */
+    private Sink<O> sink;
+
+    /**
+     * Number of transformer threads.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Capacity of the queues.
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param source
+     *            {@link Source} instance.
+     * @param transformer
+     *            {@link Transformer} instance.
+     * @param sink
+     *            {@link Sink} instance.
+     */
+    public Pipeline(Source<I> source, Transformer<I, O> transformer,
+            Sink<O> sink) {
+        if (source == null || transformer == null || sink == null) {
+            String msg = new String("Pipeline stages cannot be null.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.source = source;
+        this.transformer = transformer;
+        this.sink = sink;
+    }
+
+    /**
+     * Gets the number of transformer threads.
+     * 
+     * @return The number of transformer threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of transformer threads. By default, the number of
+     * available processors.
+     * 
+     * @param p
+     *            The number of transformer threads. It must be positive.
+     */
+    public void setParallelism(int p) {
+        if (p <= 0) {
+            String msg = new String("Parallelism must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        parallelism = p;
+    }
+
+    /**
+     * Gets the capacity of the queues between stages.
+     * 
+     * @return The capacity of the queues between stages.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the capacity of the queues between stages. By default,
+     * {@link #DEFAULT_QUEUE_CAPACITY}.
+     * 
+     * @param capacity
+     *            The capacity of the queues. It must be positive.
+     */
+    public void setQueueCapacity(int capacity) {
+        if (capacity <= 0) {
+            String msg = new String("Queue capacity must be positive.");
+            log.error(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        queueCapacity = capacity;
+    }
+
+    /**
+     * Runs the pipeline until all the input items are written.
+     * <p>
+     * If any stage fails, the other ones are interrupted.
+     * 
+     * @return The number of written items.
+     * @throws DexUtilsException
+     *             if any stage fails. In that case, the items already
+     *             written remain in the {@link Sink}.
+     */
+    public long run() throws DexUtilsException {
+        final BlockingQueue<Object> input = new ArrayBlockingQueue<Object>(
+                queueCapacity);
+        final BlockingQueue<Object> output = new ArrayBlockingQueue<Object>(
+                queueCapacity);
+        final AtomicLong read = new AtomicLong();
+        final AtomicInteger running = new AtomicInteger(parallelism);
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism + 2,
+                new StageFactory());
+        CompletionService<Long> stages = new ExecutorCompletionService<Long>(
+                pool);
+        try {
+            stages.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    return readAll(input, read);
+                }
+            });
+            for (int i = 0; i < parallelism; i++) {
+                stages.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return transformAll(input, output, running);
+                    }
+                });
+            }
+            final Future<Long> writer = stages.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    return writeAll(output);
+                }
+            });
+            // Wait for all the stages, failing as soon as any of them fails
+            for (int i = 0; i < parallelism + 2; i++) {
+                stages.take().get();
+            }
+            long count = writer.get();
+            log.info(count + " of " + read.get() + " items written with "
+                    + parallelism + " transformer threads in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return count;
+        } catch (ExecutionException e) {
+            String msg = new String("Pipeline failed after reading "
+                    + read.get() + " items");
+            log.error(msg, e.getCause());
+            throw new DexUtilsException(msg, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexUtilsException("Interrupted while running pipeline",
+                    e);
+        } finally {
+            pool.shutdownNow();
+            awaitTermination(pool);
+        }
+    }
+
+    /**
+     * Reader stage.
+     * 
+     * @param input
+     *            Input queue.
+     * @param read
+     *            Number of read items.
+     * @return The number of read items.
+     * @throws Exception
+     *             if the {@link Source} fails or the thread is interrupted.
+     */
+    private long readAll(BlockingQueue<Object> input, AtomicLong read)
+            throws Exception {
+        try {
+            I item;
+            while ((item = source.read()) != null) {
+                input.put(item);
+                read.incrementAndGet();
+            }
+        } finally {
+            try {
+                source.close();
+            } catch (Exception e) {
+                log.warn("Cannot close pipeline source", e);
+            }
+        }
+        for (int i = 0; i < parallelism; i++) {
+            input.put(END);
+        }
+        return read.get();
+    }
+
+    /**
+     * Transformer stage.
+     * 
+     * @param input
+     *            Input queue.
+     * @param output
+     *            Output queue.
+     * @param running
+     *            Number of running transformer threads.
+     * @return The number of transformed items.
+     * @throws Exception
+     *             if the {@link Transformer} fails or the thread is
+     *             interrupted.
+     */
+    @SuppressWarnings("unchecked")
+    private long transformAll(BlockingQueue<Object> input,
+            BlockingQueue<Object> output, AtomicInteger running)
+            throws Exception {
+        long count = 0;
+        Object item;
+        while ((item = input.take()) != END) {
+            O result = transformer.transform((I) item);
+            if (result != null) {
+                output.put(result);
+                count++;
+            }
+        }
+        // The last transformer thread ends the output
+        if (running.decrementAndGet() == 0) {
+            output.put(END);
+        }
+        return count;
+    }
+
+    /**
+     * Writer stage.
+     * 
+     * @param output
+     *            Output queue.
+     * @return The number of written items.
+     * @throws Exception
+     *             if the {@link Sink} fails or the thread is interrupted.
+     */
+    @SuppressWarnings("unchecked")
+    private long writeAll(BlockingQueue<Object> output) throws Exception {
+        long count = 0;
+        boolean done = false;
+        try {
+            sink.open();
+            Object item;
+            while ((item = output.take()) != END) {
+                sink.write((O) item);
+                count++;
+            }
+            done = true;
+        } finally {
+            if (done) {
+                sink.close();
+            } else {
+                try {
+                    sink.close();
+                } catch (Exception e) {
+                    log.warn("Cannot close pipeline sink", e);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Waits for the stage threads to finish, so the {@link Source} and the
+     * {@link Sink} are closed when the pipeline returns.
+     * 
+     * @param pool
+     *            {@link ExecutorService} which has been shutdown.
+     */
+    private static void awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the stage threads.
+     * 
+     * @author Sparsity Technologies
+     * 
+     */
+    private static class StageFactory implements ThreadFactory {
+
+        /**
+         * Thread name prefix.
+         */
+        private String prefix = "pipeline-" + pipelines.incrementAndGet()
+                + "-";
+
+        /**
+         * Number of created threads.
+         */
+        private AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread th = new Thread(r, prefix + count.incrementAndGet());
+            th.setDaemon(true);
+            return th;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.pipeline;
+
+import com.sparsity.dex.etl.loader.RecordReader;
+
+/**
+ * {@link Source} which reads the records of a {@link RecordReader}.
+ * <p>
+ * Each record is read as an array with its fields, null fields (see
+ * {@link RecordReader#isNull(int)}) being <code>null</code>.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class RecordSource implements Source<String[]> {
+
+    /**
+     * {@link RecordReader} instance.
+     */
+    private RecordReader reader;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param reader
+     *            {@link RecordReader} instance.
+     */
+    public RecordSource(RecordReader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException(
+                    "Record reader cannot be null.");
+        }
+        this.reader = reader;
+    }
+
+    public String[] read() throws Exception {
+        if (!reader.next()) {
+            return null;
+        }
+        String[] fields = new String[reader.getFieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            if (!reader.isNull(i)) {
+                fields[i] = reader.getString(i);
+            }
+        }
+        return fields;
+    }
+
+    public void close() throws Exception {
+        reader.close();
+    }
+}
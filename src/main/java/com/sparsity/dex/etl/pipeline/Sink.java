@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.pipeline;
+
+/**
+ * Last stage of a {@link Pipeline}: writes the transformed items.
+ * <p>
+ * All the methods are called from the same thread: {@link #open()} first,
+ * then {@link #write(Object)} for each item and finally {@link #close()},
+ * which is called even if the {@link Pipeline} fails.
+ * 
+ * @author Sparsity Technologies
+ * 
+ * @param <T>
+ *            Item type.
+ */
+public interface Sink<T> {
+
+    /**
+     * Prepares the output.
+     * 
+     * @throws Exception
+     *             if there is an error.
+     */
+    void open() throws Exception;
+
+    /**
+     * Writes an item.
+     * 
+     * @param item
+     *            Item to be written.
+     * @throws Exception
+     *             if the item cannot be written.
+     */
+    void write(T item) throws Exception;
+
+    /**
+     * Closes the output.
+     * 
+     * @throws Exception
+     *             if there is an error.
+     */
+    void close() throws Exception;
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.pipeline;
+
+/**
+ * First stage of a {@link Pipeline}: reads the input items.
+ * <p>
+ * It is called from a single thread.
+ * 
+ * @author Sparsity Technologies
+ * 
+ * @param <T>
+ *            Item type.
+ */
+public interface Source<T> {
+
+    /**
+     * Reads the next item.
+     * 
+     * @return The next item or <code>null</code> at the end of the input.
+     * @throws Exception
+     *             if the item cannot be read.
+     */
+    T read() throws Exception;
+
+    /**
+     * Closes the input.
+     * 
+     * @throws Exception
+     *             if there is an error.
+     */
+    void close() throws Exception;
+}
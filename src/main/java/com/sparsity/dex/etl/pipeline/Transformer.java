@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.pipeline;
+
+/**
+ * Intermediate stage of a {@link Pipeline}: transforms the items read by the
+ * {@link Source} into the items written by the {@link Sink}.
+ * <p>
+ * It is called concurrently from all the transformer threads of the
+ * {@link Pipeline}, so it must be thread-safe.
+ * 
+ * @author Sparsity Technologies
+ * 
+ * @param <I>
+ *            Input item type.
+ * @param <O>
+ *            Output item type.
+ */
+public interface Transformer<I, O> {
+
+    /**
+     * Transforms an item.
+     * 
+     * @param item
+     *            Input item.
+     * @return The output item or <code>null</code> to discard the item.
+     * @throws Exception
+     *             if the item cannot be transformed.
+     */
+    O transform(I item) throws Exception;
+}
@@ -17,6 +17,9 @@
 package com.sparsity.dex.etl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -103,7 +106,31 @@ public class DexUtilTest {
         assertTrue(DexUtil.getGraph() != null);
         assertEquals("FOO1", DexUtil.getAlias());
         assertEquals("GDB1.dex", DexUtil.getPath());
+        // The declared schema was created
+        assertTrue(Type.InvalidType != DexUtil.getTypeIdentifier("NodeType"));
+        assertTrue(Attribute.InvalidAttribute != DexUtil
+                .getAttributeIdentifier("NodeType", "Attribute"));
+        DexUtil.shutdown();
+    }
+
+    @Test
+    public void testHandle() {
+        DexHandle handle = DexUtil.getHandle();
+        assertTrue(handle.isValid());
+        assertSame(DexUtil.getSession(), handle.getSession());
+        assertNotNull(handle.getGraph());
+
+        int type = handle.getGraph().newNodeType("NodeType");
+        assertEquals(type, handle.getTypeIdentifier("NodeType"));
+        assertEquals(Type.InvalidType, handle.getTypeIdentifier("EdgeType"));
+        int attr = handle.getGraph().newAttribute(type, "Attribute",
+                DataType.String, AttributeKind.Basic);
+        assertEquals(attr, handle.getAttributeIdentifier("NodeType", "Attribute"));
+        assertEquals(attr, handle.getAttributeIdentifier("NodeType.Attribute",
+                '.'));
+
         DexUtil.shutdown();
+        assertFalse(handle.isValid());
     }
 
     @Test
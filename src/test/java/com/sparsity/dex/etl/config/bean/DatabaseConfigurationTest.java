@@ -20,9 +20,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -30,6 +34,8 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.sparsity.dex.etl.DatabaseUnavailableException;
+import com.sparsity.dex.etl.DexUtilsException;
 import com.sparsity.dex.gdb.Attribute;
 import com.sparsity.dex.gdb.AttributeKind;
 import com.sparsity.dex.gdb.DataType;
@@ -147,6 +153,237 @@ public class DatabaseConfigurationTest {
         }
     }
 
+    @Test
+    public void testSessionRegistry() {
+        dbConf.openDatabase();
+        Session sess = dbConf.getSession();
+        assertEquals(1, dbConf.getSessionCount());
+        dbConf.closeSession();
+        assertTrue(sess.isClosed());
+        assertEquals(0, dbConf.getSessionCount());
+
+        sess = dbConf.getSession();
+        assertEquals(1, dbConf.getSessionCount());
+        dbConf.closeSessions();
+        assertTrue(sess.isClosed());
+        assertEquals(0, dbConf.getSessionCount());
+
+        // A new Session is created on demand
+        assertFalse(dbConf.getSession().isClosed());
+        dbConf.closeDatabase();
+        assertEquals(0, dbConf.getSessionCount());
+    }
+
+    @Test
+    public void testSessionPool() {
+        dbConf.setSessionPoolSize(1);
+        dbConf.setSessionWaitTimeout(100);
+        dbConf.openDatabase();
+        SessionPool pool = dbConf.getSessionPool();
+        assertNotNull(pool);
+
+        Session sess1 = dbConf.getSession();
+        assertEquals(1, pool.getActive());
+        assertEquals(0, pool.getIdle());
+
+        // Returned to the pool instead of being closed
+        dbConf.closeSession();
+        assertFalse(sess1.isClosed());
+        assertEquals(0, pool.getActive());
+        assertEquals(1, pool.getIdle());
+
+        // The idle Session is reused
+        assertSame(sess1, dbConf.getSession());
+        assertEquals(1L, pool.getCreated());
+
+        // The pool is exhausted
+        try {
+            pool.borrow();
+            assertTrue(false);
+        } catch (DexUtilsException e) {
+            assertEquals(1L, pool.getTimeouts());
+        }
+
+        dbConf.closeDatabase();
+        assertTrue(sess1.isClosed());
+        assertNull(dbConf.getSessionPool());
+
+        // A closed pool does not create Sessions
+        try {
+            pool.borrow();
+            assertTrue(false);
+        } catch (DexUtilsException e) {
+            assertEquals(1L, pool.getCreated());
+        }
+    }
+
+    @Test
+    public void testSessionPoolOrphans() throws InterruptedException {
+        dbConf.setSessionPoolSize(1);
+        dbConf.setSessionWaitTimeout(100);
+        dbConf.openDatabase();
+        dbConf.closeSession();
+        SessionPool pool = dbConf.getSessionPool();
+
+        // A thread finishes without returning its Session
+        MyThread th = new MyThread();
+        th.start();
+        th.join();
+        assertEquals(1, pool.getActive());
+        assertEquals(1, dbConf.getSessionCount());
+
+        // Its Session is closed and its permit released on demand
+        Session sess = dbConf.getSession();
+        assertTrue(th.sess.isClosed());
+        assertNotSame(th.sess, sess);
+        assertEquals(1, pool.getActive());
+        assertEquals(1, dbConf.getSessionCount());
+        dbConf.closeSession();
+        assertEquals(0, pool.getActive());
+
+        // Sessions cannot be returned twice
+        sess = pool.borrow();
+        pool.release(sess);
+        try {
+            pool.release(sess);
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, pool.getActive());
+            assertEquals(1, pool.getIdle());
+        }
+        dbConf.closeDatabase();
+    }
+
+    @Test
+    public void testExecute() {
+        dbConf.setSessionPoolSize(1);
+        dbConf.openDatabase();
+        dbConf.closeSession();
+        final SessionPool pool = dbConf.getSessionPool();
+
+        Session sess = dbConf.execute(new SessionTask<Session>() {
+            public Session execute(Session sess, Graph graph) {
+                assertSame(sess, dbConf.getSession());
+                assertSame(graph, dbConf.getGraph());
+                assertEquals(1, pool.getActive());
+                return sess;
+            }
+        });
+        // The task Session was returned to the pool
+        assertFalse(sess.isClosed());
+        assertEquals(0, pool.getActive());
+        assertEquals(1, pool.getIdle());
+
+        try {
+            dbConf.execute(new SessionTask<Object>() {
+                public Object execute(Session sess, Graph graph)
+                        throws Exception {
+                    throw new Exception("failure");
+                }
+            });
+            assertTrue(false);
+        } catch (DexUtilsException e) {
+            assertEquals("failure", e.getCause().getMessage());
+        }
+        assertEquals(0, pool.getActive());
+
+        dbConf.closeDatabase();
+    }
+
+    @Test
+    public void testGracefulRestart() throws Exception {
+        dbConf.setSessionPoolSize(1);
+        dbConf.setRestartWaitTimeout(0);
+        dbConf.openDatabase();
+        // Working Sessions of the threads are not in flight
+        assertEquals(0, dbConf.getInFlightCount());
+        dbConf.closeSession();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        Thread th = new Thread() {
+            public void run() {
+                dbConf.execute(new SessionTask<Object>() {
+                    public Object execute(Session sess, Graph graph)
+                            throws Exception {
+                        started.countDown();
+                        finish.await();
+                        return null;
+                    }
+                });
+            }
+        };
+        th.start();
+        started.await();
+        assertEquals(1, dbConf.getInFlightCount());
+
+        Future<Void> restart = dbConf.restartDatabase(10000);
+        assertSame(restart, dbConf.restartDatabase(10000));
+        try {
+            dbConf.execute(new SessionTask<Object>() {
+                public Object execute(Session sess, Graph graph) {
+                    return null;
+                }
+            });
+            assertTrue(false);
+        } catch (DatabaseUnavailableException e) {
+        }
+        Thread.sleep(200);
+        assertFalse(restart.isDone());
+
+        // Finishing the in-flight task lets the restart go on
+        finish.countDown();
+        restart.get();
+        th.join();
+        assertFalse(dbConf.isClosed());
+        assertEquals(0, dbConf.getInFlightCount());
+        assertNotNull(dbConf.getSession());
+        dbConf.closeDatabase();
+    }
+
+    @Test
+    public void testGracefulRestartSession() throws Exception {
+        dbConf.setRestartWaitTimeout(10000);
+        dbConf.openDatabase();
+        dbConf.closeSession();
+
+        final CountDownLatch ready = new CountDownLatch(1);
+        final CountDownLatch restarting = new CountDownLatch(1);
+        final Session[] sessions = new Session[2];
+        final boolean[] closed = new boolean[2];
+        Thread th = new Thread() {
+            public void run() {
+                sessions[0] = dbConf.getSession();
+                ready.countDown();
+                try {
+                    restarting.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Waits for the restart instead of using a closed Session
+                sessions[1] = dbConf.getSession();
+                closed[0] = sessions[0].isClosed();
+                closed[1] = sessions[1].isClosed();
+                dbConf.closeSession();
+            }
+        };
+        th.start();
+        ready.await();
+        assertEquals(0, dbConf.getInFlightCount());
+
+        long start = System.currentTimeMillis();
+        Future<Void> restart = dbConf.restartDatabase(10000);
+        restarting.countDown();
+        th.join();
+        restart.get();
+        // Nothing to drain
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(closed[0]);
+        assertNotSame(sessions[0], sessions[1]);
+        assertFalse(closed[1]);
+        dbConf.closeDatabase();
+    }
+
     // @Test
     public void testSessionMultithread() throws InterruptedException {
         //
@@ -178,6 +415,31 @@ public class DatabaseConfigurationTest {
         dbConf.closeDatabase();
     }
 
+    // @Test
+    public void testRestartMultithread() throws InterruptedException {
+        //
+        // As testSessionMultithread, this requires a Dex license with
+        // multi-Session support.
+        //
+        Thread[] ths = new Thread[4];
+        for (int i = 0; i < ths.length; i++) {
+            ths[i] = new Thread() {
+                public void run() {
+                    dbConf.restartDatabase();
+                    dbConf.closeSession();
+                }
+            };
+            ths[i].start();
+        }
+        for (Thread th : ths) {
+            th.join();
+        }
+        assertFalse(dbConf.isClosed());
+        assertEquals(0, dbConf.getSessionCount());
+        dbConf.closeDatabase();
+        assertTrue(dbConf.isClosed());
+    }
+
     @Test
     public void testSchema() {
         dbConf.openDatabase();
@@ -200,4 +462,97 @@ public class DatabaseConfigurationTest {
 
         dbConf.closeDatabase();
     }
+
+    @Test
+    public void testDropSchemaRecreate() {
+        dbConf.openDatabase();
+        assertTrue(Type.InvalidType != dbConf.getTypeIdentifier("NodeType"));
+
+        dbConf.dropSchema(DropMode.RECREATE);
+
+        assertFalse(dbConf.isClosed());
+        assertTrue(Type.InvalidType == dbConf.getTypeIdentifier("NodeType"));
+        assertTrue(Type.InvalidType == dbConf.getTypeIdentifier("EdgeType"));
+        assertEquals(0L, dbConf.getGraph().countNodes());
+
+        // Small Databases are dropped type by type
+        dbConf.getGraph().newNodeType("NewType");
+        dbConf.dropSchema(DropMode.AUTO);
+        assertTrue(Type.InvalidType == dbConf.getTypeIdentifier("NewType"));
+
+        dbConf.closeDatabase();
+    }
+
+    @Test
+    public void testRecreate() {
+        dbConf.openDatabase();
+        Graph g = dbConf.getGraph();
+        g.newNode(dbConf.getTypeIdentifier("NodeType"));
+        SchemaDefinition schema = SchemaDefinition.capture(g);
+        assertEquals(2, schema.getTypes().size());
+        assertEquals(2, schema.getAttributes().size());
+
+        dbConf.recreate(schema);
+
+        g = dbConf.getGraph();
+        assertEquals(0L, g.countNodes());
+        assertTrue(Type.InvalidType != dbConf.getTypeIdentifier("NodeType"));
+        assertTrue(Attribute.InvalidAttribute != dbConf.getAttributeIdentifier(
+                "EdgeType", "Attribute"));
+        // Nothing is missing, so nothing is created
+        assertEquals(0, schema.apply(g));
+
+        dbConf.recreate();
+        assertTrue(Type.InvalidType == dbConf.getTypeIdentifier("NodeType"));
+
+        // Graceful restarts are rejected meanwhile
+        final boolean[] rejected = { false };
+        dbConf.recreate(new SchemaDefinition() {
+            @Override
+            public int apply(Graph graph) {
+                try {
+                    dbConf.restartDatabase(0);
+                } catch (DatabaseUnavailableException e) {
+                    rejected[0] = true;
+                }
+                return 0;
+            }
+        });
+        assertTrue(rejected[0]);
+
+        dbConf.closeDatabase();
+    }
+
+    @Test
+    public void testSchemaCache() {
+        dbConf.openDatabase();
+
+        Integer type = dbConf.getTypeIdentifier("NodeType");
+        Integer attr = dbConf.getAttributeIdentifier("NodeType", "Attribute");
+        assertTrue(Type.InvalidType != type);
+        assertTrue(Attribute.InvalidAttribute != attr);
+        assertSame(type, dbConf.getTypeIdentifier("NodeType"));
+        assertSame(attr, dbConf.getAttributeIdentifier("NodeType", "Attribute"));
+        assertEquals(attr, dbConf.getAttributeIdentifier("NodeType.Attribute",
+                '.'));
+        assertSame(dbConf.getAttributeIdentifier("NodeType.Attribute", '.'),
+                dbConf.getAttributeIdentifier("NodeType.Attribute", '.'));
+        assertEquals(attr, dbConf.getAttributeIdentifier("NodeType:Attribute",
+                ':'));
+
+        // Missing identifiers are not cached
+        assertTrue(Type.InvalidType == dbConf.getTypeIdentifier("NewType"));
+        dbConf.getGraph().newNodeType("NewType");
+        assertTrue(Type.InvalidType != dbConf.getTypeIdentifier("NewType"));
+
+        // Dropping the schema clears the cache
+        dbConf.dropSchema();
+        assertTrue(Type.InvalidType == dbConf.getTypeIdentifier("NodeType"));
+        assertTrue(Attribute.InvalidAttribute == dbConf.getAttributeIdentifier(
+                "NodeType", "Attribute"));
+        assertTrue(Attribute.InvalidAttribute == dbConf.getAttributeIdentifier(
+                "NodeType.Attribute", '.'));
+
+        dbConf.closeDatabase();
+    }
 }
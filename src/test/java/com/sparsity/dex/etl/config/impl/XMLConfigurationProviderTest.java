@@ -17,7 +17,9 @@
 package com.sparsity.dex.etl.config.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -30,8 +32,13 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.sparsity.dex.etl.DexUtilsException;
 import com.sparsity.dex.etl.config.bean.Configuration;
 import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.etl.config.bean.JobDefinition;
+import com.sparsity.dex.etl.config.bean.SchemaDefinition;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
 
 /**
  * Unit test for the {@link XMLConfigurationProvider} class.
@@ -74,6 +81,22 @@ public class XMLConfigurationProviderTest {
                 assertEquals(dbConf.getAlias(), "FOO0");
                 assertEquals(dbConf.getPath(), "gdb0.dex");
                 assertNull(dbConf.getDexConfiguration());
+                assertEquals(0, dbConf.getSessionPoolSize());
+                SchemaDefinition schema = dbConf.getSchema();
+                assertEquals(4, schema.getTypes().size());
+                assertTrue(schema.getTypes().get(0).isNode());
+                assertTrue(schema.getTypes().get(1).isDirected());
+                assertTrue(schema.getTypes().get(1).isNeighbors());
+                assertFalse(schema.getTypes().get(2).isDirected());
+                assertEquals("person", schema.getTypes().get(3).getHead());
+                assertEquals(3, schema.getAttributes().size());
+                assertEquals(AttributeKind.Unique, schema.getAttributes()
+                        .get(0).getKind());
+                assertEquals(AttributeKind.Basic, schema.getAttributes()
+                        .get(1).getKind());
+                assertEquals("knows", schema.getAttributes().get(2).getType());
+                assertEquals(DataType.Timestamp, schema.getAttributes().get(2)
+                        .getDataType());
             } else if (dbConf.getName().equals(names.get(1))) {
                 assertEquals(dbConf.getAlias(), "FOO1");
                 assertEquals(dbConf.getPath(), "gdb1.dex");
@@ -82,10 +105,84 @@ public class XMLConfigurationProviderTest {
                 assertEquals(dbConf.getAlias(), "FOO2");
                 assertEquals(dbConf.getPath(), "gdb2.dex");
                 assertNull(dbConf.getDexConfiguration());
+                assertEquals(4, dbConf.getSessionPoolSize());
+                assertNull(dbConf.getSchema());
             } else {
                 assertTrue(false);
             }
         }
         assertTrue(conf.getDatabases().contains(conf.getDefaultDatabase()));
+
+        assertEquals("FOO0", conf.getDatabase("foo0").getAlias());
+        assertEquals("foo2", conf.getDatabase("FOO2").getName());
+        assertSame(conf.getDefaultDatabase(), conf.getDatabase("foo1"));
+        assertNull(conf.getDatabase("foo3"));
+    }
+
+    @Test
+    public void testJobs() {
+        XMLConfigurationProvider xmlProv = new XMLConfigurationProvider();
+        xmlProv.setFile(new File(XMLConfigurationProviderTest.class
+                .getClassLoader()
+                .getResource("dex-etl-config-XMLConfProvTest.xml").getFile()));
+        Configuration conf = new Configuration();
+        xmlProv.set(conf);
+        xmlProv.load();
+
+        assertEquals(2, conf.getJobs().size());
+        JobDefinition people = conf.getJob("people");
+        assertSame(conf.getDatabase("foo0"), people.getDatabase());
+        assertEquals(new File("people.csv"), people.getFile());
+        assertEquals(JobDefinition.Format.CSV, people.getFormat());
+        assertEquals("person", people.getType());
+        assertFalse(people.isEdge());
+        assertTrue(people.hasHeader());
+        assertTrue(people.isDeferIndexes());
+        assertEquals(5000, people.getBatchSize());
+        assertEquals(4, people.getParallelism());
+        assertEquals(JobDefinition.IndexStorage.PERSISTENT,
+                people.getIndexStorage());
+        assertEquals(2, people.getColumns().size());
+        assertEquals(JobDefinition.Reference.KEY, people.getColumns().get(0)
+                .getReference());
+        assertEquals("name", people.getColumns().get(1).getAttribute());
+
+        JobDefinition knows = conf.getJobs().get(1);
+        assertEquals("knows", knows.getName());
+        assertSame(people.getDatabase(), knows.getDatabase());
+        assertEquals(JobDefinition.Format.JSONL, knows.getFormat());
+        assertTrue(knows.isEdge());
+        assertEquals("people", knows.getTail());
+        assertEquals(1, knows.getParallelism());
+        assertEquals(JobDefinition.IndexStorage.HEAP, knows.getIndexStorage());
+        assertEquals(JobDefinition.Reference.HEAD, knows.getColumns().get(1)
+                .getReference());
+        assertNull(knows.getColumns().get(1).getAttribute());
+        assertEquals("since", knows.getColumns().get(2).getKey());
+    }
+
+    private void assertMisplaced(String resource, String tag) {
+        XMLConfigurationProvider xmlProv = new XMLConfigurationProvider();
+        xmlProv.setFile(new File(XMLConfigurationProviderTest.class
+                .getClassLoader().getResource(resource).getFile()));
+        xmlProv.set(new Configuration());
+        try {
+            xmlProv.load();
+            assertTrue(false);
+        } catch (DexUtilsException e) {
+            assertTrue(e.getCause() instanceof DexUtilsException);
+            assertTrue(e.getCause().getMessage().startsWith("'" + tag + "'"));
+        }
+    }
+
+    @Test
+    public void testMisplacedSchema() {
+        assertMisplaced("dex-etl-config-XMLConfProvTest-schema.xml", "schema");
+    }
+
+    @Test
+    public void testMisplacedNode() {
+        // Not added to the schema of the previous database
+        assertMisplaced("dex-etl-config-XMLConfProvTest-node.xml", "node");
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Unit test for the {@link Exporter} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class ExporterTest {
+
+    private DatabaseConfiguration dbConf = null;
+
+    private static final String ALIAS = ExporterTest.class.getSimpleName();
+    private static final File PATH = new File(ALIAS + ".dex");
+    private static final File DIR = new File(ALIAS + "-export");
+
+    private long[] people = new long[3];
+    private long knows;
+
+    @Before
+    public void setUp() throws Exception {
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(PATH.getPath(), ALIAS);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        int name = g.newAttribute(person, "name", DataType.String,
+                AttributeKind.Basic);
+        int age = g.newAttribute(person, "age", DataType.Integer,
+                AttributeKind.Basic);
+        int rel = g.newEdgeType("knows", true, false);
+        int since = g.newAttribute(rel, "since", DataType.Long,
+                AttributeKind.Basic);
+        Value v = new Value();
+        String[] names = { "John", "Smith, Anne", "Pe\"ter" };
+        for (int i = 0; i < people.length; i++) {
+            people[i] = g.newNode(person);
+            g.setAttribute(people[i], name, v.setString(names[i]));
+        }
+        g.setAttribute(people[0], age, v.setInteger(35));
+        knows = g.newEdge(rel, people[0], people[1]);
+        g.setAttribute(knows, since, v.setLong(2012));
+        sess.close();
+        db.close();
+        dex.close();
+
+        dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(ALIAS);
+        dbConf.setPath(PATH.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (!dbConf.isClosed()) {
+            dbConf.closeDatabase();
+        }
+        dbConf = null;
+
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        File[] files = DIR.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        DIR.delete();
+    }
+
+    private List<String> readLines(String name) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(new File(DIR, name)), "UTF-8"));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            lines.add(line);
+        }
+        in.close();
+        return lines;
+    }
+
+    @Test
+    public void testExportCSV() throws IOException {
+        Exporter exporter = new Exporter(dbConf);
+        exporter.setDirectory(DIR);
+        exporter.setParallelism(2);
+        // Several chunks for a single type
+        exporter.setChunkSize(1);
+
+        assertEquals(4L, exporter.export());
+
+        List<String> lines = readLines("person.csv");
+        assertEquals(4, lines.size());
+        assertEquals("oid,name,age", lines.get(0));
+        assertEquals(people[0] + ",John,35", lines.get(1));
+        assertEquals(people[1] + ",\"Smith, Anne\",", lines.get(2));
+        assertEquals(people[2] + ",\"Pe\"\"ter\",", lines.get(3));
+
+        lines = readLines("knows.csv");
+        assertEquals(2, lines.size());
+        assertEquals("oid,tail,head,since", lines.get(0));
+        assertEquals(knows + "," + people[0] + "," + people[1] + ",2012",
+                lines.get(1));
+    }
+
+    @Test
+    public void testExportJSONL() throws IOException {
+        Exporter exporter = new Exporter(dbConf);
+        exporter.setDirectory(DIR);
+        exporter.setFormat(Exporter.Format.JSONL);
+
+        assertEquals(4L, exporter.export());
+
+        List<String> lines = readLines("person.jsonl");
+        assertEquals(3, lines.size());
+        assertEquals("{\"oid\":" + people[0]
+                + ",\"name\":\"John\",\"age\":35}", lines.get(0));
+        assertEquals("{\"oid\":" + people[2]
+                + ",\"name\":\"Pe\\\"ter\",\"age\":null}", lines.get(2));
+        lines = readLines("knows.jsonl");
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith(",\"since\":2012}"));
+    }
+}
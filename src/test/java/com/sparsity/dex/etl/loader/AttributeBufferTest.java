@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.Attribute;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Unit test for the {@link AttributeBuffer} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class AttributeBufferTest {
+
+    private DatabaseConfiguration dbConf = null;
+
+    private static final String ALIAS = AttributeBufferTest.class
+            .getSimpleName();
+    private static final File PATH = new File(ALIAS + ".dex");
+
+    @Before
+    public void setUp() throws Exception {
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(PATH.getPath(), ALIAS);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        g.newAttribute(person, "name", DataType.String, AttributeKind.Basic);
+        g.newAttribute(person, "age", DataType.Integer, AttributeKind.Basic);
+        g.newAttribute(person, "score", DataType.Double, AttributeKind.Basic);
+        g.newAttribute(person, "active", DataType.Boolean, AttributeKind.Basic);
+        sess.close();
+        db.close();
+        dex.close();
+
+        dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(ALIAS);
+        dbConf.setPath(PATH.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (!dbConf.isClosed()) {
+            dbConf.closeDatabase();
+        }
+        dbConf = null;
+
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        Graph g = dbConf.getGraph();
+        int person = dbConf.getTypeIdentifier("person");
+        int name = dbConf.getAttributeIdentifier("person", "name");
+        int age = dbConf.getAttributeIdentifier("person", "age");
+        int score = dbConf.getAttributeIdentifier("person", "score");
+        int active = dbConf.getAttributeIdentifier("person", "active");
+        AttributeBuffer buffer = new AttributeBuffer(new int[] { name,
+                Attribute.InvalidAttribute, age, score, active },
+                new DataType[] { DataType.String, null, DataType.Integer,
+                        DataType.Double, DataType.Boolean });
+
+        StringBuilder csv = new StringBuilder("John,x,35,7.5,true\n");
+        csv.append("Mary,y,,2.25,false\n");
+        csv.append("Peter,z,bad,1,true\n");
+        for (int i = 0; i < 3000; i++) {
+            csv.append("p").append(i).append(",,").append(i).append(",,\n");
+        }
+        CSVRecordReader reader = new CSVRecordReader(new StringReader(
+                csv.toString()), ',');
+        long[] oids = new long[3002];
+        int n = 0;
+        while (reader.next()) {
+            long oid = g.newNode(person);
+            try {
+                buffer.add(oid, reader);
+                oids[n++] = oid;
+            } catch (NumberFormatException e) {
+                // The record is not added
+                assertEquals(3L, reader.getRecordNumber());
+            }
+        }
+        assertEquals(3002, buffer.size());
+
+        // 4 + 3 values of the first records and 2 per generated record
+        assertEquals(7L + 2 * 3000, buffer.write(g, new Value()));
+        assertEquals(0, buffer.size());
+
+        assertEquals("John", g.getAttribute(oids[0], name).getString());
+        assertEquals(35, g.getAttribute(oids[0], age).getInteger());
+        assertEquals(7.5, g.getAttribute(oids[0], score).getDouble(), 0.0);
+        assertTrue(g.getAttribute(oids[0], active).getBoolean());
+        assertTrue(g.getAttribute(oids[1], age).isNull());
+        assertFalse(g.getAttribute(oids[1], active).getBoolean());
+        assertEquals("p2999", g.getAttribute(oids[3001], name).getString());
+        assertEquals(2999, g.getAttribute(oids[3001], age).getInteger());
+        assertTrue(g.getAttribute(oids[3001], score).isNull());
+
+        // Nothing left to write
+        assertEquals(0L, buffer.write(g, new Value()));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link CSVRecordReader} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class CSVRecordReaderTest {
+
+    @Test
+    public void testRecords() throws IOException {
+        CSVRecordReader reader = new CSVRecordReader(new StringReader(
+                "1,John,35,true\r\n2,,28.5,false\n\n3,Peter"), ',');
+
+        assertTrue(reader.next());
+        assertEquals(4, reader.getFieldCount());
+        assertEquals(1L, reader.getLong(0));
+        assertEquals("John", reader.getString(1));
+        assertEquals(35, reader.getInt(2));
+        assertTrue(reader.getBoolean(3));
+
+        assertTrue(reader.next());
+        assertEquals(2, reader.getInt(0));
+        assertTrue(reader.isNull(1));
+        assertEquals(28.5, reader.getDouble(2), 0.0);
+        assertFalse(reader.getBoolean(3));
+
+        assertTrue(reader.next());
+        assertEquals(2, reader.getFieldCount());
+        assertEquals("Peter", reader.getString(1));
+        assertTrue(reader.isNull(2));
+        assertNull(reader.getString(2));
+
+        assertFalse(reader.next());
+        assertEquals(3L, reader.getRecordNumber());
+        reader.close();
+    }
+
+    @Test
+    public void testQuotes() throws IOException {
+        CSVRecordReader reader = new CSVRecordReader(new StringReader(
+                "\"a;b\";\"say \"\"hi\"\"\";\"multi\nline\"\n"), ';');
+
+        assertTrue(reader.next());
+        assertEquals(3, reader.getFieldCount());
+        assertEquals("a;b", reader.getString(0));
+        assertEquals("say \"hi\"", reader.getString(1));
+        assertEquals("multi\nline", reader.getString(2));
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnterminatedQuote() throws IOException {
+        CSVRecordReader reader = new CSVRecordReader(new StringReader(
+                "1,\"unterminated"), ',');
+        reader.next();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.etl.config.bean.JobDefinition;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Unit test for the {@link DeltaLoader} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class DeltaLoaderTest {
+
+    private DatabaseConfiguration dbConf = null;
+
+    private static final String ALIAS = DeltaLoaderTest.class.getSimpleName();
+    private static final File PATH = new File(ALIAS + ".dex");
+
+    @Before
+    public void setUp() throws Exception {
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(PATH.getPath(), ALIAS);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        g.newAttribute(person, "id", DataType.Long, AttributeKind.Unique);
+        g.newAttribute(person, "name", DataType.String, AttributeKind.Basic);
+        g.newAttribute(person, "age", DataType.Integer, AttributeKind.Basic);
+        g.newEdgeType("knows", true, false);
+        sess.close();
+        db.close();
+        dex.close();
+
+        dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(ALIAS);
+        dbConf.setPath(PATH.getAbsolutePath());
+
+        NodeLoader loader = new NodeLoader(dbConf);
+        loader.setFile(getResource("people-NodeLoaderTest.csv"));
+        loader.setHeader(true);
+        loader.setType("person");
+        loader.setColumns("id", "name", null, "age");
+        loader.load();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (!dbConf.isClosed()) {
+            dbConf.closeDatabase();
+        }
+        dbConf = null;
+
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name)
+                .getFile());
+    }
+
+    @Test
+    public void testLoad() {
+        DeltaLoader loader = new DeltaLoader(dbConf);
+        loader.setFile(getResource("people-DeltaLoaderTest.csv"));
+        loader.setHeader(true);
+        loader.setType("person");
+        loader.setColumns(null, "id", "name", "age");
+        loader.setKey("id");
+        loader.setOperationColumn(0);
+        loader.setBatchSize(4);
+
+        assertEquals(4L, loader.load());
+        assertEquals(1L, loader.getInsertedCount());
+        assertEquals(2L, loader.getUpdatedCount());
+        assertEquals(1L, loader.getDeletedCount());
+        assertEquals(2L, loader.getUnchangedCount());
+
+        Graph g = dbConf.getGraph();
+        assertEquals(5L, g.countNodes());
+        int id = dbConf.getAttributeIdentifier("person", "id");
+        int name = dbConf.getAttributeIdentifier("person", "name");
+        int age = dbConf.getAttributeIdentifier("person", "age");
+        long oid = g.findObject(id, new Value().setLong(1));
+        assertEquals(36, g.getAttribute(oid, age).getInteger());
+        assertEquals(Objects.InvalidOID, g.findObject(id, new Value()
+                .setLong(2)));
+        oid = g.findObject(id, new Value().setLong(4));
+        // Empty fields do not change the current values
+        assertEquals("Smith, Anne", g.getAttribute(oid, name).getString());
+        assertEquals(30, g.getAttribute(oid, age).getInteger());
+        oid = g.findObject(id, new Value().setLong(6));
+        assertTrue(oid != Objects.InvalidOID);
+        assertEquals("Laura", g.getAttribute(oid, name).getString());
+    }
+
+    private void write(File f, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        MappedOIDIndex people = new MappedOIDIndex(dbConf, "people", true);
+        File input = File.createTempFile(ALIAS, ".csv");
+        try {
+            Graph g = dbConf.getGraph();
+            int id = dbConf.getAttributeIdentifier("person", "id");
+            for (long i = 1; i <= 5; i++) {
+                people.put(i, g.findObject(id, new Value().setLong(i)));
+            }
+
+            DeltaLoader loader = new DeltaLoader(dbConf);
+            loader.setFile(getResource("people-DeltaLoaderTest.csv"));
+            loader.setHeader(true);
+            loader.setType("person");
+            loader.setColumns(null, "id", "name", "age");
+            loader.setKey("id");
+            loader.setOperationColumn(0);
+            loader.setIndex(people);
+            assertEquals(4L, loader.load());
+
+            g = dbConf.getGraph();
+            assertEquals(5L, people.size());
+            assertEquals(Objects.InvalidOID, people.get(2));
+            assertEquals(Objects.InvalidOID, people.get(9));
+            assertEquals(g.findObject(id, new Value().setLong(6)), people
+                    .get(6));
+            people.close();
+
+            // The edge job opens the index without a node job
+            write(input, "1,6\n3,4\n");
+            JobDefinition job = new JobDefinition("knows", dbConf);
+            job.setFile(input);
+            job.setEdgeType("knows");
+            job.setTail("people");
+            job.setHead("people");
+            job.addColumn(new JobDefinition.ColumnDefinition(null, null,
+                    JobDefinition.Reference.TAIL));
+            job.addColumn(new JobDefinition.ColumnDefinition(null, null,
+                    JobDefinition.Reference.HEAD));
+            Map<String, OIDIndex> indexes = new HashMap<String, OIDIndex>();
+            try {
+                assertEquals(2L, job.execute(indexes));
+            } finally {
+                for (OIDIndex idx : indexes.values()) {
+                    ((MappedOIDIndex) idx).close();
+                }
+            }
+            assertEquals(1, indexes.size());
+            assertEquals(2L, dbConf.getGraph().countEdges());
+        } finally {
+            input.delete();
+            new MappedOIDIndex(dbConf, "people", true).delete();
+        }
+    }
+
+    @Test
+    public void testNumericKeys() throws IOException {
+        File input = File.createTempFile(ALIAS, ".csv");
+        try {
+            write(input, "U, 1,,36\nU,01,,37\nI, 7,Zed,1\nU,7,,2\n");
+            DeltaLoader loader = new DeltaLoader(dbConf);
+            loader.setFile(input);
+            loader.setType("person");
+            loader.setColumns(null, "id", "name", "age");
+            loader.setKey("id");
+            loader.setOperationColumn(0);
+
+            // Different texts of the same id are the same node
+            assertEquals(4L, loader.load());
+            assertEquals(1L, loader.getInsertedCount());
+            assertEquals(3L, loader.getUpdatedCount());
+            Graph g = dbConf.getGraph();
+            assertEquals(6L, g.countNodes());
+            int id = dbConf.getAttributeIdentifier("person", "id");
+            int age = dbConf.getAttributeIdentifier("person", "age");
+            long oid = g.findObject(id, new Value().setLong(1));
+            assertEquals(37, g.getAttribute(oid, age).getInteger());
+            oid = g.findObject(id, new Value().setLong(7));
+            assertEquals(2, g.getAttribute(oid, age).getInteger());
+        } finally {
+            input.delete();
+        }
+    }
+
+    @Test(expected = DexUtilsException.class)
+    public void testBasicKey() {
+        DeltaLoader loader = new DeltaLoader(dbConf);
+        loader.setFile(getResource("people-DeltaLoaderTest.csv"));
+        loader.setHeader(true);
+        loader.setType("person");
+        loader.setColumns(null, "id", "name", "age");
+        loader.setKey("name");
+        loader.load();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.EdgeData;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.ObjectsIterator;
+import com.sparsity.dex.gdb.Session;
+
+/**
+ * Unit test for the {@link EdgeLoader} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class EdgeLoaderTest {
+
+    private DatabaseConfiguration dbConf = null;
+
+    private static final String ALIAS = EdgeLoaderTest.class.getSimpleName();
+    private static final File PATH = new File(ALIAS + ".dex");
+
+    @Before
+    public void setUp() throws Exception {
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(PATH.getPath(), ALIAS);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        g.newAttribute(person, "id", DataType.Long, AttributeKind.Unique);
+        g.newAttribute(person, "name", DataType.String, AttributeKind.Basic);
+        int knows = g.newEdgeType("knows", true, true);
+        g.newAttribute(knows, "since", DataType.Integer, AttributeKind.Basic);
+        sess.close();
+        db.close();
+        dex.close();
+
+        dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(ALIAS);
+        dbConf.setPath(PATH.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (!dbConf.isClosed()) {
+            dbConf.closeDatabase();
+        }
+        dbConf = null;
+
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name)
+                .getFile());
+    }
+
+    private OIDIndex loadPeople() {
+        OIDIndex people = new HeapOIDIndex(true);
+        NodeLoader nodes = new NodeLoader(dbConf);
+        nodes.setFile(getResource("people-NodeLoaderTest.csv"));
+        nodes.setHeader(true);
+        nodes.setType("person");
+        nodes.setColumns("id", "name");
+        nodes.setIndex(people, 0);
+        nodes.load();
+        assertEquals(5L, people.size());
+        return people;
+    }
+
+    @Test
+    public void testLoad() {
+        OIDIndex people = loadPeople();
+
+        EdgeLoader edges = new EdgeLoader(dbConf);
+        edges.setFile(getResource("knows-EdgeLoaderTest.csv"));
+        edges.setType("knows");
+        edges.setTail(people, 0);
+        edges.setHead(people, 1);
+        edges.setColumns(null, null, "since");
+        edges.setSkipMissing(true);
+
+        assertEquals(3L, edges.load());
+
+        Graph g = dbConf.getGraph();
+        assertEquals(3L, g.countEdges());
+        int since = dbConf.getAttributeIdentifier("knows", "since");
+        Objects objs = g.select(dbConf.getTypeIdentifier("knows"));
+        ObjectsIterator it = objs.iterator();
+        while (it.hasNext()) {
+            long edge = it.next();
+            EdgeData data = g.getEdgeData(edge);
+            if (data.getTail() == people.get(1)) {
+                assertEquals(people.get(2), data.getHead());
+                assertEquals(2012, g.getAttribute(edge, since).getInteger());
+            } else {
+                assertTrue(data.getTail() == people.get(2)
+                        || data.getTail() == people.get(3));
+            }
+        }
+        it.close();
+        objs.close();
+    }
+
+    @Test(expected = DexUtilsException.class)
+    public void testMissing() {
+        OIDIndex people = loadPeople();
+
+        EdgeLoader edges = new EdgeLoader(dbConf);
+        edges.setFile(getResource("knows-EdgeLoaderTest.csv"));
+        edges.setType("knows");
+        edges.setTail(people, 0);
+        edges.setHead(people, 1);
+        edges.load();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link FileRange} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class FileRangeTest {
+
+    private static final int LINES = 1000;
+
+    private File file = null;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile(FileRangeTest.class.getSimpleName(), ".csv");
+        FileOutputStream out = new FileOutputStream(file);
+        for (int i = 0; i < LINES; i++) {
+            out.write((i + ",name" + i + "\n").getBytes("UTF-8"));
+        }
+        out.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testSplit() throws IOException {
+        List<FileRange> ranges = FileRange.split(file, 7);
+        assertTrue(ranges.size() >= 7);
+
+        long expected = 0;
+        long pos = 0;
+        for (FileRange range : ranges) {
+            assertEquals(pos, range.getStart());
+            pos = range.getEnd();
+            CSVRecordReader reader = new CSVRecordReader(
+                    new InputStreamReader(range.openStream(), "UTF-8"), ',');
+            while (reader.next()) {
+                assertEquals(2, reader.getFieldCount());
+                assertEquals(expected, reader.getLong(0));
+                assertEquals("name" + expected, reader.getString(1));
+                expected++;
+            }
+            reader.close();
+        }
+        assertEquals(file.length(), pos);
+        assertEquals(LINES, expected);
+    }
+
+    @Test
+    public void testSmallFile() throws IOException {
+        List<FileRange> ranges = FileRange.split(file, 100000);
+        long pos = 0;
+        for (FileRange range : ranges) {
+            assertTrue(range.getLength() > 0);
+            assertEquals(pos, range.getStart());
+            pos = range.getEnd();
+        }
+        assertEquals(file.length(), pos);
+        assertTrue(ranges.size() <= LINES);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sparsity.dex.gdb.Objects;
+
+/**
+ * Unit test for the {@link HeapOIDIndex} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class HeapOIDIndexTest {
+
+    @Test
+    public void testNumeric() {
+        HeapOIDIndex idx = new HeapOIDIndex(true, 4);
+        assertTrue(idx.isNumeric());
+        for (long i = 0; i < 100000; i++) {
+            idx.put(i * 31, i + 1);
+        }
+        assertEquals(100000L, idx.size());
+        for (long i = 0; i < 100000; i++) {
+            assertEquals(i + 1, idx.get(i * 31));
+        }
+        assertEquals(Objects.InvalidOID, idx.get(-1));
+        assertEquals(Objects.InvalidOID, idx.get(32));
+        assertEquals(2L, idx.get("31"));
+
+        idx.put(31, 1000);
+        assertEquals(100000L, idx.size());
+        assertEquals(1000L, idx.get(31));
+    }
+
+    @Test
+    public void testString() {
+        HeapOIDIndex idx = new HeapOIDIndex(false);
+        assertFalse(idx.isNumeric());
+        for (int i = 0; i < 100000; i++) {
+            idx.put("key" + i, i + 1);
+        }
+        assertEquals(100000L, idx.size());
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i + 1, idx.get("key" + i));
+        }
+        assertEquals(Objects.InvalidOID, idx.get("key"));
+        idx.put(7, 7);
+        assertEquals(7L, idx.get("7"));
+    }
+
+    @Test
+    public void testRemove() {
+        HeapOIDIndex idx = new HeapOIDIndex(true, 4);
+        for (long i = 0; i < 10000; i++) {
+            idx.put(i, i + 1);
+        }
+        for (long i = 0; i < 10000; i += 2) {
+            assertEquals(i + 1, idx.remove(i));
+        }
+        assertEquals(Objects.InvalidOID, idx.remove(0));
+        assertEquals(5000L, idx.size());
+        for (long i = 0; i < 10000; i++) {
+            assertEquals((i % 2 == 0) ? Objects.InvalidOID : i + 1, idx
+                    .get(i));
+        }
+
+        idx = new HeapOIDIndex(false);
+        for (int i = 0; i < 10000; i++) {
+            idx.put("key" + i, i + 1);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            assertEquals(i + 1, idx.remove("key" + i));
+        }
+        assertEquals(5000L, idx.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals((i % 2 == 0) ? Objects.InvalidOID : i + 1, idx
+                    .get("key" + i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOID() {
+        new HeapOIDIndex(true).put(1, Objects.InvalidOID);
+    }
+}
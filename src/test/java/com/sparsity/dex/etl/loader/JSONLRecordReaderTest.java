@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link JSONLRecordReader} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class JSONLRecordReaderTest {
+
+    @Test
+    public void testRecords() throws IOException {
+        JSONLRecordReader reader = new JSONLRecordReader(new StringReader(
+                "{\"id\": 1, \"name\": \"John\", \"age\": 35, \"active\": true}\n"
+                        + "{\"age\":28.5,\"id\":2,\"name\":null,\"active\":false}\r\n"
+                        + "\n"
+                        + "{\"id\": 3, \"extra\": {\"a\": [1, \"}\"]}, \"name\": \"Peter\"}"),
+                "id", "name", "age", "active");
+
+        assertTrue(reader.next());
+        assertEquals(4, reader.getFieldCount());
+        assertEquals(1L, reader.getLong(0));
+        assertEquals("John", reader.getString(1));
+        assertEquals(35, reader.getInt(2));
+        assertTrue(reader.getBoolean(3));
+
+        assertTrue(reader.next());
+        assertEquals(2, reader.getInt(0));
+        assertTrue(reader.isNull(1));
+        assertEquals(28.5, reader.getDouble(2), 0.0);
+        assertFalse(reader.getBoolean(3));
+
+        assertTrue(reader.next());
+        assertEquals(3L, reader.getLong(0));
+        assertEquals("Peter", reader.getString(1));
+        assertTrue(reader.isNull(2));
+        assertNull(reader.getString(3));
+
+        assertFalse(reader.next());
+        assertEquals(3L, reader.getRecordNumber());
+        reader.close();
+    }
+
+    @Test
+    public void testEscapesAndNested() throws IOException {
+        JSONLRecordReader reader = new JSONLRecordReader(new StringReader(
+                "{\"s\": \"say \\\"hi\\\"\\n\\u00e9\", \"o\": {\"k\": [1, \"\\\"]\"]}}"),
+                "s", "o");
+
+        assertTrue(reader.next());
+        assertEquals("say \"hi\"\n\u00e9", reader.getString(0));
+        assertEquals("{\"k\": [1, \"\\\"]\"]}", reader.getString(1));
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformed() throws IOException {
+        JSONLRecordReader reader = new JSONLRecordReader(new StringReader(
+                "{\"id\": 1 \"name\": \"John\"}"), "id");
+        reader.next();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.gdb.Objects;
+
+/**
+ * Unit test for the {@link LoadJournal} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class LoadJournalTest {
+
+    private File file = null;
+    private File input = null;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("LoadJournalTest", LoadJournal.EXTENSION);
+        file.delete();
+        input = File.createTempFile("LoadJournalTest", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        input.delete();
+    }
+
+    @Test
+    public void testResume() {
+        FileRange range = new FileRange(input, 0, 100);
+        String name = LoadJournal.getName(range);
+        LoadJournal journal = new LoadJournal(file);
+        assertEquals(0L, journal.getCheckpoint(range));
+        journal.checkpoint(name, 2, Arrays.asList("a\tb", "c"), Arrays
+                .asList(10L, 11L));
+        journal.checkpoint(name, 4, Arrays.asList("d"), Arrays.asList(12L));
+        journal.close();
+
+        journal = new LoadJournal(file);
+        assertEquals(4L, journal.getCheckpoint(range));
+        assertFalse(journal.isComplete(name));
+        HeapOIDIndex index = new HeapOIDIndex(false);
+        assertEquals(3L, journal.replay(name, index));
+        assertEquals(10L, index.get("a\tb"));
+        assertEquals(12L, index.get("d"));
+
+        journal.complete(name);
+        journal.close();
+        assertTrue(new LoadJournal(file).isComplete(name));
+    }
+
+    @Test
+    public void testPartialEntries() throws Exception {
+        FileRange range = new FileRange(input, 0, 100);
+        String name = LoadJournal.getName(range);
+        LoadJournal journal = new LoadJournal(file);
+        journal.checkpoint(name, 1, Arrays.asList("1"), Arrays.asList(10L));
+        journal.close();
+        // Keys without checkpoint and a truncated entry
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("K\t0\t2\t20\nC\t0\t2".getBytes());
+        out.close();
+
+        journal = new LoadJournal(file);
+        assertEquals(1L, journal.getCheckpoint(range));
+        HeapOIDIndex index = new HeapOIDIndex(true);
+        assertEquals(1L, journal.replay(name, index));
+        assertEquals(Objects.InvalidOID, index.get(2));
+        // The truncated entry was dropped
+        journal.checkpoint(name, 3, Collections.<String> emptyList(),
+                Collections.<Long> emptyList());
+        journal.close();
+        assertEquals(3L, new LoadJournal(file).getCheckpoint(range));
+    }
+
+    @Test
+    public void testReplayRanges() {
+        String first = LoadJournal.getName(new FileRange(input, 0, 50));
+        String second = LoadJournal.getName(new FileRange(input, 50, 100));
+        LoadJournal journal = new LoadJournal(file);
+        journal.checkpoint(first, 1, Arrays.asList("1"), Arrays.asList(10L));
+        journal.checkpoint(second, 1, Arrays.asList("2"), Arrays.asList(20L));
+        journal.checkpoint(first, 2, Arrays.asList("3"), Arrays.asList(30L));
+        journal.close();
+
+        journal = new LoadJournal(file);
+        HeapOIDIndex index = new HeapOIDIndex(true);
+        // Both ranges are restored at once
+        assertEquals(3L, journal.replay(first, index));
+        assertEquals(0L, journal.replay(second, index));
+        assertEquals(20L, index.get(2));
+        assertEquals(30L, index.get(3));
+        assertEquals(3L, journal.replay(second, new HeapOIDIndex(true)));
+    }
+
+    @Test(expected = DexUtilsException.class)
+    public void testOtherRanges() {
+        LoadJournal journal = new LoadJournal(file);
+        journal.checkpoint(LoadJournal.getName(new FileRange(input, 0, 50)),
+                1, Collections.<String> emptyList(), Collections
+                        .<Long> emptyList());
+        // Ranges of the same split are not checkpointed yet
+        assertEquals(0L, journal.getCheckpoint(new FileRange(input, 50, 100)));
+        journal.getCheckpoint(new FileRange(input, 0, 100));
+    }
+
+    @Test(expected = DexUtilsException.class)
+    public void testInvalidKey() {
+        FileRange range = new FileRange(input, 0, 100);
+        String name = LoadJournal.getName(range);
+        LoadJournal journal = new LoadJournal(file);
+        journal.checkpoint(name, 1, Arrays.asList("+x"), Arrays.asList(10L));
+        journal.close();
+        new LoadJournal(file).replay(name, new HeapOIDIndex(true));
+    }
+
+    @Test
+    public void testDelete() {
+        LoadJournal journal = new LoadJournal(file);
+        FileRange range = new FileRange(input, 0, 100);
+        journal.complete(LoadJournal.getName(range));
+        assertTrue(file.exists());
+        journal.delete();
+        assertFalse(file.exists());
+        assertFalse(journal.isComplete(LoadJournal.getName(range)));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the {@link MappedCSVRecordReader} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class MappedCSVRecordReaderTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File file = null;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("MappedCSVRecordReaderTest", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private void write(String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes(UTF8));
+        out.close();
+    }
+
+    @Test
+    public void testRecords() throws IOException {
+        write("1,John,35,true\r\n2,,28.5,false\n\n3,Peter");
+        MappedCSVRecordReader reader = new MappedCSVRecordReader(file, ',',
+                UTF8);
+
+        assertTrue(reader.next());
+        assertEquals(4, reader.getFieldCount());
+        assertEquals(1L, reader.getLong(0));
+        assertEquals("John", reader.getString(1));
+        assertEquals(35, reader.getInt(2));
+        assertTrue(reader.getBoolean(3));
+
+        assertTrue(reader.next());
+        assertEquals(2, reader.getInt(0));
+        assertTrue(reader.isNull(1));
+        assertEquals(28.5, reader.getDouble(2), 0.0);
+        assertFalse(reader.getBoolean(3));
+
+        assertTrue(reader.next());
+        assertEquals(2, reader.getFieldCount());
+        assertEquals("Peter", reader.getString(1));
+        assertTrue(reader.isNull(2));
+        assertNull(reader.getString(2));
+
+        assertFalse(reader.next());
+        assertEquals(3L, reader.getRecordNumber());
+        reader.close();
+    }
+
+    @Test
+    public void testQuotes() throws IOException {
+        write("\"a;b\";\"say \"\"hi\"\"\";\"multi\nline\";\"\"\n");
+        MappedCSVRecordReader reader = new MappedCSVRecordReader(file, ';',
+                UTF8);
+
+        assertTrue(reader.next());
+        assertEquals(4, reader.getFieldCount());
+        assertEquals("a;b", reader.getString(0));
+        assertEquals("say \"hi\"", reader.getString(1));
+        assertEquals("multi\nline", reader.getString(2));
+        assertTrue(reader.isNull(3));
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testNumbers() throws IOException {
+        write("-9223372036854775808, 42 ,0.1,-1.5e3,\u00e9\n9223372036854775808\n");
+        MappedCSVRecordReader reader = new MappedCSVRecordReader(file, ',',
+                UTF8);
+
+        assertTrue(reader.next());
+        assertEquals(Long.MIN_VALUE, reader.getLong(0));
+        assertEquals(42, reader.getInt(1));
+        assertEquals(0.1, reader.getDouble(2), 0.0);
+        assertEquals(-1500.0, reader.getDouble(3), 0.0);
+        assertEquals("\u00e9", reader.getString(4));
+
+        assertTrue(reader.next());
+        try {
+            reader.getLong(0);
+            assertTrue(false);
+        } catch (NumberFormatException e) {
+            // Overflow
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testWindows() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append(i).append(",\"name ").append(i).append("\"\n");
+        }
+        write(sb.toString());
+        // Records cross the end of the small windows
+        MappedCSVRecordReader reader = new MappedCSVRecordReader(file, 0,
+                file.length(), ',', UTF8, 32);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(reader.next());
+            assertEquals(i, reader.getInt(0));
+            assertEquals("name " + i, reader.getString(1));
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testRange() throws IOException {
+        write("1,a\n2,b\n3,c\n");
+        MappedCSVRecordReader reader = new MappedCSVRecordReader(file, 4, 8,
+                ',', UTF8, 1024);
+        assertTrue(reader.next());
+        assertEquals(2, reader.getInt(0));
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnterminatedQuote() throws IOException {
+        write("1,\"unterminated");
+        MappedCSVRecordReader reader = new MappedCSVRecordReader(file, ',',
+                UTF8);
+        reader.next();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.gdb.Objects;
+
+/**
+ * Unit test for the {@link MappedOIDIndex} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class MappedOIDIndexTest {
+
+    @Test
+    public void testNumeric() {
+        MappedOIDIndex idx = new MappedOIDIndex(true, 4);
+        assertTrue(idx.isNumeric());
+        assertTrue(idx.isTemporary());
+        for (long i = 0; i < 100000; i++) {
+            idx.put(i * 31, i + 1);
+        }
+        assertEquals(100000L, idx.size());
+        for (long i = 0; i < 100000; i++) {
+            assertEquals(i + 1, idx.get(i * 31));
+        }
+        assertEquals(Objects.InvalidOID, idx.get(-1));
+        assertEquals(Objects.InvalidOID, idx.get(32));
+        assertEquals(2L, idx.get("31"));
+
+        idx.put(31, 1000);
+        assertEquals(100000L, idx.size());
+        assertEquals(1000L, idx.get(31));
+
+        File f = idx.getFile();
+        idx.close();
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void testString() {
+        MappedOIDIndex idx = new MappedOIDIndex(false, 4);
+        assertFalse(idx.isNumeric());
+        for (int i = 0; i < 100000; i++) {
+            idx.put("key" + i, i + 1);
+        }
+        assertEquals(100000L, idx.size());
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i + 1, idx.get("key" + i));
+        }
+        assertEquals(Objects.InvalidOID, idx.get("key"));
+        assertEquals(Objects.InvalidOID, idx.get(""));
+        idx.put(7, 7);
+        assertEquals(7L, idx.get("7"));
+        idx.put("key5", 1000);
+        assertEquals(100001L, idx.size());
+        assertEquals(1000L, idx.get("key5"));
+        idx.close();
+    }
+
+    @Test
+    public void testPersistent() throws IOException {
+        File f = File.createTempFile(getClass().getSimpleName(),
+                MappedOIDIndex.EXTENSION);
+        try {
+            MappedOIDIndex idx = new MappedOIDIndex(f, false, 4);
+            assertFalse(idx.isTemporary());
+            for (int i = 0; i < 1000; i++) {
+                idx.put("n" + i, i + 1);
+            }
+            idx.close();
+            assertEquals(1, getTableFiles(f).length);
+            // Left by a process which died while growing the index
+            assertTrue(MappedOIDIndex.getTableFile(f, 99).createNewFile());
+
+            // Reopened as it was left, and it keeps growing
+            idx = new MappedOIDIndex(f, false, 4);
+            assertFalse(MappedOIDIndex.getTableFile(f, 99).exists());
+            assertEquals(1000L, idx.size());
+            assertEquals(501L, idx.get("n500"));
+            for (int i = 1000; i < 2000; i++) {
+                idx.put("n" + i, i + 1);
+            }
+            assertEquals(2000L, idx.size());
+            assertEquals(1L, idx.get("n0"));
+            assertEquals(2000L, idx.get("n1999"));
+            idx.close();
+            assertEquals(1, getTableFiles(f).length);
+
+            try {
+                new MappedOIDIndex(f, true, 4);
+                assertTrue(false);
+            } catch (DexUtilsException e) {
+                // Keys are not numeric
+            }
+            new MappedOIDIndex(f, false, 4).delete();
+            assertFalse(f.exists());
+            assertFalse(MappedOIDIndex.getKeysFile(f).exists());
+            assertEquals(0, getTableFiles(f).length);
+        } finally {
+            f.delete();
+            MappedOIDIndex.getKeysFile(f).delete();
+            for (File t : getTableFiles(f)) {
+                t.delete();
+            }
+        }
+    }
+
+    private File[] getTableFiles(final File f) {
+        return f.getParentFile().listFiles(new FileFilter() {
+            public boolean accept(File t) {
+                return t.getName().matches(
+                        Pattern.quote(f.getName()) + "\\.[0-9]+");
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        File f = File.createTempFile(getClass().getSimpleName(),
+                MappedOIDIndex.EXTENSION);
+        try {
+            MappedOIDIndex idx = new MappedOIDIndex(f, false, 4);
+            for (int i = 0; i < 10000; i++) {
+                idx.put("n" + i, i + 1);
+            }
+            idx.close();
+
+            // Lookups on a reopened index do not map the keys file
+            final MappedOIDIndex reopened = new MappedOIDIndex(f, false, 4);
+            final AtomicInteger errors = new AtomicInteger();
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread() {
+                    public void run() {
+                        for (int i = 0; i < 10000; i++) {
+                            if (reopened.get("n" + i) != i + 1) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertEquals(0, errors.get());
+            reopened.delete();
+        } finally {
+            f.delete();
+            MappedOIDIndex.getKeysFile(f).delete();
+        }
+    }
+
+    @Test
+    public void testRemove() throws IOException {
+        MappedOIDIndex idx = new MappedOIDIndex(true, 4);
+        for (long i = 0; i < 10000; i++) {
+            idx.put(i, i + 1);
+        }
+        for (long i = 0; i < 10000; i += 2) {
+            assertEquals(i + 1, idx.remove(i));
+        }
+        assertEquals(Objects.InvalidOID, idx.remove(0));
+        assertEquals(5000L, idx.size());
+        for (long i = 0; i < 10000; i++) {
+            assertEquals((i % 2 == 0) ? Objects.InvalidOID : i + 1, idx
+                    .get(i));
+        }
+        idx.close();
+
+        File f = File.createTempFile(getClass().getSimpleName(),
+                MappedOIDIndex.EXTENSION);
+        try {
+            idx = new MappedOIDIndex(f, false, 4);
+            for (int i = 0; i < 10000; i++) {
+                idx.put("key" + i, i + 1);
+            }
+            for (int i = 0; i < 10000; i += 2) {
+                assertEquals(i + 1, idx.remove("key" + i));
+            }
+            idx.close();
+
+            idx = new MappedOIDIndex(f, false, 4);
+            assertEquals(5000L, idx.size());
+            for (int i = 0; i < 10000; i++) {
+                assertEquals((i % 2 == 0) ? Objects.InvalidOID : i + 1, idx
+                        .get("key" + i));
+            }
+            idx.put("key0", 1);
+            assertEquals(5001L, idx.size());
+            assertEquals(1L, idx.get("key0"));
+            idx.delete();
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOID() {
+        MappedOIDIndex idx = new MappedOIDIndex(true);
+        try {
+            idx.put(1, Objects.InvalidOID);
+        } finally {
+            idx.close();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Unit test for the {@link NodeLoader} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class NodeLoaderTest {
+
+    private DatabaseConfiguration dbConf = null;
+
+    private static final String ALIAS = NodeLoaderTest.class.getSimpleName();
+    private static final File PATH = new File(ALIAS + ".dex");
+
+    @Before
+    public void setUp() throws Exception {
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(PATH.getPath(), ALIAS);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        g.newAttribute(person, "id", DataType.Long, AttributeKind.Unique);
+        g.newAttribute(person, "name", DataType.String, AttributeKind.Basic);
+        g.newAttribute(person, "age", DataType.Integer, AttributeKind.Basic);
+        sess.close();
+        db.close();
+        dex.close();
+
+        dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(ALIAS);
+        dbConf.setPath(PATH.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (!dbConf.isClosed()) {
+            dbConf.closeDatabase();
+        }
+        dbConf = null;
+
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+    }
+
+    private File getResource(String name) {
+        return new File(getClass().getClassLoader().getResource(name)
+                .getFile());
+    }
+
+    @Test
+    public void testLoad() {
+        NodeLoader loader = new NodeLoader(dbConf);
+        loader.setFile(getResource("people-NodeLoaderTest.csv"));
+        loader.setHeader(true);
+        loader.setType("person");
+        loader.setColumns("id", "name", null, "age");
+        loader.setBatchSize(2);
+
+        assertEquals(5L, loader.load());
+
+        Graph g = dbConf.getGraph();
+        assertEquals(5L, g.countNodes());
+        int id = dbConf.getAttributeIdentifier("person", "id");
+        int name = dbConf.getAttributeIdentifier("person", "name");
+        int age = dbConf.getAttributeIdentifier("person", "age");
+        long oid = g.findObject(id, new Value().setLong(3));
+        assertTrue(oid != Objects.InvalidOID);
+        assertEquals("Peter", g.getAttribute(oid, name).getString());
+        assertEquals(41, g.getAttribute(oid, age).getInteger());
+        oid = g.findObject(id, new Value().setLong(4));
+        assertTrue(g.getAttribute(oid, age).isNull());
+    }
+
+    @Test
+    public void testLoadJSONL() {
+        NodeLoader loader = new NodeLoader(dbConf);
+        loader.setFile(getResource("people-NodeLoaderTest.jsonl"));
+        loader.setJSONKeys("id", "name", "age");
+        loader.setType("person");
+        loader.setColumns("id", "name", "age");
+
+        assertEquals(3L, loader.load());
+
+        Graph g = dbConf.getGraph();
+        int id = dbConf.getAttributeIdentifier("person", "id");
+        int name = dbConf.getAttributeIdentifier("person", "name");
+        int age = dbConf.getAttributeIdentifier("person", "age");
+        long oid = g.findObject(id, new Value().setLong(2));
+        assertEquals("Smith, Anne", g.getAttribute(oid, name).getString());
+        assertTrue(g.getAttribute(oid, age).isNull());
+        oid = g.findObject(id, new Value().setLong(3));
+        assertEquals(19, g.getAttribute(oid, age).getInteger());
+    }
+
+    @Test
+    public void testDeferIndexes() {
+        NodeLoader loader = new NodeLoader(dbConf);
+        loader.setFile(getResource("people-NodeLoaderTest.csv"));
+        loader.setHeader(true);
+        loader.setType("person");
+        loader.setColumns("id", "name", null, "age");
+        loader.setDeferIndexes(true);
+
+        assertEquals(5L, loader.load());
+
+        // The unique attribute was restored
+        Graph g = dbConf.getGraph();
+        int id = dbConf.getAttributeIdentifier("person", "id");
+        assertEquals(AttributeKind.Unique, g.getAttribute(id).getKind());
+        assertTrue(g.findObject(id, new Value().setLong(3)) != Objects.InvalidOID);
+        assertEquals(0, loader.buildIndexes());
+    }
+
+    @Test(expected = DexUtilsException.class)
+    public void testDeferIndexesDuplicates() {
+        NodeLoader loader = new NodeLoader(dbConf);
+        loader.setFile(getResource("people-NodeLoaderTest.csv"));
+        loader.setHeader(true);
+        loader.setType("person");
+        loader.setColumns("id", "name", null, "age");
+        loader.setDeferIndexes(true);
+        loader.load();
+        // Loading the same ids again breaks their uniqueness
+        loader.load();
+    }
+
+    private void write(File f, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Test
+    public void testJournal() throws IOException {
+        File input = File.createTempFile(ALIAS, ".csv");
+        LoadJournal journal = new LoadJournal(dbConf);
+        try {
+            write(input, "1,John,35\n2,Mary,28\n3,\"Peter,9\n4,Anne,\n");
+            NodeLoader loader = new NodeLoader(dbConf);
+            loader.setFile(input);
+            loader.setType("person");
+            loader.setColumns("id", "name", "age");
+            loader.setIndex(new HeapOIDIndex(true), 0);
+            loader.setBatchSize(1);
+            loader.setJournal(journal);
+            try {
+                loader.load();
+                assertTrue(false);
+            } catch (DexUtilsException e) {
+                // Unterminated quote at the third record
+            }
+            assertEquals(2L, dbConf.getGraph().countNodes());
+
+            // Fix the input (same length) and resume with a new index
+            write(input, "1,John,35\n2,Mary,28\n3,Peter,19\n4,Anne,\n");
+            HeapOIDIndex index = new HeapOIDIndex(true);
+            loader.setIndex(index, 0);
+            loader.setJournal(new LoadJournal(dbConf));
+            assertEquals(2L, loader.load());
+            assertEquals(4L, dbConf.getGraph().countNodes());
+            assertEquals(4L, index.size());
+            int id = dbConf.getAttributeIdentifier("person", "id");
+            assertEquals(dbConf.getGraph().findObject(id,
+                    new Value().setLong(1)), index.get(1));
+
+            // Completed inputs are skipped
+            assertEquals(0L, loader.load());
+            loader.getJournal().delete();
+        } finally {
+            journal.delete();
+            input.delete();
+        }
+    }
+
+    @Test
+    public void testJournalBatch() throws IOException {
+        File input = File.createTempFile(ALIAS, ".csv");
+        LoadJournal journal = new LoadJournal(dbConf);
+        try {
+            write(input, "1,John,35\n 2,Mary,28\n3,Peter,4x\n4,Anne,\n");
+            NodeLoader loader = new NodeLoader(dbConf);
+            loader.setFile(input);
+            loader.setType("person");
+            loader.setColumns("id", "name", "age");
+            loader.setIndex(new HeapOIDIndex(true), 0);
+            loader.setBatchSize(10);
+            loader.setJournal(journal);
+            try {
+                loader.load();
+                assertTrue(false);
+            } catch (DexUtilsException e) {
+                // Invalid age in the middle of the batch
+            }
+            // No partial node for the third record
+            assertEquals(2L, dbConf.getGraph().countNodes());
+
+            // Fix the input (same length) and resume with a new index
+            write(input, "1,John,35\n 2,Mary,28\n3,Peter,41\n4,Anne,\n");
+            HeapOIDIndex index = new HeapOIDIndex(true);
+            loader.setIndex(index, 0);
+            loader.setJournal(new LoadJournal(dbConf));
+            assertEquals(2L, loader.load());
+            assertEquals(4L, dbConf.getGraph().countNodes());
+            assertEquals(4L, index.size());
+            int id = dbConf.getAttributeIdentifier("person", "id");
+            assertEquals(dbConf.getGraph().findObject(id,
+                    new Value().setLong(2)), index.get(2));
+            loader.getJournal().delete();
+        } finally {
+            journal.delete();
+            input.delete();
+        }
+    }
+
+    @Test
+    public void testDuplicateUnique() throws IOException {
+        File input = File.createTempFile(ALIAS, ".csv");
+        LoadJournal journal = new LoadJournal(dbConf);
+        try {
+            write(input, "1,John,35\n2,Mary,28\n3,Peter,41\n3,Anne,\n");
+            NodeLoader loader = new NodeLoader(dbConf);
+            loader.setFile(input);
+            loader.setType("person");
+            loader.setColumns("id", "name", "age");
+            HeapOIDIndex first = new HeapOIDIndex(true);
+            loader.setIndex(first, 0);
+            loader.setBatchSize(2);
+            loader.setJournal(journal);
+            try {
+                loader.load();
+                assertTrue(false);
+            } catch (DexUtilsException e) {
+                // Unique id set when the second batch is written
+                assertTrue(e.getMessage().endsWith("at record 4"));
+            }
+            // The second batch is neither committed nor checkpointed
+            assertEquals(2L, dbConf.getGraph().countNodes());
+            assertEquals(2L, first.size());
+
+            // Fix the input (same length) and resume with a new index
+            write(input, "1,John,35\n2,Mary,28\n3,Peter,41\n4,Anne,\n");
+            HeapOIDIndex index = new HeapOIDIndex(true);
+            loader.setIndex(index, 0);
+            loader.setJournal(new LoadJournal(dbConf));
+            assertEquals(2L, loader.load());
+            assertEquals(4L, dbConf.getGraph().countNodes());
+            assertEquals(4L, index.size());
+            int id = dbConf.getAttributeIdentifier("person", "id");
+            int name = dbConf.getAttributeIdentifier("person", "name");
+            long oid = dbConf.getGraph().findObject(id, new Value().setLong(3));
+            assertEquals(oid, index.get(3));
+            assertEquals("Peter", dbConf.getGraph().getAttribute(oid, name)
+                    .getString());
+            loader.getJournal().delete();
+        } finally {
+            journal.delete();
+            input.delete();
+        }
+    }
+
+    @Test
+    public void testJournalPersistentIndex() throws IOException {
+        File input = File.createTempFile(ALIAS, ".csv");
+        LoadJournal journal = new LoadJournal(dbConf);
+        MappedOIDIndex index = new MappedOIDIndex(dbConf, "people", true);
+        try {
+            write(input, "1,John,35\n2,Mary,28\n3,Peter,41\n3,Anne,\n");
+            NodeLoader loader = new NodeLoader(dbConf);
+            loader.setFile(input);
+            loader.setType("person");
+            loader.setColumns("id", "name", "age");
+            loader.setIndex(index, 0);
+            loader.setBatchSize(2);
+            loader.setJournal(journal);
+            try {
+                loader.load();
+                assertTrue(false);
+            } catch (DexUtilsException e) {
+                assertTrue(e.getMessage().endsWith("at record 4"));
+            }
+            index.close();
+            journal.close();
+
+            // Flushed at the checkpoint instead of journaled
+            index = new MappedOIDIndex(dbConf, "people", true);
+            assertEquals(2L, index.size());
+            BufferedReader in = new BufferedReader(new FileReader(journal
+                    .getFile()));
+            for (String line = in.readLine(); line != null; line = in
+                    .readLine()) {
+                assertTrue(!line.startsWith("K"));
+            }
+            in.close();
+
+            write(input, "1,John,35\n2,Mary,28\n3,Peter,41\n4,Anne,\n");
+            loader.setIndex(index, 0);
+            loader.setJournal(new LoadJournal(dbConf));
+            assertEquals(2L, loader.load());
+            assertEquals(4L, index.size());
+            int id = dbConf.getAttributeIdentifier("person", "id");
+            assertEquals(dbConf.getGraph().findObject(id,
+                    new Value().setLong(1)), index.get(1));
+            loader.getJournal().delete();
+        } finally {
+            index.delete();
+            journal.delete();
+            input.delete();
+        }
+    }
+
+    @Test(expected = DexUtilsException.class)
+    public void testUnknownAttribute() {
+        NodeLoader loader = new NodeLoader(dbConf);
+        loader.setFile(getResource("people-NodeLoaderTest.csv"));
+        loader.setType("person");
+        loader.setColumns("id", "surname");
+        loader.load();
+    }
+}
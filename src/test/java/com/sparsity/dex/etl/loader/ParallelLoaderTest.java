@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.EdgeData;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.ObjectsIterator;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Unit test for the {@link ParallelLoader} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class ParallelLoaderTest {
+
+    private DatabaseConfiguration dbConf = null;
+
+    private static final String ALIAS = ParallelLoaderTest.class
+            .getSimpleName();
+    private static final File PATH = new File(ALIAS + ".dex");
+
+    // Many chunks of several batches each
+    private static final int RECORDS = 2000;
+
+    private File people = null;
+    private File knows = null;
+
+    @Before
+    public void setUp() throws Exception {
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(PATH.getPath(), ALIAS);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        g.newAttribute(person, "id", DataType.Long, AttributeKind.Unique);
+        g.newAttribute(person, "name", DataType.String, AttributeKind.Basic);
+        g.newEdgeType("knows", true, false);
+        sess.close();
+        db.close();
+        dex.close();
+
+        dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(ALIAS);
+        dbConf.setPath(PATH.getAbsolutePath());
+
+        StringBuilder nodes = new StringBuilder();
+        StringBuilder edges = new StringBuilder();
+        for (int i = 0; i < RECORDS; i++) {
+            nodes.append(i).append(",person").append(i).append('\n');
+            edges.append(i).append(',').append((i + 1) % RECORDS)
+                    .append('\n');
+        }
+        people = File.createTempFile(ALIAS, ".csv");
+        write(people, nodes.toString());
+        knows = File.createTempFile(ALIAS, ".csv");
+        write(knows, edges.toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (!dbConf.isClosed()) {
+            dbConf.closeDatabase();
+        }
+        dbConf = null;
+
+        people.delete();
+        knows.delete();
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+    }
+
+    private void write(File f, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Test
+    public void testLoad() {
+        OIDIndex index = new HeapOIDIndex(true);
+        NodeLoader nodes = new NodeLoader(dbConf);
+        nodes.setFile(people);
+        nodes.setType("person");
+        nodes.setColumns("id", "name");
+        nodes.setIndex(index, 0);
+        nodes.setBatchSize(50);
+        ParallelLoader pl = new ParallelLoader(nodes);
+        pl.setParallelism(4);
+        assertEquals((long) RECORDS, pl.load());
+
+        // A chunk loaded twice would break the uniqueness of the ids
+        Graph g = dbConf.getGraph();
+        assertEquals((long) RECORDS, g.countNodes());
+        assertEquals((long) RECORDS, index.size());
+        int id = dbConf.getAttributeIdentifier("person", "id");
+        Map<Long, Integer> keys = new HashMap<Long, Integer>();
+        for (int i = 0; i < RECORDS; i++) {
+            long oid = g.findObject(id, new Value().setLong(i));
+            assertTrue(oid != Objects.InvalidOID);
+            assertEquals(oid, index.get(i));
+            keys.put(oid, i);
+        }
+
+        EdgeLoader edges = new EdgeLoader(dbConf);
+        edges.setFile(knows);
+        edges.setType("knows");
+        edges.setTail(index, 0);
+        edges.setHead(index, 1);
+        edges.setBatchSize(50);
+        pl = new ParallelLoader(edges);
+        pl.setParallelism(4);
+        assertEquals((long) RECORDS, pl.load());
+
+        g = dbConf.getGraph();
+        assertEquals((long) RECORDS, g.countEdges());
+        boolean[] loaded = new boolean[RECORDS];
+        Objects objs = g.select(dbConf.getTypeIdentifier("knows"));
+        ObjectsIterator it = objs.iterator();
+        while (it.hasNext()) {
+            EdgeData data = g.getEdgeData(it.next());
+            int tail = keys.get(data.getTail());
+            assertFalse(loaded[tail]);
+            loaded[tail] = true;
+            assertEquals((tail + 1) % RECORDS, (int) keys.get(data.getHead()));
+        }
+        it.close();
+        objs.close();
+    }
+}
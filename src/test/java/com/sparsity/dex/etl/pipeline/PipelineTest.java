@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2012 Sparsity Technologies www.sparsity-technologies.com
+ * 
+ * This file is part of 'dexjava-etl'.
+ * 
+ * Licensed under the GNU Lesser General Public License (LGPL) v3, (the
+ * "License"). You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.sparsity.dex.etl.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sparsity.dex.etl.DexUtilsException;
+import com.sparsity.dex.etl.config.bean.DatabaseConfiguration;
+import com.sparsity.dex.etl.loader.CSVRecordReader;
+import com.sparsity.dex.gdb.AttributeKind;
+import com.sparsity.dex.gdb.DataType;
+import com.sparsity.dex.gdb.Database;
+import com.sparsity.dex.gdb.Dex;
+import com.sparsity.dex.gdb.DexConfig;
+import com.sparsity.dex.gdb.Graph;
+import com.sparsity.dex.gdb.Objects;
+import com.sparsity.dex.gdb.Session;
+import com.sparsity.dex.gdb.Value;
+
+/**
+ * Unit test for the {@link Pipeline} class.
+ * 
+ * @author Sparsity Technologies
+ * 
+ */
+public class PipelineTest {
+
+    private static final String ALIAS = PipelineTest.class.getSimpleName();
+    private static final File PATH = new File(ALIAS + ".dex");
+
+    private static class RangeSource implements Source<Integer> {
+
+        private int next = 0;
+        private int size;
+        private boolean closed = false;
+
+        public RangeSource(int size) {
+            this.size = size;
+        }
+
+        public Integer read() {
+            return (next < size) ? next++ : null;
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class ListSink<T> implements Sink<T> {
+
+        private List<T> items = Collections.synchronizedList(new ArrayList<T>());
+        private boolean closed = false;
+
+        public void open() {
+        }
+
+        public void write(T item) {
+            items.add(item);
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void testRun() {
+        RangeSource source = new RangeSource(10000);
+        ListSink<Integer> sink = new ListSink<Integer>();
+        Pipeline<Integer, Integer> p = new Pipeline<Integer, Integer>(source,
+                new Transformer<Integer, Integer>() {
+                    public Integer transform(Integer item) {
+                        // Discard odd items
+                        return (item % 2 == 0) ? item * 2 : null;
+                    }
+                }, sink);
+        p.setParallelism(4);
+        // Tiny queues force the stages to wait for each other
+        p.setQueueCapacity(2);
+
+        assertEquals(5000L, p.run());
+        assertTrue(source.closed);
+        assertTrue(sink.closed);
+        long sum = 0;
+        for (Integer i : sink.items) {
+            sum += i;
+        }
+        assertEquals(2L * 2 * (4999L * 5000 / 2), sum);
+    }
+
+    @Test
+    public void testFailure() {
+        RangeSource source = new RangeSource(Integer.MAX_VALUE);
+        ListSink<Integer> sink = new ListSink<Integer>();
+        Pipeline<Integer, Integer> p = new Pipeline<Integer, Integer>(source,
+                new Transformer<Integer, Integer>() {
+                    public Integer transform(Integer item) {
+                        if (item == 1000) {
+                            throw new IllegalStateException("Bad item");
+                        }
+                        return item;
+                    }
+                }, sink);
+        p.setQueueCapacity(16);
+        try {
+            p.run();
+            assertTrue(false);
+        } catch (DexUtilsException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // The other stages were stopped and closed
+        assertTrue(source.closed);
+        assertTrue(sink.closed);
+    }
+
+    @Test
+    public void testDexSink() throws Exception {
+        if (PATH.exists()) {
+            PATH.delete();
+        }
+        Dex dex = new Dex(new DexConfig());
+        Database db = dex.create(PATH.getPath(), ALIAS);
+        Session sess = db.newSession();
+        Graph g = sess.getGraph();
+        int person = g.newNodeType("person");
+        g.newAttribute(person, "name", DataType.String, AttributeKind.Indexed);
+        sess.close();
+        db.close();
+        dex.close();
+
+        final DatabaseConfiguration dbConf = new DatabaseConfiguration();
+        dbConf.setAlias(ALIAS);
+        dbConf.setPath(PATH.getAbsolutePath());
+        try {
+            DexSink<String> sink = new DexSink<String>(dbConf) {
+                private Value value = new Value();
+
+                @Override
+                protected void write(String item, Graph graph) {
+                    int type = dbConf.getTypeIdentifier("person");
+                    long oid = graph.newNode(type);
+                    graph.setAttribute(oid, dbConf.getAttributeIdentifier(
+                            "person", "name"), value.setString(item));
+                }
+            };
+            sink.setBatchSize(2);
+            Pipeline<String[], String> p = new Pipeline<String[], String>(
+                    new RecordSource(new CSVRecordReader(new StringReader(
+                            "1,john\n2,mary\n3,\n4,peter\n"), ',')),
+                    new Transformer<String[], String>() {
+                        public String transform(String[] item) {
+                            return (item[1] == null) ? null : item[1]
+                                    .toUpperCase();
+                        }
+                    }, sink);
+
+            assertEquals(3L, p.run());
+            assertEquals(3L, dbConf.getGraph().countNodes());
+            int name = dbConf.getAttributeIdentifier("person", "name");
+            assertTrue(dbConf.getGraph().findObject(name,
+                    new Value().setString("MARY")) != Objects.InvalidOID);
+        } finally {
+            dbConf.closeDatabase();
+            PATH.delete();
+        }
+    }
+}